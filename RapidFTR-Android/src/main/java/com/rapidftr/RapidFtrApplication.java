@@ -18,6 +18,7 @@ import com.google.common.io.CharStreams;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.rapidftr.activity.RapidFtrActivity;
+import com.rapidftr.database.DatabaseMaintenanceReceiver;
 import com.rapidftr.forms.Form;
 import com.rapidftr.forms.FormField;
 import com.rapidftr.forms.FormSection;
@@ -98,6 +99,8 @@ public class RapidFtrApplication extends Application {
             reloadCurrentUser();
 
             notificationManager = (NotificationManager) this.getSystemService(Context.NOTIFICATION_SERVICE);
+            // the screen turning off can't be listened for from the manifest
+            registerReceiver(new DatabaseMaintenanceReceiver(), DatabaseMaintenanceReceiver.screenOffFilter());
         } catch (IOException e) {
             Log.e(APP_IDENTIFIER, "Failed to load form sections", e);
         }
@@ -8,8 +8,10 @@ import android.os.Bundle;
 import com.rapidftr.R;
 import com.rapidftr.model.BaseModel;
 import com.rapidftr.model.Child;
+import com.rapidftr.repository.AsyncRepository;
 import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.task.AsyncTaskWithDialog;
+import com.rapidftr.view.ErrorToastCallback;
 import lombok.Cleanup;
 import lombok.Getter;
 import lombok.Setter;
@@ -23,6 +25,7 @@ public abstract class BaseChildActivity extends CollectionActivity {
     protected boolean editable = true;
     @Getter @Setter MediaRecorder mediaRecorder;
     @Getter @Setter MediaPlayer mediaPlayer;
+    private AsyncRepository<ChildRepository> childRepository;
 
     @Override
     protected Boolean getEditable() {
@@ -38,7 +41,9 @@ public abstract class BaseChildActivity extends CollectionActivity {
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putString("child_state", child.toString());
+        if (child != null) {
+            outState.putString("child_state", child.toString());
+        }
     }
 
     @Override
@@ -68,11 +73,38 @@ public abstract class BaseChildActivity extends CollectionActivity {
         }
     }
 
-    public Child load() throws JSONException {
-        @Cleanup ChildRepository repository = inject(ChildRepository.class);
-        String childId = getIntent().getExtras().getString("id");
-        child = repository.get(childId);
-        return child;
+    // reads the child in the background, the form is built once it's loaded
+    protected void load() {
+        final String childId = getIntent().getExtras().getString("id");
+        if (childRepository == null) {
+            childRepository = injectAsync(ChildRepository.class);
+        }
+        waitForModel();
+        childRepository.query(new AsyncRepository.Query<ChildRepository, Child>() {
+            @Override
+            public Child run(ChildRepository repository) throws JSONException {
+                return repository.get(childId);
+            }
+        }, new ErrorToastCallback<Child>(this, R.string.fetch_child_error) {
+            @Override
+            public void onResult(Child result) {
+                child = result;
+                try {
+                    modelLoaded();
+                } catch (JSONException e) {
+                    throw new RuntimeException(e);
+                }
+                invalidateOptionsMenu();
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (childRepository != null) {
+            childRepository.close();
+        }
     }
 
     public Child  save() throws JSONException {
@@ -15,6 +15,8 @@ import java.util.List;
 
 public abstract class CollectionActivity extends RapidFtrActivity {
     protected List<FormSection> formSections;
+    private boolean dataInitialized;
+    private boolean waitingForModel;
 
     protected abstract BaseModel getModel();
     protected abstract Boolean getEditable();
@@ -61,14 +63,38 @@ public abstract class CollectionActivity extends RapidFtrActivity {
             } catch (IOException e) {
                 e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
             }
-            initializePager();
-            initializeSpinner();
-            initializeLabels();
+            dataInitialized = true;
+            if (!waitingForModel) {
+                initializeForm();
+            }
         } catch (JSONException e) {
             throw new RuntimeException(e);
         }
     }
 
+    protected void initializeForm() throws JSONException {
+        initializePager();
+        initializeSpinner();
+        initializeLabels();
+    }
+
+    /*
+     * For models loaded in the background by initializeData: the form is only built
+     * once modelLoaded() is called, whether that happens before or after onCreate returns.
+     */
+    protected void waitForModel() {
+        waitingForModel = true;
+    }
+
+    protected void modelLoaded() throws JSONException {
+        if (waitingForModel) {
+            waitingForModel = false;
+            if (dataInitialized) {
+                initializeForm();
+            }
+        }
+    }
+
     protected void initializeLabels() throws JSONException{};
 
     protected abstract void initializeView();
@@ -10,8 +10,10 @@ public class EditChildActivity extends BaseChildActivity {
 
     @Override
     protected void initializeData(Bundle savedInstanceState) throws JSONException {
-        load();
         super.initializeData(savedInstanceState);
+        if (savedInstanceState == null || !savedInstanceState.containsKey("child_state")) {
+            load();
+        }
     }
 
     protected void initializeView() {
@@ -20,18 +20,24 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import com.google.inject.Injector;
 import com.google.inject.Key;
+import com.google.inject.Provider;
+import com.google.inject.name.Names;
 import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.model.BaseModel;
 import com.rapidftr.model.Child;
 import com.rapidftr.model.Enquiry;
 import com.rapidftr.model.User;
+import com.rapidftr.repository.AsyncRepository;
 import com.rapidftr.service.LogOutService;
 import com.rapidftr.task.SynchronisationAsyncTask;
 import com.rapidftr.view.fields.TextField;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+
 import static android.net.ConnectivityManager.EXTRA_NETWORK_INFO;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
@@ -126,6 +132,17 @@ public abstract class RapidFtrActivity extends Activity {
         return getInjector().getInstance(clazz);
     }
 
+    // the repository opens the database, so it is only created once the first query runs on the database thread
+    protected <R extends Closeable> AsyncRepository<R> injectAsync(final Class<R> repositoryClass) {
+        Executor executor = getInjector().getInstance(Key.get(Executor.class, Names.named("DATABASE_EXECUTOR")));
+        return new AsyncRepository<R>(new Provider<R>() {
+            @Override
+            public R get() {
+                return getInjector().getInstance(repositoryClass);
+            }
+        }, executor);
+    }
+
     public void addResultListener(int requestCode, ResultListener listener) {
         activityResultListeners.put(requestCode, listener);
     }
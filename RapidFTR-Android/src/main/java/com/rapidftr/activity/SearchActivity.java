@@ -1,15 +1,16 @@
 package com.rapidftr.activity;
 
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.ListView;
 import android.widget.TextView;
 import com.rapidftr.R;
 import com.rapidftr.adapter.ChildViewAdapter;
-import com.rapidftr.model.Child;
+import com.rapidftr.forms.FormField;
+import com.rapidftr.model.ChildSummary;
+import com.rapidftr.repository.AsyncRepository;
 import com.rapidftr.repository.ChildRepository;
-import lombok.Cleanup;
+import com.rapidftr.view.ErrorToastCallback;
 import org.json.JSONException;
 
 import java.util.ArrayList;
@@ -18,15 +19,25 @@ import java.util.List;
 public class SearchActivity extends RapidFtrActivity {
 
     private ChildViewAdapter childViewAdapter;
+    private AsyncRepository<ChildRepository> childRepository;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_search_child);
+        childRepository = injectAsync(ChildRepository.class);
         findViewById(R.id.search_btn).setOnClickListener(searchListener());
     }
 
-    private void listView(List<Child> children) {
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (childRepository != null) {
+            childRepository.close();
+        }
+    }
+
+    private void listView(List<ChildSummary> children) {
         childViewAdapter = new ChildViewAdapter(this, R.layout.row_child, children);
         ListView childListView = (ListView) findViewById(R.id.child_list);
         if (children.isEmpty()) {
@@ -40,24 +51,30 @@ public class SearchActivity extends RapidFtrActivity {
             @Override
             public void onClick(View v) {
                 TextView searchTextView = (TextView) findViewById(R.id.search_text);
-                String subString = searchTextView.getText().toString();
-                try {
-                    listView(search(subString));
-                } catch (Exception e) {
-                    Log.e("ChildSearch", "Error while Searching Children");
-                    makeToast(R.string.fetch_child_error);
-                }
+                search(searchTextView.getText().toString());
             }
         };
     }
 
-    private List<Child> search(String subString) throws JSONException {
-        @Cleanup ChildRepository childRepository = inject(ChildRepository.class);
-        subString = subString.trim();
-        if ("".equals(subString)) {
-            return new ArrayList<Child>();
+    private void search(String subString) {
+        final String searchString = subString.trim();
+        childRepository.cancelAll();
+        if ("".equals(searchString)) {
+            listView(new ArrayList<ChildSummary>());
+            return;
         }
-        return childRepository.getMatchingChildren(subString, getContext().getChildHighlightedFields());
+        final List<FormField> highlightedFields = getContext().getChildHighlightedFields();
+        childRepository.query(new AsyncRepository.Query<ChildRepository, List<ChildSummary>>() {
+            @Override
+            public List<ChildSummary> run(ChildRepository repository) throws JSONException {
+                return repository.getMatchingChildSummaries(searchString, highlightedFields);
+            }
+        }, new ErrorToastCallback<List<ChildSummary>>(this, R.string.fetch_child_error) {
+            @Override
+            public void onResult(List<ChildSummary> children) {
+                listView(children);
+            }
+        });
     }
 
 }
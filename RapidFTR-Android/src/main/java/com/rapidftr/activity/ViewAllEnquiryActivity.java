@@ -4,8 +4,9 @@ import android.widget.ListView;
 import com.rapidftr.R;
 import com.rapidftr.adapter.EnquiryViewAdapter;
 import com.rapidftr.model.Enquiry;
+import com.rapidftr.repository.AsyncRepository;
 import com.rapidftr.repository.EnquiryRepository;
-import lombok.Cleanup;
+import com.rapidftr.view.ErrorToastCallback;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -13,15 +14,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class ViewAllEnquiryActivity extends BaseEnquiryActivity {
+
+    private AsyncRepository<EnquiryRepository> enquiries;
+
     @Override
     protected void initializeView() {
         setContentView(R.layout.activity_view_all_enquiries);
-        @Cleanup EnquiryRepository enquiryRepository = inject(EnquiryRepository.class);
-        try {
-            List<Enquiry> enquiries = reconstructCriteria(enquiryRepository.all());
-            listView(enquiries);
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
+        enquiries = injectAsync(EnquiryRepository.class);
+        enquiries.query(new AsyncRepository.Query<EnquiryRepository, List<Enquiry>>() {
+            @Override
+            public List<Enquiry> run(EnquiryRepository repository) throws JSONException {
+                return reconstructCriteria(repository.all());
+            }
+        }, new ErrorToastCallback<List<Enquiry>>(this, R.string.fetch_enquiry_error) {
+            @Override
+            public void onResult(List<Enquiry> enquiries) {
+                listView(enquiries);
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (enquiries != null) {
+            enquiries.close();
         }
     }
 
@@ -2,7 +2,6 @@ package com.rapidftr.activity;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -19,7 +18,6 @@ import com.rapidftr.task.SyncSingleRecordTask;
 import com.rapidftr.utils.http.FluentRequest;
 import org.json.JSONException;
 
-import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
 
 
 public class ViewChildActivity extends BaseChildActivity {
@@ -69,18 +67,13 @@ public class ViewChildActivity extends BaseChildActivity {
         return new SyncSingleRecordTask(new ChildSyncService(this.getContext(), childRepository, new FluentRequest()),
                 childRepository, getCurrentUser()) {
             @Override
-            public Boolean doInBackground(BaseModel... params) {
-                try {
-                    Child childRecord = (Child) service.sync(params[0], currentUser);
-                    if (!childRecord.isSynced()) {
-                        RapidFtrApplication.getApplicationInstance()
-                                .getAsyncTaskWithDialog().setFailureMessage(childRecord.getSyncLog());
-                    }
-                    return childRecord.isSynced();
-                } catch (Exception e) {
-                    Log.e(APP_IDENTIFIER, "Error syncing one child record", e);
-                    return false;
+            protected boolean sync(BaseModel record) throws Exception {
+                Child childRecord = (Child) service.sync(record, currentUser);
+                if (!childRecord.isSynced()) {
+                    RapidFtrApplication.getApplicationInstance()
+                            .getAsyncTaskWithDialog().setFailureMessage(childRecord.getSyncLog());
                 }
+                return childRecord.isSynced();
             }
         };
     }
@@ -89,7 +82,7 @@ public class ViewChildActivity extends BaseChildActivity {
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.sync_single_menu, menu);
         try {
-            if (!child.isSynced() && child.getSyncLog() != null) {
+            if (child != null && !child.isSynced() && child.getSyncLog() != null) {
                 menu.findItem(R.id.synchronize_log).setVisible(true);
             }
             if (!getCurrentUser().isVerified()) {
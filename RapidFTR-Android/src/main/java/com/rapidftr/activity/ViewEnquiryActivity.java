@@ -8,6 +8,7 @@ import android.view.View;
 import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.service.EnquiryHttpDao;
+import com.rapidftr.repository.EnquiryRepository;
 import com.rapidftr.service.EnquirySyncService;
 import com.rapidftr.service.LogOutService;
 import com.rapidftr.task.AsyncTaskWithDialog;
@@ -74,8 +75,9 @@ public class ViewEnquiryActivity extends BaseEnquiryActivity {
     }
 
     protected SyncSingleRecordTask createSyncTaskForEnquiry() {
+        EnquiryRepository repository = inject(EnquiryRepository.class);
         SyncSingleRecordTask syncRecordTask = new SyncSingleRecordTask(
-                new EnquirySyncService(this.getContext().getSharedPreferences(), new EnquiryHttpDao(), enquiryRepository), enquiryRepository, getCurrentUser());
+                new EnquirySyncService(this.getContext().getSharedPreferences(), new EnquiryHttpDao(), repository), repository, getCurrentUser());
         return syncRecordTask;
     }
 }
@@ -39,7 +39,10 @@ public class BaseModelViewAdapter<T> extends ArrayAdapter<T> {
     }
 
     protected void assignThumbnail(BaseModel model, ImageView imageView) {
-        String current_photo_key = model.optString("current_photo_key");
+        assignThumbnail(model.optString("current_photo_key"), imageView);
+    }
+
+    protected void assignThumbnail(String current_photo_key, ImageView imageView) {
         if (cancelPotentialDownload(current_photo_key, imageView)) {
             AssignThumbnailAsyncTask task = new AssignThumbnailAsyncTask(imageView, photoCaptureHelper);
             ThumbnailDrawable drawable = new ThumbnailDrawable(task);
@@ -74,15 +77,19 @@ public class BaseModelViewAdapter<T> extends ArrayAdapter<T> {
     }
 
     protected View.OnClickListener createClickListener(final BaseModel object, final Class<? extends CollectionActivity> activityToLaunch) {
+        try {
+            return createClickListener(object.getUniqueId(), activityToLaunch);
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    protected View.OnClickListener createClickListener(final String id, final Class<? extends CollectionActivity> activityToLaunch) {
         return new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 Intent intent = new Intent(context, activityToLaunch);
-                try {
-                    intent.putExtra("id", object.getUniqueId());
-                } catch (JSONException e) {
-                    throw new RuntimeException(e);
-                }
+                intent.putExtra("id", id);
                 Activity activity = (Activity) context;
                 activity.finish();
                 activity.startActivity(intent);
@@ -10,21 +10,28 @@ import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.activity.ViewChildActivity;
 import com.rapidftr.forms.FormField;
-import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
+import com.rapidftr.repository.AsyncRepository;
+import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.view.ChildHighlightedFieldViewGroup;
-import org.json.JSONException;
+import com.rapidftr.view.ErrorToastCallback;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import static android.content.Context.LAYOUT_INFLATER_SERVICE;
 
-public class ChildViewAdapter extends BaseModelViewAdapter<Child> {
+public class ChildViewAdapter extends BaseModelViewAdapter<ChildSummary> {
 
     protected Map<Integer, FormField> highlightedFields;
+    protected AsyncRepository<ChildRepository> repository;
+    protected int pageSize;
+    protected boolean hasMorePages;
+    protected boolean loadingPage;
 
-    public ChildViewAdapter(Context context, int textViewResourceId, List<Child> children) {
+    public ChildViewAdapter(Context context, int textViewResourceId, List<ChildSummary> children) {
         super(context, textViewResourceId, children);
 
         List<FormField> fields = RapidFtrApplication.getApplicationInstance().getChildHighlightedFields();
@@ -37,6 +44,51 @@ public class ChildViewAdapter extends BaseModelViewAdapter<Child> {
         }
     }
 
+    /*
+     * Paged mode: starts with the first page of the repository and loads the next one
+     * when the last loaded row is displayed, instead of holding every child in memory up front.
+     * Pages are read on the database thread and added once they arrive.
+     */
+    public ChildViewAdapter(Context context, int textViewResourceId, AsyncRepository<ChildRepository> repository, int pageSize) {
+        this(context, textViewResourceId, new ArrayList<ChildSummary>());
+        this.repository = repository;
+        this.pageSize = pageSize;
+        this.hasMorePages = true;
+        loadNextPage();
+    }
+
+    public boolean hasMorePages() {
+        return hasMorePages;
+    }
+
+    protected void loadNextPage() {
+        if (loadingPage) {
+            return;
+        }
+        loadingPage = true;
+        final String lastId = objects.isEmpty() ? null : objects.get(objects.size() - 1).getUniqueId();
+        repository.query(new AsyncRepository.Query<ChildRepository, List<ChildSummary>>() {
+            @Override
+            public List<ChildSummary> run(ChildRepository repository) {
+                return repository.getSummaryPage(lastId, pageSize);
+            }
+        }, new ErrorToastCallback<List<ChildSummary>>(context, R.string.fetch_child_error) {
+            @Override
+            public void onResult(List<ChildSummary> page) {
+                loadingPage = false;
+                hasMorePages = page.size() == pageSize;
+                objects.addAll(page);
+                notifyDataSetChanged();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                loadingPage = false;
+                super.onError(e);
+            }
+        });
+    }
+
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
         View view = convertView;
@@ -44,7 +96,10 @@ public class ChildViewAdapter extends BaseModelViewAdapter<Child> {
             LayoutInflater vi = (LayoutInflater) context.getSystemService(LAYOUT_INFLATER_SERVICE);
             view = vi.inflate(textViewResourceId, null);
         }
-        final Child child = objects.get(position);
+        if (hasMorePages && position == objects.size() - 1) {
+            loadNextPage();
+        }
+        final ChildSummary child = objects.get(position);
         if (child != null) {
             TextView uniqueIdView = (TextView) view.findViewById(R.id.row_child_unique_id);
 
@@ -52,14 +107,10 @@ public class ChildViewAdapter extends BaseModelViewAdapter<Child> {
             childHighlightedFieldViewGroup.prepare(child, highlightedFields);
 
             ImageView imageView = (ImageView) view.findViewById(R.id.thumbnail);
-            try {
-                setFields(String.valueOf(child.getShortId()), uniqueIdView);
-                assignThumbnail(child, imageView);
+            setFields(String.valueOf(child.getShortId()), uniqueIdView);
+            assignThumbnail(child.getThumbnailKey(), imageView);
 
-                view.setOnClickListener(createClickListener(child, ViewChildActivity.class));
-            } catch (JSONException e) {
-                throw new RuntimeException(e);
-            }
+            view.setOnClickListener(createClickListener(child.getUniqueId(), ViewChildActivity.class));
         }
         return view;
     }
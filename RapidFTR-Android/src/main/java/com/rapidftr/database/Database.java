@@ -11,7 +11,9 @@ import static com.google.common.collect.Iterables.filter;
 
 public enum Database {
 
-    child("children"), enquiry("enquiry"),;
+    child("children"), enquiry("enquiry"), childSearchIndex("child_search_index"), childHighlights("child_highlights"), childHistories("child_histories"),
+    enquiryCriteriaIndex("enquiry_criteria_index"), enquiryMatches("enquiry_matches"), syncPlan("sync_plan"),
+    syncCheckpoint("sync_checkpoint");
     private String tableName;
 
     Database(String tableName) {
@@ -71,7 +73,8 @@ public enum Database {
         created_at("created_at", true, true),
         created_organisation("created_organisation", true, false),
 
-        last_synced_at("last_synced_at", true, true);
+        last_synced_at("last_synced_at", true, true),
+        unsynced_fields("unsynced_fields", true, true);
         private @Getter final String columnName;
         private final boolean isInternal;
         private final boolean isSystem;
@@ -125,4 +128,65 @@ public enum Database {
            return allColumns;
         }
     }
-}
\ No newline at end of file
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum ChildSearchIndexColumn {
+        child_id("child_id"),
+        field("field"),
+        token("token");
+
+        private @Getter final String columnName;
+    }
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum ChildHighlightsColumn {
+        child_id("child_id"),
+        field("field"),
+        value("value");
+
+        private @Getter final String columnName;
+    }
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum ChildHistoriesColumn {
+        child_id("child_id"),
+        datetime("datetime"),
+        history("history");
+
+        private @Getter final String columnName;
+    }
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum EnquiryCriteriaIndexColumn {
+        enquiry_id("enquiry_id"),
+        token("token");
+
+        private @Getter final String columnName;
+    }
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum EnquiryMatchesColumn {
+        enquiry_id("enquiry_id"),
+        child_internal_id("child_internal_id"),
+        score("score");
+
+        private @Getter final String columnName;
+    }
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum SyncPlanColumn {
+        record_type("record_type"),
+        record_id("record_id");
+
+        private @Getter final String columnName;
+    }
+
+    @RequiredArgsConstructor(suppressConstructorProperties = true)
+    public enum SyncCheckpointColumn {
+        record_type("record_type"),
+        sequence("sequence"),
+        pending_sequence("pending_sequence");
+
+        private @Getter final String columnName;
+    }
+}
@@ -0,0 +1,123 @@
+package com.rapidftr.database;
+
+import android.database.Cursor;
+import android.util.Log;
+import com.google.inject.Inject;
+import lombok.AllArgsConstructor;
+import lombok.Cleanup;
+import lombok.Getter;
+
+import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
+
+/*
+ * Gives back the pages freed by records being replaced with bigger ones or deleted on logout,
+ * and refreshes the statistics the query planner picks indexes with.
+ * Never run inside a transaction or while a sync is running, VACUUM refuses to while other statements are in
+ * progress; when it does anyway the rest of the maintenance still runs.
+ */
+public class DatabaseMaintenance {
+
+    private static final int AUTO_VACUUM_NONE = 0;
+
+    private final DatabaseSession session;
+
+    @Inject
+    public DatabaseMaintenance(DatabaseSession session) {
+        this.session = session;
+    }
+
+    public Report run() {
+        Size before = size();
+        if (before.getFreePages() > 0) {
+            try {
+                vacuum();
+            } catch (RuntimeException e) {
+                Log.w(APP_IDENTIFIER, "Database could not be vacuumed", e);
+            }
+        }
+        session.execSQL("ANALYZE");
+        checkpoint();
+        Report report = new Report(before, size());
+        Log.i(APP_IDENTIFIER, "Database maintenance: " + report);
+        return report;
+    }
+
+    public Size size() {
+        return new Size(pragma("page_size"), pragma("page_count"), pragma("freelist_count"));
+    }
+
+    /*
+     * Databases created before auto_vacuum was set have to be rebuilt once to start tracking free pages,
+     * after that incremental_vacuum only moves the pages at the end of the file into the free ones.
+     */
+    protected void vacuum() {
+        if (pragma("auto_vacuum") == AUTO_VACUUM_NONE) {
+            session.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            session.execSQL("VACUUM");
+        } else {
+            // every step of the pragma frees a single page, so it has to be read to the end, and on the writer
+            // connection, which is where queries inside a transaction run
+            session.beginTransaction();
+            try {
+                @Cleanup Cursor cursor = session.rawQuery("PRAGMA incremental_vacuum", null);
+                cursor.getCount();
+                session.setTransactionSuccessful();
+            } finally {
+                session.endTransaction();
+            }
+        }
+    }
+
+    /*
+     * In write-ahead log mode the file only shrinks once the freed pages are checkpointed. The pragma returns a
+     * row, which execSQL refuses on SQLCipher, so it is run as a query and its row read.
+     */
+    protected void checkpoint() {
+        @Cleanup Cursor journalMode = session.rawQuery("PRAGMA journal_mode", null);
+        if (!journalMode.moveToNext() || !"wal".equalsIgnoreCase(journalMode.getString(0))) {
+            return;
+        }
+        @Cleanup Cursor cursor = session.rawQuery("PRAGMA wal_checkpoint", null);
+        if (cursor.moveToNext() && cursor.getLong(0) != 0) {
+            Log.w(APP_IDENTIFIER, "Database checkpoint was blocked by another connection");
+        }
+    }
+
+    private long pragma(String name) {
+        @Cleanup Cursor cursor = session.rawQuery("PRAGMA " + name, null);
+        return cursor.moveToNext() ? cursor.getLong(0) : 0;
+    }
+
+    @Getter
+    @AllArgsConstructor(suppressConstructorProperties = true)
+    public static class Size {
+        private final long pageSize;
+        private final long pages;
+        private final long freePages;
+
+        public long getBytes() {
+            return pageSize * pages;
+        }
+
+        public long getFreeBytes() {
+            return pageSize * freePages;
+        }
+
+        @Override
+        public String toString() {
+            return getBytes() / 1024 + " KB (" + getFreeBytes() / 1024 + " KB free)";
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor(suppressConstructorProperties = true)
+    public static class Report {
+        private final Size before;
+        private final Size after;
+
+        @Override
+        public String toString() {
+            return before + " before, " + after + " after";
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.rapidftr.database;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import android.os.BatteryManager;
+import android.os.PowerManager;
+import android.util.Log;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import com.rapidftr.RapidFtrApplication;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
+
+/*
+ * Runs the database maintenance of the logged in user at most once a day, when the device is plugged in
+ * with its screen off. Declared in the manifest for the power being connected and registered by the
+ * application for the screen being turned off, whichever of the two happens last starts it.
+ */
+public class DatabaseMaintenanceReceiver extends BroadcastReceiver {
+
+    public static final String LAST_DATABASE_MAINTENANCE = "LAST_DATABASE_MAINTENANCE";
+    public static final long MAINTENANCE_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    public static IntentFilter screenOffFilter() {
+        return new IntentFilter(Intent.ACTION_SCREEN_OFF);
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        RapidFtrApplication application = RapidFtrApplication.getApplicationInstance();
+        if (!application.isLoggedIn() || application.getSyncTask() != null
+                || !isIdleAndCharging(context) || !isDue(application.getSharedPreferences(), preferenceKey(application))) {
+            return;
+        }
+        application.getSharedPreferences().edit().putLong(preferenceKey(application), System.currentTimeMillis()).commit();
+        maintenanceTask(application).executeOnExecutor(databaseExecutor(application));
+    }
+
+    protected boolean isIdleAndCharging(Context context) {
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        Intent battery = context.getApplicationContext().registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        boolean charging = battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+        return charging && !powerManager.isScreenOn();
+    }
+
+    protected boolean isDue(SharedPreferences preferences, String key) {
+        return System.currentTimeMillis() - preferences.getLong(key, 0) >= MAINTENANCE_INTERVAL;
+    }
+
+    // every user has a database of their own
+    protected String preferenceKey(RapidFtrApplication application) {
+        return LAST_DATABASE_MAINTENANCE + "_" + application.getCurrentUser().getUserName();
+    }
+
+    protected AsyncTask<Void, Void, Void> maintenanceTask(final RapidFtrApplication application) {
+        return new AsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... params) {
+                runMaintenance(application);
+                return null;
+            }
+        };
+    }
+
+    // a sync started since the broadcast holds transactions VACUUM cannot run alongside, so it waits for the next one
+    protected void runMaintenance(RapidFtrApplication application) {
+        if (application.getSyncTask() != null) {
+            application.getSharedPreferences().edit().remove(preferenceKey(application)).commit();
+            return;
+        }
+        DatabaseSession session = application.getInjector().getInstance(DatabaseSession.class);
+        try {
+            new DatabaseMaintenance(session).run();
+        } catch (RuntimeException e) {
+            Log.e(APP_IDENTIFIER, "Database maintenance failed", e);
+        } finally {
+            try {
+                session.close();
+            } catch (IOException e) {
+                Log.e(APP_IDENTIFIER, "Could not release the database session", e);
+            }
+        }
+    }
+
+    // shared with the repositories' background queries, so maintenance never runs alongside them
+    private Executor databaseExecutor(RapidFtrApplication application) {
+        return application.getInjector().getInstance(Key.get(Executor.class, Names.named("DATABASE_EXECUTOR")));
+    }
+}
@@ -12,4 +12,13 @@ public interface DatabaseSession extends Closeable {
     public int update(String table, ContentValues contentvalues, String whereClause, String[] whereArgs);
     public long replace(String table, String nullColumnHack, ContentValues values);
     public long replaceOrThrow(String table, String nullColumnHack, ContentValues values);
+    public int delete(String table, String whereClause, String[] whereArgs);
+
+    // run through reusable compiled statements, for queries and inserts repeated on hot paths
+    public long simpleQueryForLong(String sql, String[] bindArgs);
+    public long executeInsert(String sql, String[] bindArgs);
+
+    public void beginTransaction();
+    public void setTransactionSuccessful();
+    public void endTransaction();
 }
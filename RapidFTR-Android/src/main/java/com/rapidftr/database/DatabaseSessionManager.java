@@ -0,0 +1,113 @@
+package com.rapidftr.database;
+
+import com.google.inject.Inject;
+import com.google.inject.Provider;
+import com.google.inject.Singleton;
+import com.rapidftr.model.User;
+import lombok.Delegate;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/*
+ * Keeps the database of the logged in user open across screens and sync runs, so the
+ * SQLCipher key derivation is paid once per login instead of once per injected repository.
+ * Closing a session handed out here only releases it, the database is closed on logout or
+ * when another user logs in, once every session has been released.
+ */
+@Singleton
+public class DatabaseSessionManager {
+
+    private final Provider<DatabaseHelper> helperProvider;
+    private OpenDatabase database;
+
+    @Inject
+    public DatabaseSessionManager(Provider<DatabaseHelper> helperProvider) {
+        this.helperProvider = helperProvider;
+    }
+
+    public synchronized DatabaseSession openSession(User user) {
+        if (database != null && !database.isFor(user)) {
+            close();
+        }
+        if (database == null) {
+            database = new OpenDatabase(user.getDbName(), helperProvider.get());
+        }
+        return database.openSession();
+    }
+
+    public synchronized void close() {
+        if (database != null) {
+            database.closeWhenReleased();
+            database = null;
+        }
+    }
+
+    public synchronized boolean isOpen() {
+        return database != null;
+    }
+
+    private static class OpenDatabase {
+        private final String dbName;
+        private final DatabaseHelper helper;
+        private int openSessions;
+        private boolean closing;
+
+        OpenDatabase(String dbName, DatabaseHelper helper) {
+            this.dbName = dbName;
+            this.helper = helper;
+        }
+
+        boolean isFor(User user) {
+            return dbName == null ? user.getDbName() == null : dbName.equals(user.getDbName());
+        }
+
+        synchronized DatabaseSession openSession() {
+            openSessions++;
+            return new SharedSession(this, helper.getSession());
+        }
+
+        synchronized void release() {
+            openSessions--;
+            if (closing && openSessions == 0) {
+                close();
+            }
+        }
+
+        synchronized void closeWhenReleased() {
+            closing = true;
+            if (openSessions == 0) {
+                close();
+            }
+        }
+
+        synchronized void close() {
+            try {
+                helper.close();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static class SharedSession implements DatabaseSession {
+        private final OpenDatabase database;
+        private boolean released;
+
+        @Delegate(types = DatabaseSession.class, excludes = Closeable.class)
+        private final DatabaseSession session;
+
+        SharedSession(OpenDatabase database, DatabaseSession session) {
+            this.database = database;
+            this.session = session;
+        }
+
+        @Override
+        public synchronized void close() {
+            if (!released) {
+                released = true;
+                database.release();
+            }
+        }
+    }
+}
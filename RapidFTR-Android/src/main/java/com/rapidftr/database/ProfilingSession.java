@@ -0,0 +1,186 @@
+package com.rapidftr.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import lombok.Delegate;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+ * Times every statement run through the wrapped session and records it with the profiler.
+ * SQLite only runs a query when its cursor is first read, so a query is recorded then, its time
+ * being the prepare plus that first read, which fills the cursor's first window as the caller would anyway.
+ */
+public class ProfilingSession implements DatabaseSession {
+
+    @Delegate(types = DatabaseSession.class, excludes = ProfiledMethods.class)
+    private final DatabaseSession session;
+
+    private final QueryProfiler profiler;
+
+    public ProfilingSession(DatabaseSession session, QueryProfiler profiler) {
+        this.session = session;
+        this.profiler = profiler;
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        long start = System.nanoTime();
+        Cursor cursor = session.rawQuery(sql, selectionArgs);
+        return new ProfiledCursor(cursor, sql, System.nanoTime() - start);
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        long start = System.nanoTime();
+        session.execSQL(sql);
+        profiler.record(sql, System.nanoTime() - start, 0);
+    }
+
+    @Override
+    public int update(String table, ContentValues contentvalues, String whereClause, String[] whereArgs) {
+        long start = System.nanoTime();
+        int rows = session.update(table, contentvalues, whereClause, whereArgs);
+        profiler.record("UPDATE " + table + " SET " + columns(contentvalues) + where(whereClause), System.nanoTime() - start, rows);
+        return rows;
+    }
+
+    @Override
+    public long replace(String table, String nullColumnHack, ContentValues values) {
+        long start = System.nanoTime();
+        long rowId = session.replace(table, nullColumnHack, values);
+        profiler.record("REPLACE INTO " + table + " " + columns(values), System.nanoTime() - start, 1);
+        return rowId;
+    }
+
+    @Override
+    public long replaceOrThrow(String table, String nullColumnHack, ContentValues values) {
+        long start = System.nanoTime();
+        long rowId = session.replaceOrThrow(table, nullColumnHack, values);
+        profiler.record("REPLACE INTO " + table + " " + columns(values), System.nanoTime() - start, 1);
+        return rowId;
+    }
+
+    @Override
+    public int delete(String table, String whereClause, String[] whereArgs) {
+        long start = System.nanoTime();
+        int rows = session.delete(table, whereClause, whereArgs);
+        profiler.record("DELETE FROM " + table + where(whereClause), System.nanoTime() - start, rows);
+        return rows;
+    }
+
+    @Override
+    public long simpleQueryForLong(String sql, String[] bindArgs) {
+        long start = System.nanoTime();
+        long result = session.simpleQueryForLong(sql, bindArgs);
+        profiler.record(sql, System.nanoTime() - start, 1);
+        return result;
+    }
+
+    @Override
+    public long executeInsert(String sql, String[] bindArgs) {
+        long start = System.nanoTime();
+        long rowId = session.executeInsert(sql, bindArgs);
+        profiler.record(sql, System.nanoTime() - start, 1);
+        return rowId;
+    }
+
+    // commits are where most of the write cost of a transaction shows up
+    @Override
+    public void endTransaction() {
+        long start = System.nanoTime();
+        session.endTransaction();
+        profiler.record("END TRANSACTION", System.nanoTime() - start, 0);
+    }
+
+    private class ProfiledCursor extends CursorWrapper {
+        private final String sql;
+        private final long prepareNanos;
+        private boolean recorded;
+
+        ProfiledCursor(Cursor cursor, String sql, long prepareNanos) {
+            super(cursor);
+            this.sql = sql;
+            this.prepareNanos = prepareNanos;
+        }
+
+        @Override
+        public int getCount() {
+            long start = System.nanoTime();
+            int count = super.getCount();
+            record(start);
+            return count;
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            long start = System.nanoTime();
+            boolean moved = super.moveToPosition(position);
+            record(start);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            long start = System.nanoTime();
+            boolean moved = super.moveToFirst();
+            record(start);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            long start = System.nanoTime();
+            boolean moved = super.moveToNext();
+            record(start);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToLast() {
+            long start = System.nanoTime();
+            boolean moved = super.moveToLast();
+            record(start);
+            return moved;
+        }
+
+        @Override
+        public boolean move(int offset) {
+            long start = System.nanoTime();
+            boolean moved = super.move(offset);
+            record(start);
+            return moved;
+        }
+
+        // once the first read has run the query, the row count is known without reading further
+        private void record(long readStart) {
+            if (!recorded) {
+                recorded = true;
+                long readNanos = System.nanoTime() - readStart;
+                profiler.record(sql, prepareNanos + readNanos, super.getCount());
+            }
+        }
+    }
+
+    private static Set<String> columns(ContentValues values) {
+        return new TreeSet<String>(values.keySet());
+    }
+
+    private static String where(String whereClause) {
+        return whereClause == null ? "" : " WHERE " + whereClause;
+    }
+
+    private interface ProfiledMethods {
+        Cursor rawQuery(String sql, String[] selectionArgs);
+        void execSQL(String sql);
+        int update(String table, ContentValues contentvalues, String whereClause, String[] whereArgs);
+        long replace(String table, String nullColumnHack, ContentValues values);
+        long replaceOrThrow(String table, String nullColumnHack, ContentValues values);
+        int delete(String table, String whereClause, String[] whereArgs);
+        long simpleQueryForLong(String sql, String[] bindArgs);
+        long executeInsert(String sql, String[] bindArgs);
+        void endTransaction();
+    }
+}
@@ -0,0 +1,167 @@
+package com.rapidftr.database;
+
+import android.os.Looper;
+import android.util.Log;
+import lombok.Cleanup;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
+
+/*
+ * Latency histograms, row counts and main thread calls of every statement shape run through a ProfilingSession.
+ * Statements are grouped by their SQL with literals and argument lists folded, so neither the report
+ * nor the slow query log ever holds the values of a record.
+ */
+public class QueryProfiler {
+
+    static final long[] BUCKET_LIMITS_MILLIS = {1, 4, 16, 64, 256, 1024};
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern ARGUMENT_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final long slowQueryMillis;
+    private final File reportFile;
+    private final Map<String, Stats> stats = new HashMap<String, Stats>();
+
+    public QueryProfiler(long slowQueryMillis, File reportFile) {
+        this.slowQueryMillis = slowQueryMillis;
+        this.reportFile = reportFile;
+    }
+
+    public void record(String sql, long elapsedNanos, long rows) {
+        String shape = shapeOf(sql);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        boolean onMainThread = Looper.myLooper() == Looper.getMainLooper();
+
+        boolean firstOnMainThread;
+        synchronized (this) {
+            Stats shapeStats = stats.get(shape);
+            if (shapeStats == null) {
+                shapeStats = new Stats(shape);
+                stats.put(shape, shapeStats);
+            }
+            firstOnMainThread = onMainThread && shapeStats.mainThreadCount == 0;
+            shapeStats.add(elapsedNanos, rows, onMainThread);
+        }
+
+        if (elapsedMillis >= slowQueryMillis) {
+            Log.w(APP_IDENTIFIER, "Slow query, " + elapsedMillis + " ms for " + rows + " rows: " + shape);
+        }
+        if (firstOnMainThread) {
+            Log.w(APP_IDENTIFIER, "Query on the main thread: " + shape);
+        }
+    }
+
+    public synchronized List<Stats> getStats() {
+        List<Stats> byTotalTime = new ArrayList<Stats>();
+        for (Stats shapeStats : stats.values()) {
+            byTotalTime.add(shapeStats.copy());
+        }
+        Collections.sort(byTotalTime, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats lhs, Stats rhs) {
+                return lhs.totalNanos < rhs.totalNanos ? 1 : lhs.totalNanos == rhs.totalNanos ? 0 : -1;
+            }
+        });
+        return byTotalTime;
+    }
+
+    public synchronized void reset() {
+        stats.clear();
+    }
+
+    // one line per statement shape, slowest in total first
+    public void writeReport(Writer writer) {
+        PrintWriter report = new PrintWriter(writer);
+        report.print("total_ms\tcount\tavg_ms\tmax_ms\trows\tmain_thread");
+        for (long limit : BUCKET_LIMITS_MILLIS) {
+            report.print("\t<" + limit + "ms");
+        }
+        report.println("\t>=" + BUCKET_LIMITS_MILLIS[BUCKET_LIMITS_MILLIS.length - 1] + "ms\tstatement");
+        for (Stats shapeStats : getStats()) {
+            report.print(TimeUnit.NANOSECONDS.toMillis(shapeStats.totalNanos) + "\t" + shapeStats.count
+                    + "\t" + TimeUnit.NANOSECONDS.toMillis(shapeStats.totalNanos / shapeStats.count)
+                    + "\t" + TimeUnit.NANOSECONDS.toMillis(shapeStats.maxNanos)
+                    + "\t" + shapeStats.rows + "\t" + shapeStats.mainThreadCount);
+            for (long bucket : shapeStats.histogram) {
+                report.print("\t" + bucket);
+            }
+            report.println("\t" + shapeStats.shape);
+        }
+        report.flush();
+    }
+
+    // written when the user logs out, pulled from the device to see what to fix on real datasets
+    public void saveReport() throws IOException {
+        if (getStats().isEmpty()) {
+            return;
+        }
+        @Cleanup Writer writer = new FileWriter(reportFile);
+        writeReport(writer);
+    }
+
+    static String shapeOf(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        shape = ARGUMENT_LIST.matcher(shape).replaceAll("?, ...");
+        return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+    }
+
+    @Getter
+    public static class Stats {
+        private final String shape;
+        private long count;
+        private long mainThreadCount;
+        private long totalNanos;
+        private long maxNanos;
+        private long rows;
+        private final long[] histogram = new long[BUCKET_LIMITS_MILLIS.length + 1];
+
+        Stats(String shape) {
+            this.shape = shape;
+        }
+
+        void add(long elapsedNanos, long rows, boolean onMainThread) {
+            count++;
+            totalNanos += elapsedNanos;
+            maxNanos = Math.max(maxNanos, elapsedNanos);
+            this.rows += rows;
+            if (onMainThread) {
+                mainThreadCount++;
+            }
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+            int bucket = 0;
+            while (bucket < BUCKET_LIMITS_MILLIS.length && elapsedMillis >= BUCKET_LIMITS_MILLIS[bucket]) {
+                bucket++;
+            }
+            histogram[bucket]++;
+        }
+
+        Stats copy() {
+            Stats copy = new Stats(shape);
+            copy.count = count;
+            copy.mainThreadCount = mainThreadCount;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.rows = rows;
+            System.arraycopy(histogram, 0, copy.histogram, 0, histogram.length);
+            return copy;
+        }
+    }
+}
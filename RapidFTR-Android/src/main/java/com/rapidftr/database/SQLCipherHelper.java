@@ -1,29 +1,72 @@
 package com.rapidftr.database;
 
 import android.content.Context;
+import android.database.Cursor;
 import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.rapidftr.database.migration.Migrations;
 import com.rapidftr.model.User;
+import com.rapidftr.repository.ChildHighlights;
+import com.rapidftr.repository.ChildHistories;
+import com.rapidftr.repository.ChildSearchIndex;
+import com.rapidftr.repository.EnquiryMatcher;
+import lombok.Cleanup;
 import lombok.Getter;
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteOpenHelper;
+import org.json.JSONException;
 
 public class SQLCipherHelper extends SQLiteOpenHelper implements DatabaseHelper {
 
-    public static final int DB_VERSION = 1;
+    public static final int DB_VERSION = 11;
+    public static final int READER_CONNECTIONS = 2;
 
-    protected @Getter final DatabaseSession session;
+    protected @Getter final SQLCipherSession session;
 
     @Inject
     public SQLCipherHelper(User user, Context context) {
+        this(user, context, true);
+    }
+
+    public SQLCipherHelper(User user, Context context, boolean writeAheadLogging) {
         super(context, user.getDbName(), null, DB_VERSION);
         SQLiteDatabase.loadLibs(context);
 
-        this.session = new SQLCipherSession(getWritableDatabase(user.getDbKey()));
+        SQLiteDatabase database = getWritableDatabase(user.getDbKey());
+        if (writeAheadLogging && enableWriteAheadLogging(database)) {
+            final String path = context.getDatabasePath(user.getDbName()).getPath();
+            final String key = user.getDbKey();
+            this.session = new SQLCipherSession(database, READER_CONNECTIONS, new Provider<SQLiteDatabase>() {
+                @Override
+                public SQLiteDatabase get() {
+                    return openReader(path, key);
+                }
+            });
+        } else {
+            this.session = new SQLCipherSession(database);
+        }
+    }
+
+    // readers don't block the writer and the writer doesn't block readers in WAL mode
+    protected boolean enableWriteAheadLogging(SQLiteDatabase database) {
+        @Cleanup Cursor cursor = database.rawQuery("PRAGMA journal_mode = WAL", null);
+        return cursor.moveToNext() && "wal".equalsIgnoreCase(cursor.getString(0));
+    }
+
+    /*
+     * Opened read-write with query_only set rather than OPEN_READONLY,
+     * as a read-only connection cannot always attach to the shared memory index of the write-ahead log.
+     */
+    protected SQLiteDatabase openReader(String path, String key) {
+        SQLiteDatabase reader = SQLiteDatabase.openDatabase(path, key, null, SQLiteDatabase.OPEN_READWRITE);
+        reader.rawExecSQL("PRAGMA query_only = 1");
+        return reader;
     }
 
     @Override
     public void onCreate(SQLiteDatabase database) {
+        // only takes effect before the first table is created, older databases are converted by DatabaseMaintenance
+        database.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
         for (Migrations migration : Migrations.values()) {
             database.execSQL(migration.getSql());
         }
@@ -31,13 +74,38 @@ public class SQLCipherHelper extends SQLiteOpenHelper implements DatabaseHelper
 
     @Override
     public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
-        for (Migrations migration : Migrations.forVersion(newVersion)) {
+        for (Migrations migration : Migrations.forUpgrade(oldVersion, newVersion)) {
             database.execSQL(migration.getSql());
         }
+        migrateRecords(database, oldVersion);
+    }
+
+    // fills the tables added since oldVersion from the children and enquiries already on the device
+    protected void migrateRecords(SQLiteDatabase database, int oldVersion) {
+        SQLCipherSession session = new SQLCipherSession(database);
+        try {
+            if (oldVersion < 2) {
+                new ChildSearchIndex(session).rebuild();
+            }
+            if (oldVersion < 3) {
+                new ChildHighlights(session).rebuild();
+            }
+            if (oldVersion < 6) {
+                new ChildHistories(session).migrate();
+            }
+            if (oldVersion < 8) {
+                new EnquiryMatcher(session).rebuild();
+            }
+        } catch (JSONException e) {
+            throw new RuntimeException(e);
+        } finally {
+            session.clearStatementCache();
+        }
     }
 
     @Override
     public void close() {
+        session.close();
         super.close();
         SQLiteDatabase.releaseMemory();
     }
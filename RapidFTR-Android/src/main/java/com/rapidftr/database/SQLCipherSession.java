@@ -1,12 +1,208 @@
 package com.rapidftr.database;
 
+import android.database.Cursor;
+import com.google.inject.Provider;
 import lombok.Delegate;
-import lombok.RequiredArgsConstructor;
+import lombok.Getter;
 import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 
-@RequiredArgsConstructor(suppressConstructorProperties = true)
 public class SQLCipherSession implements DatabaseSession {
 
-    @Delegate(types = DatabaseSession.class)
+    public static final int STATEMENT_CACHE_SIZE = 32;
+
+    @Delegate(types = DatabaseSession.class, excludes = OverriddenMethods.class)
     protected final SQLiteDatabase database;
+
+    /*
+     * Connections to the same write-ahead logged database, queries outside a transaction run on them.
+     * Each is opened, and its key derived, the first time a query is given to it.
+     */
+    private final SQLiteDatabase[] readers;
+    private final Provider<SQLiteDatabase> readerOpener;
+    private final AtomicInteger nextReader = new AtomicInteger();
+
+    private final StatementCache writerStatements;
+    private final StatementCache[] readerStatements;
+
+    @Getter private long statementCacheHits;
+    @Getter private long statementCacheMisses;
+
+    public SQLCipherSession(SQLiteDatabase database) {
+        this(database, Collections.<SQLiteDatabase>emptyList());
+    }
+
+    public SQLCipherSession(SQLiteDatabase database, List<SQLiteDatabase> readers) {
+        this(database, readers.toArray(new SQLiteDatabase[readers.size()]), null);
+    }
+
+    public SQLCipherSession(SQLiteDatabase database, int readerConnections, Provider<SQLiteDatabase> readerOpener) {
+        this(database, new SQLiteDatabase[readerConnections], readerOpener);
+    }
+
+    private SQLCipherSession(SQLiteDatabase database, SQLiteDatabase[] readers, Provider<SQLiteDatabase> readerOpener) {
+        this.database = database;
+        this.readers = readers;
+        this.readerOpener = readerOpener;
+        this.writerStatements = new StatementCache(database);
+        this.readerStatements = new StatementCache[readers.length];
+    }
+
+    /*
+     * A transaction only sees its own uncommitted writes on the writer connection,
+     * so the reader connections are used only when the calling thread is not in one.
+     */
+    @Override
+    public Cursor rawQuery(String sql, String[] selectionArgs) {
+        if (readers.length == 0 || database.inTransaction()) {
+            return database.rawQuery(sql, selectionArgs);
+        }
+        return readers[nextReaderIndex()].rawQuery(sql, selectionArgs);
+    }
+
+    // counts and lookups only read, so they go to the readers like rawQuery does
+    @Override
+    public long simpleQueryForLong(String sql, String[] bindArgs) {
+        StatementCache statements = readers.length == 0 || database.inTransaction() ? writerStatements : readerStatements[nextReaderIndex()];
+        SQLiteStatement statement = statements.take(sql, bindArgs);
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            statements.putBack(sql, statement);
+        }
+    }
+
+    @Override
+    public long executeInsert(String sql, String[] bindArgs) {
+        SQLiteStatement statement = writerStatements.take(sql, bindArgs);
+        try {
+            return statement.executeInsert();
+        } finally {
+            writerStatements.putBack(sql, statement);
+        }
+    }
+
+    @Override
+    public void close() {
+        clearStatementCache();
+        synchronized (readers) {
+            for (SQLiteDatabase reader : readers) {
+                if (reader != null) {
+                    reader.close();
+                }
+            }
+        }
+        database.close();
+    }
+
+    public void clearStatementCache() {
+        writerStatements.clear();
+        synchronized (readers) {
+            for (StatementCache statements : readerStatements) {
+                if (statements != null) {
+                    statements.clear();
+                }
+            }
+        }
+    }
+
+    // opens the reader when it is the first query given to it
+    private int nextReaderIndex() {
+        int index = (nextReader.getAndIncrement() & Integer.MAX_VALUE) % readers.length;
+        synchronized (readers) {
+            if (readers[index] == null) {
+                readers[index] = readerOpener.get();
+            }
+            if (readerStatements[index] == null) {
+                readerStatements[index] = new StatementCache(readers[index]);
+            }
+        }
+        return index;
+    }
+
+    private synchronized void countStatement(boolean hit) {
+        if (hit) {
+            statementCacheHits++;
+        } else {
+            statementCacheMisses++;
+        }
+    }
+
+    /*
+     * Least recently used compiled statements of one connection. A statement is taken out of the cache while it
+     * runs, so the cache is only locked to look it up or put it back, never while the database is busy; a thread
+     * asking for a statement another one is running compiles one of its own.
+     */
+    private class StatementCache {
+        private final SQLiteDatabase connection;
+        private final Map<String, SQLiteStatement> statements = new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+
+        StatementCache(SQLiteDatabase connection) {
+            this.connection = connection;
+        }
+
+        SQLiteStatement take(String sql, String[] bindArgs) {
+            SQLiteStatement statement;
+            synchronized (this) {
+                statement = statements.remove(sql);
+            }
+            countStatement(statement != null);
+            if (statement == null) {
+                statement = connection.compileStatement(sql);
+            }
+            statement.clearBindings();
+            for (int i = 0; bindArgs != null && i < bindArgs.length; i++) {
+                if (bindArgs[i] == null) {
+                    statement.bindNull(i + 1);
+                } else {
+                    statement.bindString(i + 1, bindArgs[i]);
+                }
+            }
+            return statement;
+        }
+
+        void putBack(String sql, SQLiteStatement statement) {
+            List<SQLiteStatement> evicted = new ArrayList<SQLiteStatement>();
+            synchronized (this) {
+                SQLiteStatement other = statements.put(sql, statement);
+                if (other != null) {
+                    evicted.add(other);
+                }
+                Iterator<SQLiteStatement> eldest = statements.values().iterator();
+                while (statements.size() > STATEMENT_CACHE_SIZE) {
+                    evicted.add(eldest.next());
+                    eldest.remove();
+                }
+            }
+            for (SQLiteStatement evictedStatement : evicted) {
+                evictedStatement.close();
+            }
+        }
+
+        void clear() {
+            List<SQLiteStatement> cleared;
+            synchronized (this) {
+                cleared = new ArrayList<SQLiteStatement>(statements.values());
+                statements.clear();
+            }
+            for (SQLiteStatement statement : cleared) {
+                statement.close();
+            }
+        }
+    }
+
+    private interface OverriddenMethods {
+        Cursor rawQuery(String sql, String[] selectionArgs);
+        long simpleQueryForLong(String sql, String[] bindArgs);
+        long executeInsert(String sql, String[] bindArgs);
+        void close();
+    }
 }
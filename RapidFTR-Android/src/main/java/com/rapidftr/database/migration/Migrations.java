@@ -20,6 +20,40 @@ public enum Migrations {
     v001_add_revColumn(1, MigrationSQL.addRevColumn),
     v001_add_last_synced_at_column(1,MigrationSQL.addLastSyncedAtColumn),
     v001_createEnquiryTable(1, MigrationSQL.createEnquiryTable),
+
+    v002_createChildSearchIndexTable(2, MigrationSQL.createChildSearchIndexTable),
+    v002_indexChildSearchIndexOnToken(2, MigrationSQL.indexChildSearchIndexOnToken),
+    v002_indexChildSearchIndexOnChildId(2, MigrationSQL.indexChildSearchIndexOnChildId),
+
+    v003_createChildHighlightsTable(3, MigrationSQL.createChildHighlightsTable),
+    v003_indexChildHighlightsOnFieldValue(3, MigrationSQL.indexChildHighlightsOnFieldValue),
+
+    v004_indexChildrenOnOwnerAndCreatedAt(4, MigrationSQL.indexChildrenOnOwnerAndCreatedAt),
+
+    v005_indexChildrenOnSyncedAndOwner(5, MigrationSQL.indexChildrenOnSyncedAndOwner),
+    v005_indexChildrenOnInternalId(5, MigrationSQL.indexChildrenOnInternalId),
+    v005_indexEnquiryOnSynced(5, MigrationSQL.indexEnquiryOnSynced),
+
+    v006_createChildHistoriesTable(6, MigrationSQL.createChildHistoriesTable),
+    v006_indexChildHistoriesOnChildIdAndDatetime(6, MigrationSQL.indexChildHistoriesOnChildIdAndDatetime),
+
+    v007_createEnquiryCriteriaIndexTable(7, MigrationSQL.createEnquiryCriteriaIndexTable),
+    v007_indexEnquiryCriteriaIndexOnToken(7, MigrationSQL.indexEnquiryCriteriaIndexOnToken),
+    v007_indexEnquiryCriteriaIndexOnEnquiryId(7, MigrationSQL.indexEnquiryCriteriaIndexOnEnquiryId),
+
+    v008_createEnquiryMatchesTable(8, MigrationSQL.createEnquiryMatchesTable),
+    v008_indexEnquiryMatchesOnEnquiryId(8, MigrationSQL.indexEnquiryMatchesOnEnquiryId),
+    v008_indexEnquiryMatchesOnChildInternalId(8, MigrationSQL.indexEnquiryMatchesOnChildInternalId),
+
+    v009_createSyncPlanTable(9, MigrationSQL.createSyncPlanTable),
+    v009_indexSyncPlanOnRecordId(9, MigrationSQL.indexSyncPlanOnRecordId),
+
+    v010_createSyncCheckpointTable(10, MigrationSQL.createSyncCheckpointTable),
+
+    v011_createSyncCheckpointTableWithPendingSequence(11, MigrationSQL.createSyncCheckpointTableWithPendingSequence),
+    v011_copySyncCheckpoints(11, MigrationSQL.copySyncCheckpoints),
+    v011_dropSyncCheckpointTable(11, MigrationSQL.dropSyncCheckpointTable),
+    v011_renameSyncCheckpointTableWithPendingSequence(11, MigrationSQL.renameSyncCheckpointTableWithPendingSequence),
     ;
 
     private int databaseVersion;
@@ -47,6 +81,15 @@ public enum Migrations {
         }));
     }
 
+    // migrations to upgrade a database from oldVersion to newVersion, in the order they have to run
+    public static List<Migrations> forUpgrade(final int oldVersion, final int newVersion){
+        return newArrayList(filter(asList(values()), new Predicate<Migrations>() {
+            public boolean apply(Migrations migration) {
+                return migration.databaseVersion > oldVersion && migration.databaseVersion <= newVersion;
+            }
+        }));
+    }
+
 }
 
 class MigrationSQL {
@@ -105,5 +148,158 @@ class MigrationSQL {
             + Database.EnquiryTableColumn.internal_rev.getColumnName() + "  text ,"
             + Database.EnquiryTableColumn.unique_identifier.getColumnName() + " text "
             + ");";
-}
 
+    public static final String createChildSearchIndexTable = "create table "
+            + Database.childSearchIndex.getTableName() + "("
+            + Database.ChildSearchIndexColumn.child_id.getColumnName() + " text not null,"
+            + Database.ChildSearchIndexColumn.field.getColumnName() + " text not null,"
+            + Database.ChildSearchIndexColumn.token.getColumnName() + " text not null"
+            + ");";
+
+    // covers the prefix lookup, so searching never has to touch the table rows
+    public static final String indexChildSearchIndexOnToken = "CREATE INDEX idx_child_search_index_token ON "
+            + Database.childSearchIndex.getTableName() + "("
+            + Database.ChildSearchIndexColumn.token.getColumnName() + ", "
+            + Database.ChildSearchIndexColumn.field.getColumnName() + ", "
+            + Database.ChildSearchIndexColumn.child_id.getColumnName()
+            + ")";
+
+    public static final String indexChildSearchIndexOnChildId = "CREATE INDEX idx_child_search_index_child_id ON "
+            + Database.childSearchIndex.getTableName() + "("
+            + Database.ChildSearchIndexColumn.child_id.getColumnName()
+            + ")";
+
+    public static final String createChildHighlightsTable = "create table "
+            + Database.childHighlights.getTableName() + "("
+            + Database.ChildHighlightsColumn.child_id.getColumnName() + " text not null,"
+            + Database.ChildHighlightsColumn.field.getColumnName() + " text not null,"
+            + Database.ChildHighlightsColumn.value.getColumnName() + " text collate nocase,"
+            + "primary key (" + Database.ChildHighlightsColumn.child_id.getColumnName() + ", " + Database.ChildHighlightsColumn.field.getColumnName() + ")"
+            + ");";
+
+    public static final String indexChildHighlightsOnFieldValue = "CREATE INDEX idx_child_highlights_field_value ON "
+            + Database.childHighlights.getTableName() + "("
+            + Database.ChildHighlightsColumn.field.getColumnName() + ", "
+            + Database.ChildHighlightsColumn.value.getColumnName() + ", "
+            + Database.ChildHighlightsColumn.child_id.getColumnName()
+            + ")";
+
+    // keyset paging of a user's children walks this index in creation order
+    public static final String indexChildrenOnOwnerAndCreatedAt = "CREATE INDEX idx_children_owner_created_at ON "
+            + Database.child.getTableName() + "("
+            + Database.ChildTableColumn.owner.getColumnName() + ", "
+            + Database.ChildTableColumn.created_at.getColumnName() + ", "
+            + Database.ChildTableColumn.id.getColumnName()
+            + ")";
+
+    // toBeSynced and currentUsersUnsyncedRecords
+    public static final String indexChildrenOnSyncedAndOwner = "CREATE INDEX idx_children_synced_owner ON "
+            + Database.child.getTableName() + "("
+            + Database.ChildTableColumn.synced.getColumnName() + ", "
+            + Database.ChildTableColumn.owner.getColumnName()
+            + ")";
+
+    public static final String indexChildrenOnInternalId = "CREATE INDEX idx_children_internal_id ON "
+            + Database.child.getTableName() + "("
+            + Database.ChildTableColumn.internal_id.getColumnName()
+            + ")";
+
+    public static final String indexEnquiryOnSynced = "CREATE INDEX idx_enquiry_synced ON "
+            + Database.enquiry.getTableName() + "("
+            + Database.EnquiryTableColumn.synced.getColumnName()
+            + ")";
+
+    public static final String createChildHistoriesTable = "create table "
+            + Database.childHistories.getTableName() + "("
+            + Database.ChildHistoriesColumn.child_id.getColumnName() + " text not null,"
+            + Database.ChildHistoriesColumn.datetime.getColumnName() + " text,"
+            + Database.ChildHistoriesColumn.history.getColumnName() + " text not null"
+            + ");";
+
+    public static final String indexChildHistoriesOnChildIdAndDatetime = "CREATE INDEX idx_child_histories_child_id_datetime ON "
+            + Database.childHistories.getTableName() + "("
+            + Database.ChildHistoriesColumn.child_id.getColumnName() + ", "
+            + Database.ChildHistoriesColumn.datetime.getColumnName()
+            + ")";
+
+    public static final String createEnquiryCriteriaIndexTable = "create table "
+            + Database.enquiryCriteriaIndex.getTableName() + "("
+            + Database.EnquiryCriteriaIndexColumn.enquiry_id.getColumnName() + " text not null,"
+            + Database.EnquiryCriteriaIndexColumn.token.getColumnName() + " text not null"
+            + ");";
+
+    // finds the enquiries sharing a word with a child being saved
+    public static final String indexEnquiryCriteriaIndexOnToken = "CREATE INDEX idx_enquiry_criteria_index_token ON "
+            + Database.enquiryCriteriaIndex.getTableName() + "("
+            + Database.EnquiryCriteriaIndexColumn.token.getColumnName() + ", "
+            + Database.EnquiryCriteriaIndexColumn.enquiry_id.getColumnName()
+            + ")";
+
+    public static final String indexEnquiryCriteriaIndexOnEnquiryId = "CREATE INDEX idx_enquiry_criteria_index_enquiry_id ON "
+            + Database.enquiryCriteriaIndex.getTableName() + "("
+            + Database.EnquiryCriteriaIndexColumn.enquiry_id.getColumnName()
+            + ")";
+
+    // a null score marks a match made by the server
+    public static final String createEnquiryMatchesTable = "create table "
+            + Database.enquiryMatches.getTableName() + "("
+            + Database.EnquiryMatchesColumn.enquiry_id.getColumnName() + " text not null,"
+            + Database.EnquiryMatchesColumn.child_internal_id.getColumnName() + " text not null,"
+            + Database.EnquiryMatchesColumn.score.getColumnName() + " real null"
+            + ");";
+
+    public static final String indexEnquiryMatchesOnEnquiryId = "CREATE UNIQUE INDEX idx_enquiry_matches_enquiry_id ON "
+            + Database.enquiryMatches.getTableName() + "("
+            + Database.EnquiryMatchesColumn.enquiry_id.getColumnName() + ", "
+            + Database.EnquiryMatchesColumn.child_internal_id.getColumnName()
+            + ")";
+
+    public static final String indexEnquiryMatchesOnChildInternalId = "CREATE INDEX idx_enquiry_matches_child_internal_id ON "
+            + Database.enquiryMatches.getTableName() + "("
+            + Database.EnquiryMatchesColumn.child_internal_id.getColumnName() + ", "
+            + Database.EnquiryMatchesColumn.enquiry_id.getColumnName()
+            + ")";
+
+    // ids still to download for each type of record, in the order they were listed
+    public static final String createSyncPlanTable = "create table "
+            + Database.syncPlan.getTableName() + "("
+            + Database.SyncPlanColumn.record_type.getColumnName() + " text not null,"
+            + Database.SyncPlanColumn.record_id.getColumnName() + " text not null"
+            + ");";
+
+    public static final String indexSyncPlanOnRecordId = "CREATE UNIQUE INDEX idx_sync_plan_record_id ON "
+            + Database.syncPlan.getTableName() + "("
+            + Database.SyncPlanColumn.record_type.getColumnName() + ", "
+            + Database.SyncPlanColumn.record_id.getColumnName()
+            + ")";
+
+    // where the server's changes feed was when each type of record was last fully downloaded
+    public static final String createSyncCheckpointTable = "create table "
+            + Database.syncCheckpoint.getTableName() + "("
+            + Database.SyncCheckpointColumn.record_type.getColumnName() + " text primary key,"
+            + Database.SyncCheckpointColumn.sequence.getColumnName() + " text not null"
+            + ");";
+
+    // SQLite can't alter a column, so the table is rebuilt to let a pending sequence be kept before any checkpoint
+    private static final String syncCheckpointTableWithPendingSequence = Database.syncCheckpoint.getTableName() + "_011";
+
+    public static final String createSyncCheckpointTableWithPendingSequence = "create table "
+            + syncCheckpointTableWithPendingSequence + "("
+            + Database.SyncCheckpointColumn.record_type.getColumnName() + " text primary key,"
+            + Database.SyncCheckpointColumn.sequence.getColumnName() + " text,"
+            + Database.SyncCheckpointColumn.pending_sequence.getColumnName() + " text"
+            + ");";
+
+    public static final String copySyncCheckpoints = "INSERT INTO " + syncCheckpointTableWithPendingSequence + "("
+            + Database.SyncCheckpointColumn.record_type.getColumnName() + ", "
+            + Database.SyncCheckpointColumn.sequence.getColumnName()
+            + ") SELECT "
+            + Database.SyncCheckpointColumn.record_type.getColumnName() + ", "
+            + Database.SyncCheckpointColumn.sequence.getColumnName()
+            + " FROM " + Database.syncCheckpoint.getTableName();
+
+    public static final String dropSyncCheckpointTable = "DROP TABLE " + Database.syncCheckpoint.getTableName();
+
+    public static final String renameSyncCheckpointTableWithPendingSequence = "ALTER TABLE " + syncCheckpointTableWithPendingSequence
+            + " RENAME TO " + Database.syncCheckpoint.getTableName();
+}
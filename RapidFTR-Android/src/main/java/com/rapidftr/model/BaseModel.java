@@ -11,7 +11,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static com.rapidftr.database.Database.ChildTableColumn.*;
@@ -22,6 +25,9 @@ public class BaseModel extends JSONObject implements Parcelable {
 
     public static final String EMPTY_STRING = "";
 
+    // values the fields put since the model was loaded or saved had before, null while changes are not tracked
+    private Map<String, Object> changedFields;
+
     public BaseModel(String content) throws JSONException {
         super(Strings.nullToEmpty(content).trim().length() == 0 ? "{}" : content);
         if (!has(created_at.getColumnName())) {
@@ -143,6 +149,22 @@ public class BaseModel extends JSONObject implements Parcelable {
         return getString(created_by.getColumnName());
     }
 
+    /*
+     * Starts recording the fields put from now on along with their previous values,
+     * the model is expected to match the stored record at this point.
+     */
+    public void trackChanges() {
+        changedFields = new HashMap<String, Object>();
+    }
+
+    public boolean isTrackingChanges() {
+        return changedFields != null;
+    }
+
+    public Map<String, Object> getChangedFields() {
+        return changedFields == null ? null : Collections.unmodifiableMap(changedFields);
+    }
+
     @Override
     public JSONObject put(String key, Object value) {
         if (value != null && value instanceof String) {
@@ -150,6 +172,9 @@ public class BaseModel extends JSONObject implements Parcelable {
         } else if (value != null && value instanceof JSONArray && ((JSONArray) value).length() == 0) {
             value = null;
         }
+        if (changedFields != null && !changedFields.containsKey(key)) {
+            changedFields.put(key, opt(key));
+        }
         try {
             return super.put(key, value);
         } catch (JSONException e) {
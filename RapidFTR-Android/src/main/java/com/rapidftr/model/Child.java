@@ -16,8 +16,14 @@ import org.json.JSONObject;
 import java.io.IOException;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import static com.rapidftr.database.Database.ChildTableColumn;
 import static com.rapidftr.database.Database.ChildTableColumn.*;
@@ -29,6 +35,16 @@ public class Child extends BaseModel {
     public static final ObjectMapper JSON_MAPPER = new ObjectMapper();
     public static final String CHILD_FORM_NAME = "Children";
 
+    // kept by the device or sent on their own, never among the changed fields of a sync
+    private static final Set<String> UNSYNCED_FIELD_EXCLUSIONS = new HashSet<String>(Arrays.asList(
+            HISTORIES, syncLog.getColumnName(), "photo_keys", "audio_attachments", "_attachments"));
+
+    static {
+        for (ChildTableColumn column : Iterables.concat(ChildTableColumn.internalFields(), ChildTableColumn.systemFields())) {
+            UNSYNCED_FIELD_EXCLUSIONS.add(column.getColumnName());
+        }
+    }
+
     public Child() {
         super();
     }
@@ -124,22 +140,44 @@ public class Child extends BaseModel {
     public List<History> changeLogs(Child child, JSONArray existingHistories) throws JSONException {
         //fetch all the histories from this child, which are greater than last_synced_at and merge the histories
         JSONArray names = this.names();
+        Map<String, Object> oldValues = new HashMap<String, Object>();
+        for (int i = 0; i < names.length(); i++) {
+            oldValues.put(names.getString(i), child.opt(names.getString(i)));
+        }
+        return changeLogs(child.optString(last_synced_at.getColumnName()), oldValues, existingHistories);
+    }
+
+    /*
+     * Same as changeLogs(Child, JSONArray) for a child tracking its changes since it was loaded,
+     * only looks at the fields which were put instead of comparing every field to the stored child.
+     */
+    public List<History> changeLogs(JSONArray existingHistories) throws JSONException {
+        Map<String, Object> changedFields = getChangedFields();
+        Object lastSyncedAt = changedFields.containsKey(last_synced_at.getColumnName())
+                ? changedFields.get(last_synced_at.getColumnName()) : opt(last_synced_at.getColumnName());
+        return changeLogs(lastSyncedAt == null ? "" : lastSyncedAt.toString(), changedFields, existingHistories);
+    }
+
+    private List<History> changeLogs(String lastSyncedAt, Map<String, Object> oldValues, JSONArray existingHistories) throws JSONException {
         List<History> histories = getHistoriesFromJsonArray(existingHistories);
         try {
-            if (!child.optString("last_synced_at").equals("")) {
-                Calendar lastSync = RapidFtrDateTime.getDateTime(child.optString("last_synced_at"));
+            if (!lastSyncedAt.equals("")) {
+                Calendar lastSync = RapidFtrDateTime.getDateTime(lastSyncedAt);
                 for (History history : histories) {
                     Calendar lastSavedAt = RapidFtrDateTime.getDateTime((String) history.get("datetime"));
                     if (lastSavedAt.after(lastSync)) {
                         JSONObject changes = (JSONObject) history.get("changes");
-                        for (int i = 0; i < names.length(); i++) {
-                            String newValue = this.optString(names.getString(i), "");
-                            String oldValue = child.optString(names.getString(i), "");
-                            if (!oldValue.equals(newValue)) {
+                        for (Map.Entry<String, Object> oldValue : oldValues.entrySet()) {
+                            if (HISTORIES.equals(oldValue.getKey())) {
+                                continue;
+                            }
+                            String newValue = this.optString(oldValue.getKey(), "");
+                            String fromValue = oldValue.getValue() == null ? "" : oldValue.getValue().toString();
+                            if (!fromValue.equals(newValue)) {
                                 JSONObject fromTo = new JSONObject();
-                                fromTo.put(FROM, oldValue);
+                                fromTo.put(FROM, fromValue);
                                 fromTo.put(TO, newValue);
-                                changes.put(names.getString(i), fromTo);
+                                changes.put(oldValue.getKey(), fromTo);
                             }
                         }
                         history.put(History.USER_NAME, RapidFtrApplication.getApplicationInstance().getSharedPreferences().getString("USER_NAME", ""));
@@ -156,6 +194,39 @@ public class Child extends BaseModel {
         return histories;
     }
 
+    /*
+     * Adds the fields whose values differ from the stored child to the fields changed since the last sync,
+     * which are the only ones a sync has to send of a child the server already has.
+     */
+    public void addUnsyncedFields(Child storedChild) throws JSONException {
+        Map<String, Object> oldValues = new HashMap<String, Object>();
+        for (JSONArray names : Arrays.asList(names(), storedChild.names())) {
+            for (int i = 0; names != null && i < names.length(); i++) {
+                oldValues.put(names.getString(i), storedChild.opt(names.getString(i)));
+            }
+        }
+        addUnsyncedFields(oldValues, storedChild.optJSONArray(unsynced_fields.getColumnName()));
+    }
+
+    // same as addUnsyncedFields(Child) for a child tracking its changes since it was loaded
+    public void addUnsyncedFields() throws JSONException {
+        addUnsyncedFields(getChangedFields(), optJSONArray(unsynced_fields.getColumnName()));
+    }
+
+    private void addUnsyncedFields(Map<String, Object> oldValues, JSONArray unsyncedFields) throws JSONException {
+        Set<String> fields = new LinkedHashSet<String>();
+        for (int i = 0; unsyncedFields != null && i < unsyncedFields.length(); i++) {
+            fields.add(unsyncedFields.getString(i));
+        }
+        for (Map.Entry<String, Object> oldValue : oldValues.entrySet()) {
+            String fromValue = oldValue.getValue() == null ? "" : oldValue.getValue().toString();
+            if (!UNSYNCED_FIELD_EXCLUSIONS.contains(oldValue.getKey()) && !fromValue.equals(optString(oldValue.getKey(), ""))) {
+                fields.add(oldValue.getKey());
+            }
+        }
+        put(unsynced_fields.getColumnName(), new JSONArray(fields));
+    }
+
     private List<History> getHistoriesFromJsonArray(JSONArray histories) throws JSONException {
         List<Object> objects = histories != null ? asList(histories) : new ArrayList<Object>();
         List<History> childHistories = new ArrayList<History>();
@@ -0,0 +1,52 @@
+package com.rapidftr.model;
+
+import com.rapidftr.forms.FormField;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import org.json.JSONException;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Read-only view of a child holding only what the child lists show: its id, thumbnail and highlighted fields.
+ * Repositories read it from the highlighted field index, without loading and parsing the child itself.
+ */
+@EqualsAndHashCode(of = "uniqueId")
+@AllArgsConstructor(suppressConstructorProperties = true)
+public class ChildSummary {
+
+    @Getter
+    private final String uniqueId;
+
+    @Getter
+    private final String thumbnailKey;
+
+    private final Map<String, String> highlightedFields;
+
+    public static ChildSummary of(Child child, List<FormField> highlightedFields) throws JSONException {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (FormField formField : highlightedFields) {
+            String value = child.optString(formField.getId(), null);
+            if (value != null) {
+                fields.put(formField.getId(), value);
+            }
+        }
+        return new ChildSummary(child.getUniqueId(), child.optString("current_photo_key"), fields);
+    }
+
+    public String getShortId() {
+        if (uniqueId == null)
+            return null;
+
+        int length = uniqueId.length();
+        return length > 7 ? uniqueId.substring(length - 7) : uniqueId;
+    }
+
+    public String optString(String fieldId) {
+        String value = highlightedFields.get(fieldId);
+        return value == null ? "" : value;
+    }
+}
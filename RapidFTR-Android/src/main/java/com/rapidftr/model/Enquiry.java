@@ -7,7 +7,6 @@ import com.google.common.collect.Lists;
 import com.rapidftr.database.Database;
 import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.utils.RapidFtrDateTime;
-import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -68,26 +67,7 @@ public class Enquiry extends BaseModel {
     }
 
     public List<Child> getPotentialMatches(ChildRepository childRepository) throws JSONException {
-        try {
-
-            JSONArray matchingChildId = new JSONArray(getPotentialMatchingIds());
-
-            List<String> matchingChildList = getListOfMatchingChildrenFrom(matchingChildId);
-
-            return childRepository.getAllWithInternalIds(new ArrayList<String>(matchingChildList));
-        } catch (JSONException exception) {
-            return new ArrayList<Child>();
-        }
-    }
-
-
-    private List<String> getListOfMatchingChildrenFrom(JSONArray matchingChildId) throws JSONException {
-        List<String> matchingChildList = new ArrayList<String>();
-
-        for (int i = 0; i < matchingChildId.length(); i++) {
-            matchingChildList.add((String) matchingChildId.get(i));
-        }
-        return matchingChildList;
+        return childRepository.getPotentialMatches(getUniqueId());
     }
 
     private void setColumn(Database.EnquiryTableColumn column, String value) throws JSONException {
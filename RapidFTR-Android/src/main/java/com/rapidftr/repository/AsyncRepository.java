@@ -0,0 +1,125 @@
+package com.rapidftr.repository;
+
+import android.os.AsyncTask;
+import com.google.inject.Provider;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/*
+ * Runs queries against a repository on the database thread and hands their results to callbacks on the main thread,
+ * so activities never wait on SQLCipher while drawing. Queries still pending when cancelAll() or close() is called,
+ * typically from onDestroy, are dropped without calling back. Meant to be used from the main thread only.
+ * The repository itself is only got on the database thread, before the first query, since opening it keys the database.
+ */
+public class AsyncRepository<R extends Closeable> implements Closeable {
+
+    public interface Query<R, T> {
+        T run(R repository) throws Exception;
+    }
+
+    // called back on the main thread, how a failure is shown is up to the screen
+    public static abstract class Callback<T> {
+        public abstract void onResult(T result);
+
+        public abstract void onError(Exception e);
+    }
+
+    private final Provider<R> repositoryProvider;
+    private final Executor executor;
+    private final Set<QueryTask<?>> pendingTasks = new HashSet<QueryTask<?>>();
+    private R repository;
+
+    public AsyncRepository(final R repository, Executor executor) {
+        this(new Provider<R>() {
+            @Override
+            public R get() {
+                return repository;
+            }
+        }, executor);
+    }
+
+    public AsyncRepository(Provider<R> repositoryProvider, Executor executor) {
+        this.repositoryProvider = repositoryProvider;
+        this.executor = executor;
+    }
+
+    public <T> QueryTask<T> query(Query<R, T> query, Callback<T> callback) {
+        QueryTask<T> task = new QueryTask<T>(query, callback);
+        pendingTasks.add(task);
+        task.executeOnExecutor(executor);
+        return task;
+    }
+
+    public void cancelAll() {
+        for (QueryTask<?> task : new ArrayList<QueryTask<?>>(pendingTasks)) {
+            task.cancel(false);
+        }
+        pendingTasks.clear();
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+        // queued behind a query which may still be running, so the repository isn't closed under it
+        new QueryTask<Void>(new Query<R, Void>() {
+            @Override
+            public Void run(R repository) throws IOException {
+                repository.close();
+                return null;
+            }
+        }, null).executeOnExecutor(executor);
+    }
+
+    // only called on the database thread
+    private synchronized R repository() {
+        if (repository == null) {
+            repository = repositoryProvider.get();
+        }
+        return repository;
+    }
+
+    public class QueryTask<T> extends AsyncTask<Void, Void, T> {
+
+        private final Query<R, T> query;
+        private final Callback<T> callback;
+        private Exception error;
+
+        private QueryTask(Query<R, T> query, Callback<T> callback) {
+            this.query = query;
+            this.callback = callback;
+        }
+
+        @Override
+        protected T doInBackground(Void... params) {
+            try {
+                return query.run(repository());
+            } catch (Exception e) {
+                error = e;
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(T result) {
+            pendingTasks.remove(this);
+            if (callback == null) {
+                return;
+            }
+            if (error != null) {
+                callback.onError(error);
+            } else {
+                callback.onResult(result);
+            }
+        }
+
+        @Override
+        protected void onCancelled() {
+            pendingTasks.remove(this);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.database.Database;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.forms.FormField;
+import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
+import lombok.Cleanup;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.rapidftr.database.Database.ChildHighlightsColumn.*;
+
+/*
+ * Denormalized copy of the highlighted field values of every child, one row per (child, field),
+ * so list screens can show and sort children without parsing child_json.
+ */
+public class ChildHighlights {
+
+    // the thumbnail is kept alongside the highlighted fields so list rows need nothing else
+    public static final String THUMBNAIL_FIELD = "current_photo_key";
+
+    private static final String INSERT_VALUE = "INSERT OR REPLACE INTO " + Database.childHighlights.getTableName()
+            + " (" + child_id.getColumnName() + ", " + field.getColumnName() + ", " + value.getColumnName() + ") VALUES (?, ?, ?)";
+
+    private final DatabaseSession session;
+
+    public ChildHighlights(DatabaseSession session) {
+        this.session = session;
+    }
+
+    public void index(Child child) throws JSONException {
+        String childId = child.getUniqueId();
+        remove(childId);
+        for (FormField formField : ChildSearchIndex.highlightedFields()) {
+            String fieldValue = child.optString(formField.getId(), null);
+            if (fieldValue != null) {
+                session.executeInsert(INSERT_VALUE, new String[]{childId, formField.getId(), fieldValue});
+            }
+        }
+        String thumbnailKey = child.optString(THUMBNAIL_FIELD, null);
+        if (thumbnailKey != null) {
+            session.executeInsert(INSERT_VALUE, new String[]{childId, THUMBNAIL_FIELD, thumbnailKey});
+        }
+    }
+
+    public void remove(String childId) {
+        session.delete(Database.childHighlights.getTableName(), child_id.getColumnName() + " = ?", new String[]{childId});
+    }
+
+    public void removeByOwner(String owner) {
+        session.delete(Database.childHighlights.getTableName(),
+                child_id.getColumnName() + " IN (SELECT id FROM children WHERE child_owner = ?)", new String[]{owner});
+    }
+
+    public void rebuild() throws JSONException {
+        session.delete(Database.childHighlights.getTableName(), null, null);
+        @Cleanup Cursor cursor = session.rawQuery("SELECT child_json FROM children", null);
+        while (cursor.moveToNext()) {
+            index(new Child(cursor.getString(0)));
+        }
+    }
+
+    // summaries of the children selected by the sub query, in id order
+    public List<ChildSummary> getSummaries(String childIdsQuery, String[] queryArgs) {
+        List<ChildSummary> summaries = new ArrayList<ChildSummary>();
+        @Cleanup Cursor cursor = session.rawQuery("SELECT c.id, h.field, h.value FROM children c"
+                + " LEFT JOIN child_highlights h ON h.child_id = c.id"
+                + " WHERE c.id IN (" + childIdsQuery + ") ORDER BY c.created_at, c.id", queryArgs);
+        String childId = null;
+        Map<String, String> fields = null;
+        while (cursor.moveToNext()) {
+            if (!cursor.getString(0).equals(childId)) {
+                if (childId != null) {
+                    summaries.add(summaryOf(childId, fields));
+                }
+                childId = cursor.getString(0);
+                fields = new HashMap<String, String>();
+            }
+            if (!cursor.isNull(1)) {
+                fields.put(cursor.getString(1), cursor.getString(2));
+            }
+        }
+        if (childId != null) {
+            summaries.add(summaryOf(childId, fields));
+        }
+        return summaries;
+    }
+
+    private ChildSummary summaryOf(String childId, Map<String, String> fields) {
+        String thumbnailKey = fields.remove(THUMBNAIL_FIELD);
+        return new ChildSummary(childId, thumbnailKey == null ? "" : thumbnailKey, fields);
+    }
+}
@@ -0,0 +1,124 @@
+package com.rapidftr.repository;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import com.rapidftr.database.Database;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.model.Child;
+import lombok.Cleanup;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.rapidftr.database.Database.ChildHistoriesColumn.*;
+import static com.rapidftr.model.Child.History.DATETIME;
+import static com.rapidftr.model.Child.History.HISTORIES;
+
+/*
+ * Change history of every child, one row per history entry ordered by its datetime,
+ * kept out of child_json so that reading and listing children never parses the whole audit trail.
+ */
+public class ChildHistories {
+
+    private static final String INSERT_HISTORY = "INSERT INTO " + Database.childHistories.getTableName()
+            + " (" + child_id.getColumnName() + ", " + datetime.getColumnName() + ", " + history.getColumnName() + ") VALUES (?, ?, ?)";
+    private static final int MIGRATION_PAGE_SIZE = 20;
+
+    private final DatabaseSession session;
+
+    public ChildHistories(DatabaseSession session) {
+        this.session = session;
+    }
+
+    public JSONArray get(String childId) throws JSONException {
+        JSONArray histories = new JSONArray();
+        @Cleanup Cursor cursor = session.rawQuery("SELECT " + history.getColumnName() + " FROM " + Database.childHistories.getTableName()
+                + " WHERE " + child_id.getColumnName() + " = ? ORDER BY " + datetime.getColumnName() + ", rowid", new String[]{childId});
+        while (cursor.moveToNext()) {
+            histories.put(new JSONObject(cursor.getString(0)));
+        }
+        return histories;
+    }
+
+    /*
+     * Stores the histories of the child in place of the stored ones. Entries matching the stored ones
+     * are left alone, so usually only the entries changed since the last sync are rewritten.
+     */
+    public void save(String childId, JSONArray histories) throws JSONException {
+        List<Long> rowIds = new ArrayList<Long>();
+        List<String> stored = new ArrayList<String>();
+        @Cleanup Cursor cursor = session.rawQuery("SELECT rowid, " + history.getColumnName() + " FROM " + Database.childHistories.getTableName()
+                + " WHERE " + child_id.getColumnName() + " = ? ORDER BY " + datetime.getColumnName() + ", rowid", new String[]{childId});
+        while (cursor.moveToNext()) {
+            rowIds.add(cursor.getLong(0));
+            stored.add(cursor.getString(1));
+        }
+
+        int unchanged = 0;
+        while (unchanged < stored.size() && unchanged < histories.length()
+                && stored.get(unchanged).equals(histories.get(unchanged).toString())) {
+            unchanged++;
+        }
+        for (Long rowId : rowIds.subList(unchanged, rowIds.size())) {
+            session.delete(Database.childHistories.getTableName(), "rowid = ?", new String[]{rowId.toString()});
+        }
+        for (int i = unchanged; i < histories.length(); i++) {
+            JSONObject entry = histories.getJSONObject(i);
+            session.executeInsert(INSERT_HISTORY, new String[]{childId, entry.optString(DATETIME, null), entry.toString()});
+        }
+    }
+
+    public void removeByOwner(String owner) {
+        session.delete(Database.childHistories.getTableName(),
+                child_id.getColumnName() + " IN (SELECT id FROM children WHERE child_owner = ?)", new String[]{owner});
+    }
+
+    // moves the histories of children saved before this table existed out of child_json
+    public void migrate() throws JSONException {
+        String lastId = "";
+        List<Child> page;
+        do {
+            page = new ArrayList<Child>();
+            @Cleanup Cursor cursor = session.rawQuery("SELECT child_json FROM children WHERE id > ? ORDER BY id LIMIT " + MIGRATION_PAGE_SIZE, new String[]{lastId});
+            while (cursor.moveToNext()) {
+                page.add(new Child(cursor.getString(0)));
+            }
+            for (Child child : page) {
+                lastId = child.getUniqueId();
+                JSONArray histories = historiesOf(child);
+                if (histories != null) {
+                    save(lastId, histories);
+                    ContentValues values = new ContentValues();
+                    values.put(Database.ChildTableColumn.content.getColumnName(), withoutHistories(child));
+                    session.update(Database.child.getTableName(), values, "id = ?", new String[]{lastId});
+                }
+            }
+        } while (page.size() == MIGRATION_PAGE_SIZE);
+    }
+
+    // histories of the child, which may still be serialized as a string when the child was built from a form
+    public static JSONArray historiesOf(Child child) throws JSONException {
+        Object histories = child.opt(HISTORIES);
+        if (histories instanceof String) {
+            return new JSONArray((String) histories);
+        }
+        return histories instanceof JSONArray ? (JSONArray) histories : null;
+    }
+
+    public static String withoutHistories(Child child) throws JSONException {
+        if (!child.has(HISTORIES)) {
+            return child.getJsonString();
+        }
+        List<String> names = new ArrayList<String>();
+        JSONArray childNames = child.names();
+        for (int i = 0; i < childNames.length(); i++) {
+            if (!HISTORIES.equals(childNames.getString(i))) {
+                names.add(childNames.getString(i));
+            }
+        }
+        return new JSONObject(child, names.toArray(new String[names.size()])).toString();
+    }
+}
@@ -9,6 +9,7 @@ import com.rapidftr.database.Database;
 import com.rapidftr.database.DatabaseSession;
 import com.rapidftr.forms.FormField;
 import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import com.rapidftr.utils.JSONArrays;
 import com.rapidftr.utils.RapidFtrDateTime;
 import lombok.Cleanup;
@@ -18,7 +19,6 @@ import org.json.JSONException;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.*;
-import java.util.regex.Pattern;
 
 import static com.rapidftr.database.Database.BooleanColumn;
 import static com.rapidftr.database.Database.BooleanColumn.falseValue;
@@ -28,13 +28,25 @@ import static java.lang.String.format;
 
 public class ChildRepository implements Closeable, Repository<Child> {
 
+    // pages list children in the order they were created, children created in the same second in id order
+    private static final String AFTER_CHILD = " AND (created_at > (SELECT created_at FROM children WHERE id = ?)"
+            + " OR (created_at = (SELECT created_at FROM children WHERE id = ?) AND id > ?))";
+
     protected final String userName;
     protected final DatabaseSession session;
+    protected final ChildSearchIndex searchIndex;
+    protected final ChildHighlights highlights;
+    protected final ChildHistories histories;
+    protected final EnquiryMatcher enquiryMatcher;
 
     @Inject
     public ChildRepository(@Named("USER_NAME") String userName, DatabaseSession session) {
         this.userName = userName;
         this.session = session;
+        this.searchIndex = new ChildSearchIndex(session);
+        this.highlights = new ChildHighlights(session);
+        this.histories = new ChildHistories(session);
+        this.enquiryMatcher = new EnquiryMatcher(session);
     }
 
     @Override
@@ -49,14 +61,12 @@ public class ChildRepository implements Closeable, Repository<Child> {
 
     @Override
     public boolean exists(String childId) {
-        @Cleanup Cursor cursor = session.rawQuery("SELECT child_json FROM children WHERE id = ?", new String[]{childId == null ? "" : childId});
-        return cursor.moveToNext() && cursor.getCount() > 0;
+        return session.simpleQueryForLong("SELECT COUNT(1) FROM children WHERE id = ?", new String[]{childId == null ? "" : childId}) > 0;
     }
 
     @Override
     public int size() {
-        @Cleanup Cursor cursor = session.rawQuery("SELECT COUNT(1) FROM children WHERE child_owner = ?", new String[]{userName});
-        return cursor.moveToNext() ? cursor.getInt(0) : 0;
+        return (int) session.simpleQueryForLong("SELECT COUNT(1) FROM children WHERE child_owner = ?", new String[]{userName});
     }
 
     public List<Child> getChildrenByOwner() throws JSONException {
@@ -64,6 +74,23 @@ public class ChildRepository implements Closeable, Repository<Child> {
         return toChildren(cursor);
     }
 
+    @Override
+    public List<Child> getPage(String afterId, int pageSize) throws JSONException {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT child_json, synced FROM children WHERE child_owner = ?"
+                + (afterId == null ? "" : AFTER_CHILD) + " ORDER BY created_at, id LIMIT " + pageSize, pageArgs(afterId));
+        return toChildren(cursor);
+    }
+
+    // the next page of the user's children for list screens, read from the highlighted field index
+    public List<ChildSummary> getSummaryPage(String afterId, int pageSize) {
+        return highlights.getSummaries("SELECT id FROM children WHERE child_owner = ?"
+                + (afterId == null ? "" : AFTER_CHILD) + " ORDER BY created_at, id LIMIT " + pageSize, pageArgs(afterId));
+    }
+
+    private String[] pageArgs(String afterId) {
+        return afterId == null ? new String[]{userName} : new String[]{userName, afterId, afterId, afterId};
+    }
+
     @Override
     public ArrayList<String> getRecordIdsByOwner() throws JSONException {
         ArrayList<String> ids = new ArrayList<String>();
@@ -75,58 +102,44 @@ public class ChildRepository implements Closeable, Repository<Child> {
     }
 
     public void deleteChildrenByOwner() throws JSONException {
+        searchIndex.removeByOwner(userName);
+        highlights.removeByOwner(userName);
+        histories.removeByOwner(userName);
         session.execSQL("DELETE FROM children WHERE child_owner = '" + userName + "';");
     }
 
     public List<Child> getMatchingChildren(String searchString, List<FormField> highlightedFields) throws JSONException {
         highlightedFields = (highlightedFields == null) ? Collections.EMPTY_LIST : highlightedFields;
-        String query = buildSQLQueryForSearch(searchString, RapidFtrApplication.getApplicationInstance());
-        @Cleanup Cursor cursor = session.rawQuery(query, null);
-        return filterChildrenWithRegularExpression(cursor, searchString, highlightedFields);
-    }
-
-    private String buildSQLQueryForSearch(String searchString, RapidFtrApplication context) throws JSONException {
-        StringBuilder queryBuilder = new StringBuilder("SELECT child_json, synced FROM children WHERE (").append(fetchByOwner(context));
-        String[] subQueries = searchString.split("\\s+");
-        for (int i = 0;i<subQueries.length;i++) {
-            queryBuilder.append(String.format("child_json LIKE '%%%s%%' OR id LIKE '%%%s%%'", subQueries[i], subQueries[i]));
-            if(i < subQueries.length-1)  {
-                queryBuilder.append(" OR ");
-            }
+        List<String> searchTerms = ChildSearchIndex.tokenize(searchString);
+        if (searchTerms.isEmpty()) {
+            return new ArrayList<Child>();
         }
-        return queryBuilder.append(")").toString();
+        List<String> queryArgs = new ArrayList<String>();
+        String query = buildSQLQueryForSearch("child_json, synced", searchTerms, highlightedFields, queryArgs, RapidFtrApplication.getApplicationInstance());
+        @Cleanup Cursor cursor = session.rawQuery(query, queryArgs.toArray(new String[queryArgs.size()]));
+        return toChildren(cursor);
     }
 
-    private List<Child> filterChildrenWithRegularExpression(Cursor cursor, String filterString, List<FormField> highlightedFields) throws JSONException {
-        List<Child> children = new ArrayList<Child>();
-        Pattern pattern = buildPatternFromSearchString(filterString);
-
-        while (cursor.moveToNext()) {
-            Child child = childFrom(cursor);
-            if (pattern.matcher(child.getShortId()).matches()) {
-                children.add(child);
-            } else {
-                for (FormField formField : highlightedFields) {
-                    boolean formFieldMatchesPattern = pattern.matcher(child.optString(formField.getId())).matches();
-                    if (!children.contains(child) && formFieldMatchesPattern) {
-                        children.add(child);
-                    }
-                }
-            }
+    public List<ChildSummary> getMatchingChildSummaries(String searchString, List<FormField> highlightedFields) throws JSONException {
+        highlightedFields = (highlightedFields == null) ? Collections.<FormField>emptyList() : highlightedFields;
+        List<String> searchTerms = ChildSearchIndex.tokenize(searchString);
+        if (searchTerms.isEmpty()) {
+            return new ArrayList<ChildSummary>();
         }
-        return children;
+        List<String> queryArgs = new ArrayList<String>();
+        String query = buildSQLQueryForSearch("id", searchTerms, highlightedFields, queryArgs, RapidFtrApplication.getApplicationInstance());
+        return highlights.getSummaries(query, queryArgs.toArray(new String[queryArgs.size()]));
     }
 
-    private Pattern buildPatternFromSearchString(String searchString) {
-        String[] splitQuery = searchString.split("\\s+");
-        StringBuilder regexBuilder = new StringBuilder();
-        for(int i = 0; i < splitQuery.length; i++) {
-            regexBuilder.append(String.format(".*(%s)+.*", splitQuery[i]));
-            if((i < splitQuery.length-1)){
-                regexBuilder.append("|");
-            }
+    private String buildSQLQueryForSearch(String columns, List<String> searchTerms, List<FormField> highlightedFields, List<String> queryArgs, RapidFtrApplication context) throws JSONException {
+        List<String> fields = new ArrayList<String>();
+        fields.add(ChildSearchIndex.SHORT_ID_FIELD);
+        for (FormField formField : highlightedFields) {
+            fields.add(formField.getId());
         }
-        return Pattern.compile(regexBuilder.toString(), Pattern.CASE_INSENSITIVE);
+        return new StringBuilder("SELECT ").append(columns).append(" FROM children WHERE ").append(fetchByOwner(context))
+                .append("id IN (").append(searchIndex.matchingChildIdsQuery(searchTerms, fields, queryArgs)).append(")")
+                .toString();
     }
 
     private String fetchByOwner(RapidFtrApplication context) throws JSONException {
@@ -142,16 +155,43 @@ public class ChildRepository implements Closeable, Repository<Child> {
         ContentValues values = new ContentValues();
         if (exists(child.getUniqueId())) {
             addHistory(child);
+            addUnsyncedFields(child);
         }
         child.setLastUpdatedAt(getTimeStamp());
         values.put(Database.ChildTableColumn.owner.getColumnName(), child.getCreatedBy());
         values.put(id.getColumnName(), child.getUniqueId());
-        values.put(content.getColumnName(), child.getJsonString());
+        values.put(content.getColumnName(), ChildHistories.withoutHistories(child));
         values.put(synced.getColumnName(), child.isSynced());
         values.put(created_at.getColumnName(), child.getCreatedAt());
         populateInternalColumns(child, values);
-        long id = session.replace(Database.child.getTableName(), null, values);
-        if (id <= 0) throw new IllegalArgumentException(id + "");
+        session.beginTransaction();
+        try {
+            long id = session.replace(Database.child.getTableName(), null, values);
+            if (id <= 0) throw new IllegalArgumentException(id + "");
+            saveHistories(child);
+            indexHighlightedFields(child);
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+        child.trackChanges();
+    }
+
+    @Override
+    public void createOrUpdateAll(List<Child> children) throws JSONException {
+        session.beginTransaction();
+        try {
+            for (Child child : children) {
+                if (exists(child.getUniqueId())) {
+                    update(child);
+                } else {
+                    createOrUpdate(child);
+                }
+            }
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
     }
 
     private void populateInternalColumns(Child child, ContentValues values) {
@@ -160,32 +200,113 @@ public class ChildRepository implements Closeable, Repository<Child> {
     }
 
     private void addHistory(Child child) throws JSONException {
-        Child existingChild = get(child.getUniqueId());
-        JSONArray existingHistories = (JSONArray) existingChild.opt(HISTORIES);
-        List<Child.History> histories = child.changeLogs(existingChild, existingHistories);
-        if (histories.size() > 0)
-            child.put(HISTORIES, JSONArrays.asJSONObjectArray(histories));
+        JSONArray existingHistories = histories.get(child.getUniqueId());
+        List<Child.History> changeLogs = child.isTrackingChanges()
+                ? child.changeLogs(existingHistories)
+                : child.changeLogs(get(child.getUniqueId()), existingHistories);
+        if (changeLogs.size() > 0)
+            child.put(HISTORIES, JSONArrays.asJSONObjectArray(changeLogs));
+    }
+
+    private void addUnsyncedFields(Child child) throws JSONException {
+        if (child.isTrackingChanges()) {
+            child.addUnsyncedFields();
+        } else {
+            child.addUnsyncedFields(get(child.getUniqueId()));
+        }
+    }
+
+    private void saveHistories(Child child) throws JSONException {
+        JSONArray childHistories = ChildHistories.historiesOf(child);
+        if (childHistories != null) {
+            histories.save(child.getUniqueId(), childHistories);
+        }
+    }
+
+    // histories are not part of child_json, load them only to show or sync them
+    public JSONArray getHistories(String childId) throws JSONException {
+        return histories.get(childId);
     }
 
     @Override
     public void update(Child child) throws JSONException {
         ContentValues values = new ContentValues();
-        values.put(content.getColumnName(), child.toString());
+        values.put(content.getColumnName(), ChildHistories.withoutHistories(child));
         values.put(synced.getColumnName(), child.isSynced());
         populateInternalColumns(child, values);
-        session.update(Database.child.getTableName(), values, format("%s=?", id.getColumnName()), new String[]{child.getUniqueId()});
+        session.beginTransaction();
+        try {
+            session.update(Database.child.getTableName(), values, format("%s=?", id.getColumnName()), new String[]{child.getUniqueId()});
+            saveHistories(child);
+            indexHighlightedFields(child);
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+        child.trackChanges();
+    }
+
+    public void rebuildHighlightedFieldIndexes() throws JSONException {
+        session.beginTransaction();
+        try {
+            searchIndex.rebuild();
+            highlights.rebuild();
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+    }
+
+    private void indexHighlightedFields(Child child) throws JSONException {
+        searchIndex.index(child);
+        highlights.index(child);
+        enquiryMatcher.matchChild(child);
     }
 
     @Override
     public List<Child> toBeSynced() throws JSONException {
         @Cleanup Cursor cursor = session.rawQuery("SELECT child_json, synced FROM children WHERE synced = ?", new String[]{falseValue.getColumnValue()});
-        return toChildren(cursor);
+        return toChildrenWithHistories(cursor);
+    }
+
+    @Override
+    public RecordCursor<Child> toBeSyncedCursor() {
+        final String[] args = new String[]{falseValue.getColumnValue()};
+        return new PagedRecordCursor<Child>((int) session.simpleQueryForLong("SELECT COUNT(1) FROM children WHERE synced = ?", args)) {
+            @Override
+            protected Cursor queryPage(String afterId, int pageSize) {
+                return session.rawQuery("SELECT child_json, synced FROM children WHERE synced = ? AND id > ? ORDER BY id LIMIT " + pageSize,
+                        new String[]{args[0], afterId});
+            }
+
+            @Override
+            protected Child read(Cursor cursor) throws JSONException {
+                return withHistories(childFrom(cursor));
+            }
+        };
+    }
+
+    @Override
+    public RecordCursor<Child> currentUsersUnsyncedRecordsCursor() {
+        final String[] args = new String[]{falseValue.getColumnValue(), userName};
+        return new PagedRecordCursor<Child>((int) session.simpleQueryForLong("SELECT COUNT(1) FROM children WHERE synced = ? AND child_owner = ?", args)) {
+            @Override
+            protected Cursor queryPage(String afterId, int pageSize) {
+                return session.rawQuery("SELECT child_json, synced FROM children WHERE synced = ? AND child_owner = ? AND id > ? ORDER BY id LIMIT " + pageSize,
+                        new String[]{args[0], args[1], afterId});
+            }
+
+            @Override
+            protected Child read(Cursor cursor) throws JSONException {
+                return withHistories(childFrom(cursor));
+            }
+        };
     }
 
     @Override
     public List<Child> currentUsersUnsyncedRecords() throws JSONException {
         @Cleanup Cursor cursor = session.rawQuery("SELECT child_json, synced FROM children WHERE synced = ? AND child_owner = ?", new String[]{falseValue.getColumnValue(), userName});
-        return toChildren(cursor);
+        return toChildrenWithHistories(cursor);
     }
 
     @Override // TODO remove this method - we no longer want to work out what to update by comparing _revs
@@ -201,6 +322,21 @@ public class ChildRepository implements Closeable, Repository<Child> {
         return idRevs;
     }
 
+    // compares the server's ids and revisions with the stored ones without loading them all, close it when done
+    public RevisionCursor getRevisions() {
+        return new RevisionCursor(session, Database.child.getTableName());
+    }
+
+    @Override
+    public SyncPlan getSyncPlan() {
+        return new SyncPlan(session, Database.child.getTableName());
+    }
+
+    // null when no child has the server id
+    public String getRevision(String internalId) {
+        return RevisionCursor.lookUp(session, Database.child.getTableName(), internalId);
+    }
+
     @Override
     public void close() {
         try {
@@ -218,11 +354,27 @@ public class ChildRepository implements Closeable, Repository<Child> {
         return children;
     }
 
+    private List<Child> toChildrenWithHistories(Cursor cursor) throws JSONException {
+        List<Child> children = new ArrayList<Child>();
+        while (cursor.moveToNext()) {
+            children.add(withHistories(childFrom(cursor)));
+        }
+        return children;
+    }
+
+    private Child withHistories(Child child) throws JSONException {
+        child.put(HISTORIES, histories.get(child.getUniqueId()));
+        child.trackChanges();
+        return child;
+    }
+
     private Child childFrom(Cursor cursor) throws JSONException {
         int contentColumnIndex = cursor.getColumnIndex(content.getColumnName());
         int syncedColumnIndex = cursor.getColumnIndex(synced.getColumnName());
 
-        return new Child(cursor.getString(contentColumnIndex), BooleanColumn.from(cursor.getString(syncedColumnIndex)).toBoolean());
+        Child child = new Child(cursor.getString(contentColumnIndex), BooleanColumn.from(cursor.getString(syncedColumnIndex)).toBoolean());
+        child.trackChanges();
+        return child;
     }
 
     protected String getTimeStamp() {
@@ -230,19 +382,43 @@ public class ChildRepository implements Closeable, Repository<Child> {
     }
 
     public List<Child> getChildrenByIds(ArrayList<String> listOfIds) throws JSONException {
-        ArrayList<Child> children = new ArrayList<Child>();
-        for (String childId : listOfIds) {
-            children.add(get(childId));
+        return getAll(listOfIds);
+    }
+
+    @Override
+    public List<Child> getAll(Collection<String> ids) throws JSONException {
+        return getAllBy(id.getColumnName(), ids);
+    }
+
+    // children matching the enquiry, the ones matched by the server first
+    public List<Child> getPotentialMatches(String enquiryId) throws JSONException {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT c.child_json, c.synced FROM enquiry_matches m JOIN children c ON c._id = m.child_internal_id"
+                + " WHERE m.enquiry_id = ?" + EnquiryMatches.BEST_FIRST, new String[]{enquiryId});
+        List<Child> children = new ArrayList<Child>();
+        while (cursor.moveToNext()) {
+            children.add(childFrom(cursor));
         }
         return children;
     }
 
     public List<Child> getAllWithInternalIds(List<String> internalIds) throws JSONException {
+        return getAllBy(internal_id.getColumnName(), internalIds);
+    }
+
+    private List<Child> getAllBy(String column, Collection<String> values) throws JSONException {
+        Map<String, Child> childrenByValue = new HashMap<String, Child>();
+        for (List<String> chunk : QueryArguments.chunks(values, QueryArguments.MAX_ARGUMENTS)) {
+            @Cleanup Cursor cursor = session.rawQuery("SELECT " + column + ", child_json, synced FROM children WHERE "
+                    + column + " IN (" + QueryArguments.placeholders(chunk.size()) + ")", chunk.toArray(new String[chunk.size()]));
+            while (cursor.moveToNext()) {
+                childrenByValue.put(cursor.getString(0), childFrom(cursor));
+            }
+        }
         List<Child> children = new ArrayList<Child>();
-        for (String internalId : internalIds) {
-            Cursor cursor = session.rawQuery("SELECT child_json, synced FROM children WHERE _id = ?", new String[]{internalId});
-            if (cursor.moveToNext())
-                children.add(childFrom(cursor));
+        for (String value : values) {
+            if (childrenByValue.containsKey(value)) {
+                children.add(childrenByValue.get(value));
+            }
         }
         return children;
     }
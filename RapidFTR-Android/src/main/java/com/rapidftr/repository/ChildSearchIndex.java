@@ -0,0 +1,142 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.RapidFtrApplication;
+import com.rapidftr.database.Database;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.forms.FormField;
+import com.rapidftr.forms.FormSection;
+import com.rapidftr.model.Child;
+import lombok.Cleanup;
+import org.json.JSONException;
+
+import java.util.*;
+
+import static com.rapidftr.database.Database.ChildSearchIndexColumn.*;
+
+/*
+ * Token index over the short id, the highlighted fields and the other free text and select fields of every child.
+ * Each whitespace separated word is stored lower cased, one row per (child, field, token),
+ * so a search term can be answered with a range scan on the token index instead of
+ * decrypting and parsing every record in the children table. Searches only look at the
+ * short id and the highlighted fields, enquiries are matched against all of them.
+ */
+public class ChildSearchIndex {
+
+    public static final String SHORT_ID_FIELD = "_short_id";
+    public static final List<String> SEARCHABLE_FIELD_TYPES = Arrays.asList("text_field", "textarea", "select_box");
+
+    private static final String INSERT_TOKEN = "INSERT INTO " + Database.childSearchIndex.getTableName()
+            + " (" + child_id.getColumnName() + ", " + field.getColumnName() + ", " + token.getColumnName() + ") VALUES (?, ?, ?)";
+
+    private final DatabaseSession session;
+
+    public ChildSearchIndex(DatabaseSession session) {
+        this.session = session;
+    }
+
+    public void index(Child child) throws JSONException {
+        String childId = child.getUniqueId();
+        remove(childId);
+        addTokens(childId, SHORT_ID_FIELD, child.getShortId());
+        for (String fieldId : indexedFields()) {
+            addTokens(childId, fieldId, child.optString(fieldId));
+        }
+    }
+
+    public void remove(String childId) {
+        session.delete(Database.childSearchIndex.getTableName(), child_id.getColumnName() + " = ?", new String[]{childId});
+    }
+
+    public void removeByOwner(String owner) {
+        session.delete(Database.childSearchIndex.getTableName(),
+                child_id.getColumnName() + " IN (SELECT id FROM children WHERE child_owner = ?)", new String[]{owner});
+    }
+
+    public void rebuild() throws JSONException {
+        session.delete(Database.childSearchIndex.getTableName(), null, null);
+        @Cleanup Cursor cursor = session.rawQuery("SELECT child_json FROM children", null);
+        while (cursor.moveToNext()) {
+            index(new Child(cursor.getString(0)));
+        }
+    }
+
+    /*
+     * Returns a sub query selecting the ids of children having a token in one of the given fields
+     * which starts with any of the search terms. The query arguments are appended to queryArgs.
+     */
+    public String matchingChildIdsQuery(List<String> searchTerms, List<String> fields, List<String> queryArgs) {
+        StringBuilder query = new StringBuilder("SELECT ").append(child_id.getColumnName())
+                .append(" FROM ").append(Database.childSearchIndex.getTableName())
+                .append(" WHERE ").append(field.getColumnName()).append(" IN (");
+        for (int i = 0; i < fields.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+            queryArgs.add(fields.get(i));
+        }
+        query.append(") AND (");
+        for (int i = 0; i < searchTerms.size(); i++) {
+            String prefix = searchTerms.get(i);
+            String upperBound = nextPrefix(prefix);
+            query.append(i == 0 ? "" : " OR ");
+            if (upperBound == null) {
+                query.append(token.getColumnName()).append(" >= ?");
+                queryArgs.add(prefix);
+            } else {
+                query.append("(").append(token.getColumnName()).append(" >= ? AND ").append(token.getColumnName()).append(" < ?)");
+                queryArgs.add(prefix);
+                queryArgs.add(upperBound);
+            }
+        }
+        return query.append(")").toString();
+    }
+
+    public static List<String> tokenize(String value) {
+        Set<String> tokens = new LinkedHashSet<String>();
+        if (value != null) {
+            for (String token : value.toLowerCase(Locale.ENGLISH).split("\\s+")) {
+                if (token.length() > 0) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return new ArrayList<String>(tokens);
+    }
+
+    private void addTokens(String childId, String fieldId, String value) {
+        for (String word : tokenize(value)) {
+            session.executeInsert(INSERT_TOKEN, new String[]{childId, fieldId, word});
+        }
+    }
+
+    static Set<String> indexedFields() {
+        Set<String> fieldIds = new LinkedHashSet<String>();
+        for (FormField formField : highlightedFields()) {
+            fieldIds.add(formField.getId());
+        }
+        RapidFtrApplication application = RapidFtrApplication.getApplicationInstance();
+        if (application != null) {
+            for (FormSection formSection : application.getFormSections(Child.CHILD_FORM_NAME)) {
+                for (FormField formField : formSection.getFields()) {
+                    if (SEARCHABLE_FIELD_TYPES.contains(formField.getType())) {
+                        fieldIds.add(formField.getId());
+                    }
+                }
+            }
+        }
+        return fieldIds;
+    }
+
+    static List<FormField> highlightedFields() {
+        RapidFtrApplication application = RapidFtrApplication.getApplicationInstance();
+        return application == null ? Collections.<FormField>emptyList() : application.getChildHighlightedFields();
+    }
+
+    // smallest string greater than every string starting with the prefix, null when there is none
+    private static String nextPrefix(String prefix) {
+        int last = prefix.length() - 1;
+        if (prefix.charAt(last) == Character.MAX_VALUE) {
+            return null;
+        }
+        return prefix.substring(0, last) + (char) (prefix.charAt(last) + 1);
+    }
+}
@@ -0,0 +1,214 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.database.Database;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.model.Child;
+import com.rapidftr.model.Enquiry;
+import lombok.Cleanup;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.*;
+
+import static com.rapidftr.database.Database.EnquiryCriteriaIndexColumn.enquiry_id;
+import static com.rapidftr.database.Database.EnquiryCriteriaIndexColumn.token;
+
+/*
+ * Matches enquiries against the children on the device, without waiting for the server to send potential matches.
+ * The words of an enquiry's criteria are looked up in the child search index, whatever field they are in, each weighted
+ * by how rare it is among children, and a child scores the share of the enquiry's weight it matches. Children are
+ * referred to by their server id like the server's own matches, so they are matched once they have one, and the
+ * matches are stored in enquiry_matches next to the server's.
+ * The words of every enquiry are indexed too, so saving a child only rescores the enquiries sharing a word with it.
+ */
+public class EnquiryMatcher {
+
+    public static final double MIN_SCORE = 0.3;
+    public static final int MAX_MATCHES = 20;
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private static final String INSERT_TOKEN = "INSERT INTO " + Database.enquiryCriteriaIndex.getTableName()
+            + " (" + enquiry_id.getColumnName() + ", " + token.getColumnName() + ") VALUES (?, ?)";
+    private static final int MIGRATION_PAGE_SIZE = 20;
+
+    private final DatabaseSession session;
+    private final EnquiryMatches matches;
+
+    public EnquiryMatcher(DatabaseSession session) {
+        this.session = session;
+        this.matches = new EnquiryMatches(session);
+    }
+
+    // indexes the criteria of a saved enquiry and stores its matches along with the ones from the server
+    public void save(Enquiry enquiry) throws JSONException {
+        index(enquiry);
+        matches.save(enquiry.getUniqueId(), enquiry.getPotentialMatchingIds(), match(enquiry));
+    }
+
+    public void index(Enquiry enquiry) throws JSONException {
+        remove(enquiry.getUniqueId());
+        for (String word : criteriaTokens(enquiry)) {
+            session.executeInsert(INSERT_TOKEN, new String[]{enquiry.getUniqueId(), word});
+        }
+    }
+
+    public void remove(String enquiryId) {
+        session.delete(Database.enquiryCriteriaIndex.getTableName(), enquiry_id.getColumnName() + " = ?", new String[]{enquiryId});
+    }
+
+    // scores of the children best matching the enquiry by their server id, best first
+    public Map<String, Double> match(Enquiry enquiry) throws JSONException {
+        final Map<String, Double> scores = scores(criteriaTokens(enquiry), null);
+        List<String> childIds = new ArrayList<String>();
+        for (Map.Entry<String, Double> score : scores.entrySet()) {
+            if (score.getValue() >= MIN_SCORE) {
+                childIds.add(score.getKey());
+            }
+        }
+        Collections.sort(childIds, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                return scores.get(rhs).compareTo(scores.get(lhs));
+            }
+        });
+        Map<String, Double> best = new LinkedHashMap<String, Double>();
+        for (String childId : childIds.subList(0, Math.min(childIds.size(), MAX_MATCHES))) {
+            best.put(childId, scores.get(childId));
+        }
+        return best;
+    }
+
+    // matches the child against the indexed enquiries again, dropping the ones it no longer matches
+    public void matchChild(Child child) throws JSONException {
+        String internalId = child.optString("_id");
+        if (internalId.length() == 0) {
+            return;
+        }
+        matches.removeLocalMatches(internalId);
+        for (String enquiryId : enquiriesSharingWordsWith(child.getUniqueId())) {
+            Double score = scores(enquiryTokens(enquiryId), child.getUniqueId()).get(internalId);
+            if (score != null && score >= MIN_SCORE) {
+                matches.add(enquiryId, internalId, score);
+            }
+        }
+    }
+
+    // indexes and matches every enquiry, for databases created before enquiries were matched on the device
+    public void rebuild() throws JSONException {
+        session.delete(Database.enquiryCriteriaIndex.getTableName(), null, null);
+        matches.removeAll();
+        String lastId = "";
+        List<Enquiry> page;
+        do {
+            page = new ArrayList<Enquiry>();
+            @Cleanup Cursor cursor = session.rawQuery("SELECT * FROM enquiry WHERE id > ? ORDER BY id LIMIT " + MIGRATION_PAGE_SIZE, new String[]{lastId});
+            while (cursor.moveToNext()) {
+                page.add(new Enquiry(cursor));
+            }
+            for (Enquiry enquiry : page) {
+                lastId = enquiry.getUniqueId();
+                save(enquiry);
+            }
+        } while (page.size() == MIGRATION_PAGE_SIZE);
+    }
+
+    static List<String> criteriaTokens(Enquiry enquiry) throws JSONException {
+        Set<String> tokens = new LinkedHashSet<String>();
+        JSONObject criteria = enquiry.getCriteria();
+        Iterator keys = criteria.keys();
+        while (keys.hasNext()) {
+            for (String word : ChildSearchIndex.tokenize(criteria.optString(keys.next().toString()))) {
+                if (word.length() >= MIN_TOKEN_LENGTH) {
+                    tokens.add(word);
+                }
+            }
+        }
+        return new ArrayList<String>(tokens);
+    }
+
+    /*
+     * Scores of the children with a server id matching any of the words, by server id.
+     * A word is weighted ln(1 + children / children having it), and only words some child has count towards the total.
+     */
+    private Map<String, Double> scores(List<String> words, String childId) {
+        Map<String, Double> scores = new HashMap<String, Double>();
+        Map<String, Double> weights = weights(words);
+        double totalWeight = 0;
+        for (Double weight : weights.values()) {
+            totalWeight += weight;
+        }
+        if (totalWeight == 0) {
+            return scores;
+        }
+
+        List<String> matchedWords = new ArrayList<String>(weights.keySet());
+        for (List<String> chunk : QueryArguments.chunks(matchedWords, QueryArguments.MAX_ARGUMENTS - 2)) {
+            List<String> args = new ArrayList<String>(chunk);
+            args.add(ChildSearchIndex.SHORT_ID_FIELD);
+            String childCondition = "";
+            if (childId != null) {
+                childCondition = " AND s.child_id = ?";
+                args.add(childId);
+            }
+            @Cleanup Cursor cursor = session.rawQuery("SELECT DISTINCT s.token, c._id FROM child_search_index s"
+                    + " JOIN children c ON c.id = s.child_id"
+                    + " WHERE s.token IN (" + QueryArguments.placeholders(chunk.size()) + ") AND s.field != ?" + childCondition
+                    + " AND c._id IS NOT NULL AND c._id != ''", args.toArray(new String[args.size()]));
+            while (cursor.moveToNext()) {
+                String internalId = cursor.getString(1);
+                Double score = scores.get(internalId);
+                scores.put(internalId, (score == null ? 0 : score) + weights.get(cursor.getString(0)) / totalWeight);
+            }
+        }
+        return scores;
+    }
+
+    private Map<String, Double> weights(List<String> words) {
+        Map<String, Double> weights = new HashMap<String, Double>();
+        if (words.isEmpty()) {
+            return weights;
+        }
+        double children = session.simpleQueryForLong("SELECT COUNT(1) FROM children", null);
+        for (List<String> chunk : QueryArguments.chunks(words, QueryArguments.MAX_ARGUMENTS - 1)) {
+            List<String> args = new ArrayList<String>(chunk);
+            args.add(ChildSearchIndex.SHORT_ID_FIELD);
+            @Cleanup Cursor cursor = session.rawQuery("SELECT token, COUNT(DISTINCT child_id) FROM child_search_index"
+                    + " WHERE token IN (" + QueryArguments.placeholders(chunk.size()) + ") AND field != ? GROUP BY token",
+                    args.toArray(new String[args.size()]));
+            while (cursor.moveToNext()) {
+                weights.put(cursor.getString(0), Math.log(1 + children / cursor.getLong(1)));
+            }
+        }
+        return weights;
+    }
+
+    private Set<String> enquiriesSharingWordsWith(String childId) {
+        List<String> childTokens = new ArrayList<String>();
+        @Cleanup Cursor tokens = session.rawQuery("SELECT DISTINCT token FROM child_search_index WHERE child_id = ? AND field != ?",
+                new String[]{childId, ChildSearchIndex.SHORT_ID_FIELD});
+        while (tokens.moveToNext()) {
+            childTokens.add(tokens.getString(0));
+        }
+
+        Set<String> enquiryIds = new LinkedHashSet<String>();
+        for (List<String> chunk : QueryArguments.chunks(childTokens, QueryArguments.MAX_ARGUMENTS)) {
+            @Cleanup Cursor cursor = session.rawQuery("SELECT DISTINCT " + enquiry_id.getColumnName() + " FROM " + Database.enquiryCriteriaIndex.getTableName()
+                    + " WHERE " + token.getColumnName() + " IN (" + QueryArguments.placeholders(chunk.size()) + ")", chunk.toArray(new String[chunk.size()]));
+            while (cursor.moveToNext()) {
+                enquiryIds.add(cursor.getString(0));
+            }
+        }
+        return enquiryIds;
+    }
+
+    private List<String> enquiryTokens(String enquiryId) {
+        List<String> tokens = new ArrayList<String>();
+        @Cleanup Cursor cursor = session.rawQuery("SELECT " + token.getColumnName() + " FROM " + Database.enquiryCriteriaIndex.getTableName()
+                + " WHERE " + enquiry_id.getColumnName() + " = ?", new String[]{enquiryId});
+        while (cursor.moveToNext()) {
+            tokens.add(cursor.getString(0));
+        }
+        return tokens;
+    }
+}
@@ -0,0 +1,95 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.database.Database;
+import com.rapidftr.database.DatabaseSession;
+import lombok.Cleanup;
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.rapidftr.database.Database.EnquiryMatchesColumn.*;
+
+/*
+ * Children matching each enquiry by their server id, indexed both ways so that the matches of an enquiry
+ * and the enquiries matching a child are both a lookup. Matches sent by the server have no score,
+ * matches found on the device keep the score they were found with.
+ */
+public class EnquiryMatches {
+
+    // server matches first, then the best local ones, for tables aliased m
+    public static final String BEST_FIRST = " ORDER BY m." + score.getColumnName() + " IS NULL DESC, m." + score.getColumnName() + " DESC";
+
+    private static final String INSERT_MATCH = "INSERT OR IGNORE INTO " + Database.enquiryMatches.getTableName()
+            + " (" + enquiry_id.getColumnName() + ", " + child_internal_id.getColumnName() + ", " + score.getColumnName() + ") VALUES (?, ?, ?)";
+
+    private final DatabaseSession session;
+
+    public EnquiryMatches(DatabaseSession session) {
+        this.session = session;
+    }
+
+    // replaces the matches of the enquiry with the ones from the server and the ones found on the device
+    public void save(String enquiryId, String serverMatches, Map<String, Double> localMatches) {
+        session.delete(Database.enquiryMatches.getTableName(), enquiry_id.getColumnName() + " = ?", new String[]{enquiryId});
+        for (String childInternalId : parse(serverMatches)) {
+            add(enquiryId, childInternalId, null);
+        }
+        for (Map.Entry<String, Double> match : localMatches.entrySet()) {
+            add(enquiryId, match.getKey(), match.getValue());
+        }
+    }
+
+    public void add(String enquiryId, String childInternalId, Double matchScore) {
+        session.executeInsert(INSERT_MATCH, new String[]{enquiryId, childInternalId, matchScore == null ? null : String.valueOf(matchScore)});
+    }
+
+    // the child is matched again whenever it changes, the server's matches are left to the server
+    public void removeLocalMatches(String childInternalId) {
+        session.delete(Database.enquiryMatches.getTableName(),
+                child_internal_id.getColumnName() + " = ? AND " + score.getColumnName() + " IS NOT NULL", new String[]{childInternalId});
+    }
+
+    public void removeAll() {
+        session.delete(Database.enquiryMatches.getTableName(), null, null);
+    }
+
+    public List<String> childInternalIds(String enquiryId) {
+        return strings("SELECT m." + child_internal_id.getColumnName() + " FROM " + Database.enquiryMatches.getTableName() + " m"
+                + " WHERE m." + enquiry_id.getColumnName() + " = ?" + BEST_FIRST, enquiryId);
+    }
+
+    public List<String> enquiryIds(String childInternalId) {
+        return strings("SELECT m." + enquiry_id.getColumnName() + " FROM " + Database.enquiryMatches.getTableName() + " m"
+                + " WHERE m." + child_internal_id.getColumnName() + " = ?" + BEST_FIRST, childInternalId);
+    }
+
+    // potential_matches as sent by the server, a JSON array of child ids
+    static List<String> parse(String potentialMatches) {
+        List<String> ids = new ArrayList<String>();
+        if (potentialMatches == null || potentialMatches.length() == 0) {
+            return ids;
+        }
+        try {
+            JSONArray array = new JSONArray(potentialMatches);
+            for (int i = 0; i < array.length(); i++) {
+                ids.add(array.getString(i));
+            }
+        } catch (JSONException e) {
+            return new ArrayList<String>();
+        }
+        return ids;
+    }
+
+    private List<String> strings(String query, String arg) {
+        List<String> values = new ArrayList<String>();
+        @Cleanup Cursor cursor = session.rawQuery(query, new String[]{arg});
+        while (cursor.moveToNext()) {
+            values.add(cursor.getString(0));
+        }
+        return values;
+    }
+}
@@ -13,8 +13,10 @@ import org.json.JSONException;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.rapidftr.database.Database.BooleanColumn.falseValue;
 import static com.rapidftr.database.Database.EnquiryTableColumn.*;
@@ -23,20 +25,50 @@ import static java.lang.String.format;
 
 public class EnquiryRepository implements Closeable, Repository<Enquiry> {
 
+    // pages list the user's enquiries in the order they were created, like ChildRepository
+    private static final String AFTER_ENQUIRY = " AND (created_at > (SELECT created_at FROM enquiry WHERE id = ?)"
+            + " OR (created_at = (SELECT created_at FROM enquiry WHERE id = ?) AND id > ?))";
+
     private final String user;
     private final DatabaseSession session;
+    private final EnquiryMatcher matcher;
 
     @Inject
     public EnquiryRepository(@Named("USER_NAME") String user, DatabaseSession session) {
         this.user = user;
         this.session = session;
+        this.matcher = new EnquiryMatcher(session);
     }
 
     @Override
     public void createOrUpdate(Enquiry enquiry) throws JSONException, FailedToSaveException {
-        long errorCode = session.replace(Database.enquiry.getTableName(), null, getContentValuesFrom(enquiry));
-        if (errorCode < 0)
-            throw new FailedToSaveException("Failed to save enquiry.", errorCode);
+        session.beginTransaction();
+        try {
+            long errorCode = session.replace(Database.enquiry.getTableName(), null, getContentValuesFrom(enquiry));
+            if (errorCode < 0)
+                throw new FailedToSaveException("Failed to save enquiry.", errorCode);
+            matcher.save(enquiry);
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+    }
+
+    @Override
+    public void createOrUpdateAll(List<Enquiry> enquiries) throws JSONException, FailedToSaveException {
+        session.beginTransaction();
+        try {
+            for (Enquiry enquiry : enquiries) {
+                if (exists(enquiry.getUniqueId())) {
+                    update(enquiry);
+                } else {
+                    createOrUpdate(enquiry);
+                }
+            }
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
     }
 
     protected ContentValues getContentValuesFrom(Enquiry enquiry) throws JSONException {
@@ -71,12 +103,19 @@ public class EnquiryRepository implements Closeable, Repository<Enquiry> {
 
     @Override
     public void update(Enquiry enquiry) throws JSONException {
-        ContentValues values = getContentValuesFrom(enquiry);
-        session.update(
-                Database.enquiry.getTableName(),
-                values,
-                format("%s=?", id.getColumnName()),
-                new String[]{enquiry.getUniqueId()});
+        session.beginTransaction();
+        try {
+            ContentValues values = getContentValuesFrom(enquiry);
+            session.update(
+                    Database.enquiry.getTableName(),
+                    values,
+                    format("%s=?", id.getColumnName()),
+                    new String[]{enquiry.getUniqueId()});
+            matcher.save(enquiry);
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
     }
 
     @Override
@@ -84,11 +123,36 @@ public class EnquiryRepository implements Closeable, Repository<Enquiry> {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public RecordCursor<Enquiry> currentUsersUnsyncedRecordsCursor() {
+        final String[] args = new String[]{falseValue.getColumnValue(), user};
+        return new PagedRecordCursor<Enquiry>((int) session.simpleQueryForLong("SELECT COUNT(1) FROM enquiry WHERE synced = ? AND created_by = ?", args)) {
+            @Override
+            protected Cursor queryPage(String afterId, int pageSize) {
+                return session.rawQuery("SELECT * FROM enquiry WHERE synced = ? AND created_by = ? AND id > ? ORDER BY id LIMIT " + pageSize,
+                        new String[]{args[0], args[1], afterId});
+            }
+
+            @Override
+            protected Enquiry read(Cursor cursor) throws JSONException {
+                return buildEnquiry(cursor);
+            }
+        };
+    }
+
     @Override
     public List<String> getRecordIdsByOwner() throws JSONException {
         throw new UnsupportedOperationException();
     }
 
+    @Override
+    public List<Enquiry> getPage(String afterId, int pageSize) throws JSONException {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT * FROM enquiry WHERE created_by = ?"
+                + (afterId == null ? "" : AFTER_ENQUIRY) + " ORDER BY created_at, id LIMIT " + pageSize,
+                afterId == null ? new String[]{user} : new String[]{user, afterId, afterId, afterId});
+        return toEnquiries(cursor);
+    }
+
     @Override
     public List<Enquiry> toBeSynced() throws JSONException {
         @Cleanup Cursor cursor = session.rawQuery("SELECT * FROM enquiry WHERE synced" +
@@ -96,16 +160,36 @@ public class EnquiryRepository implements Closeable, Repository<Enquiry> {
         return toEnquiries(cursor);
     }
 
+    @Override
+    public RecordCursor<Enquiry> toBeSyncedCursor() {
+        final String[] args = new String[]{falseValue.getColumnValue()};
+        return new PagedRecordCursor<Enquiry>((int) session.simpleQueryForLong("SELECT COUNT(1) FROM enquiry WHERE synced = ?", args)) {
+            @Override
+            protected Cursor queryPage(String afterId, int pageSize) {
+                return session.rawQuery("SELECT * FROM enquiry WHERE synced = ? AND id > ? ORDER BY id LIMIT " + pageSize,
+                        new String[]{args[0], afterId});
+            }
+
+            @Override
+            protected Enquiry read(Cursor cursor) throws JSONException {
+                return buildEnquiry(cursor);
+            }
+        };
+    }
+
     @Override
     public boolean exists(String id) {
-        @Cleanup Cursor cursor = session.rawQuery("SELECT * FROM enquiry WHERE id = ?", new String[]{id == null ? "" : id});
-        return cursor.moveToNext() && cursor.getCount() > 0;
+        return session.simpleQueryForLong("SELECT COUNT(1) FROM enquiry WHERE id = ?", new String[]{id == null ? "" : id}) > 0;
     }
 
     @Override
     public int size() {
-        @Cleanup Cursor cursor = session.rawQuery("SELECT COUNT(1) FROM enquiry", new String[]{});
-        return cursor.moveToNext() ? cursor.getInt(0) : 0;
+        return (int) session.simpleQueryForLong("SELECT COUNT(1) FROM enquiry", null);
+    }
+
+    @Override
+    public SyncPlan getSyncPlan() {
+        return new SyncPlan(session, enquiry.getTableName());
     }
 
     @Override
@@ -134,6 +218,33 @@ public class EnquiryRepository implements Closeable, Repository<Enquiry> {
         return new Enquiry(cursor);
     }
 
+    @Override
+    public List<Enquiry> getAll(Collection<String> ids) throws JSONException {
+        Map<String, Enquiry> enquiriesById = new HashMap<String, Enquiry>();
+        for (List<String> chunk : QueryArguments.chunks(ids, QueryArguments.MAX_ARGUMENTS)) {
+            @Cleanup Cursor cursor = session.rawQuery("SELECT * FROM enquiry WHERE id IN (" + QueryArguments.placeholders(chunk.size()) + ")",
+                    chunk.toArray(new String[chunk.size()]));
+            while (cursor.moveToNext()) {
+                Enquiry enquiry = buildEnquiry(cursor);
+                enquiriesById.put(enquiry.getUniqueId(), enquiry);
+            }
+        }
+        List<Enquiry> enquiries = new ArrayList<Enquiry>();
+        for (String id : ids) {
+            if (enquiriesById.containsKey(id)) {
+                enquiries.add(enquiriesById.get(id));
+            }
+        }
+        return enquiries;
+    }
+
+    // enquiries matching the child, by its server id
+    public List<Enquiry> getMatching(String childInternalId) throws JSONException {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT e.* FROM enquiry_matches m JOIN enquiry e ON e.id = m.enquiry_id"
+                + " WHERE m.child_internal_id = ?" + EnquiryMatches.BEST_FIRST, new String[]{childInternalId});
+        return toEnquiries(cursor);
+    }
+
     public Enquiry get(String enquiryId) throws JSONException {
         @Cleanup Cursor cursor = session.rawQuery("SELECT * from enquiry where id = ?", new String[]{enquiryId});
         if (cursor.moveToNext()) {
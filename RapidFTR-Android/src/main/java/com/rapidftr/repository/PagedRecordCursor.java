@@ -0,0 +1,84 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.model.BaseModel;
+import org.json.JSONException;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Reads records in pages ordered by id, each page starting after the id of the last record read.
+ * Unlike a single cursor over the whole result, this stays correct while the records
+ * already read are updated, e.g. marked as synced, and never holds more than a page of rows.
+ */
+public abstract class PagedRecordCursor<T extends BaseModel> implements RecordCursor<T> {
+
+    public static final int PAGE_SIZE = 20;
+
+    private final int size;
+    private Cursor page;
+    private String lastId;
+
+    protected PagedRecordCursor(int size) {
+        this.size = size;
+    }
+
+    protected abstract Cursor queryPage(String afterId, int pageSize);
+
+    protected abstract T read(Cursor cursor) throws JSONException;
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                if (page != null && page.getPosition() < page.getCount() - 1) {
+                    return true;
+                }
+                if (page != null && page.getCount() < PAGE_SIZE) {
+                    return false;
+                }
+                nextPage();
+                return page.getCount() > 0;
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                page.moveToNext();
+                try {
+                    T record = read(page);
+                    lastId = record.getUniqueId();
+                    return record;
+                } catch (JSONException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private void nextPage() {
+        close();
+        page = queryPage(lastId == null ? "" : lastId, PAGE_SIZE);
+    }
+
+    @Override
+    public void close() {
+        if (page != null) {
+            page.close();
+        }
+    }
+}
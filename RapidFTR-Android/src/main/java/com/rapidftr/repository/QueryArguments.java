@@ -0,0 +1,29 @@
+package com.rapidftr.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import static com.google.common.collect.Lists.partition;
+
+final class QueryArguments {
+
+    // SQLite refuses statements with more host parameters than SQLITE_MAX_VARIABLE_NUMBER
+    static final int MAX_ARGUMENTS = 999;
+
+    private QueryArguments() {
+    }
+
+    static List<List<String>> chunks(Collection<String> values, int chunkSize) {
+        return partition(new ArrayList<String>(new LinkedHashSet<String>(values)), chunkSize);
+    }
+
+    static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.toString();
+    }
+}
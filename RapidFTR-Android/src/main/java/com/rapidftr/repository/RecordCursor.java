@@ -0,0 +1,15 @@
+package com.rapidftr.repository;
+
+import java.io.Closeable;
+
+/*
+ * Records read lazily from the database while iterating, so only a few of them are in memory at a time.
+ * Iterate once and close it afterwards.
+ */
+public interface RecordCursor<T> extends Iterable<T>, Closeable {
+
+    public int size();
+
+    @Override
+    public void close();
+}
@@ -3,27 +3,52 @@ package com.rapidftr.repository;
 import com.rapidftr.model.BaseModel;
 import org.json.JSONException;
 
+import java.io.Closeable;
 import java.sql.SQLException;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 
-public interface Repository<T extends BaseModel> {
+public interface Repository<T extends BaseModel> extends Closeable {
 
     public List<T> toBeSynced() throws JSONException;
 
+    public RecordCursor<T> toBeSyncedCursor();
+
     public boolean exists(String id);
 
     public T get(String id) throws JSONException;
 
+    /*
+     * Returns the records with the given ids in the order of the ids, skipping ids which are not stored.
+     */
+    public List<T> getAll(Collection<String> ids) throws JSONException;
+
     public int size();
 
     public void createOrUpdate(T t) throws JSONException, SQLException;
 
+    /*
+     * Saves records received from the server in a single transaction:
+     * records already stored are updated as they are, the others are created.
+     */
+    public void createOrUpdateAll(List<T> records) throws JSONException, SQLException;
+
     public HashMap<String, String> getAllIdsAndRevs() throws JSONException;
 
     public void update(T t) throws JSONException;
 
     public List<T> currentUsersUnsyncedRecords() throws JSONException;
 
+    public RecordCursor<T> currentUsersUnsyncedRecordsCursor();
+
     public List<String> getRecordIdsByOwner() throws JSONException;
+
+    public SyncPlan getSyncPlan();
+
+    /*
+     * Returns at most pageSize records ordered by id, starting after the record with id afterId
+     * (from the first record when afterId is null). Pass the id of the last record of a page to get the next one.
+     */
+    public List<T> getPage(String afterId, int pageSize) throws JSONException;
 }
@@ -0,0 +1,59 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.database.DatabaseSession;
+import lombok.Cleanup;
+
+import java.io.Closeable;
+
+import static com.rapidftr.database.Database.ChildTableColumn.internal_id;
+import static com.rapidftr.database.Database.ChildTableColumn.internal_rev;
+
+/*
+ * Server revisions of the stored records, read a row at a time in server id order.
+ * Ids asked for in increasing order are merged against the rows, so comparing a sorted list
+ * from the server runs a single indexed scan; an id smaller than the previous one falls back to a lookup.
+ */
+public class RevisionCursor implements Closeable {
+
+    private final DatabaseSession session;
+    private final String table;
+    private final Cursor cursor;
+    private boolean hasRow;
+    private String lastId;
+
+    RevisionCursor(DatabaseSession session, String table) {
+        this.session = session;
+        this.table = table;
+        this.cursor = session.rawQuery("SELECT " + internal_id.getColumnName() + ", " + internal_rev.getColumnName() + " FROM " + table
+                + " WHERE " + internal_id.getColumnName() + " > '' ORDER BY " + internal_id.getColumnName(), null);
+        this.hasRow = cursor.moveToNext();
+    }
+
+    // null when no record has the id
+    public String revisionOf(String id) {
+        if (lastId != null && id.compareTo(lastId) < 0) {
+            return lookUp(id);
+        }
+        lastId = id;
+        while (hasRow && cursor.getString(0).compareTo(id) < 0) {
+            hasRow = cursor.moveToNext();
+        }
+        return hasRow && cursor.getString(0).equals(id) ? cursor.getString(1) : null;
+    }
+
+    private String lookUp(String id) {
+        return lookUp(session, table, id);
+    }
+
+    static String lookUp(DatabaseSession session, String table, String id) {
+        @Cleanup Cursor row = session.rawQuery("SELECT " + internal_rev.getColumnName() + " FROM " + table
+                + " WHERE " + internal_id.getColumnName() + " = ?", new String[]{id});
+        return row.moveToNext() ? row.getString(0) : null;
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.rapidftr.repository;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import com.rapidftr.database.Database;
+import com.rapidftr.database.Database.SyncCheckpointColumn;
+import com.rapidftr.database.DatabaseSession;
+import lombok.Cleanup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.rapidftr.database.Database.SyncPlanColumn.record_id;
+import static com.rapidftr.database.Database.SyncPlanColumn.record_type;
+
+/*
+ * The ids a sync is downloading, crossed off as the records are saved, so a sync which was cancelled,
+ * killed or lost its connection carries on with the ids left instead of listing them all again.
+ * Records to upload need no plan, they stay unsynced until the server has them. The checkpoint, where the
+ * server's changes feed was when everything was last downloaded, is kept in the same database so it goes
+ * whenever the records it describes do, next to the one the planned ids will move it to.
+ */
+public class SyncPlan {
+
+    private static final String INSERT_ID = "INSERT OR IGNORE INTO " + Database.syncPlan.getTableName()
+            + " (" + record_type.getColumnName() + ", " + record_id.getColumnName() + ") VALUES (?, ?)";
+
+    private final DatabaseSession session;
+    private final String recordType;
+
+    public SyncPlan(DatabaseSession session, String recordType) {
+        this.session = session;
+        this.recordType = recordType;
+    }
+
+    // in the order they were planned, empty when the last sync downloaded everything
+    public List<String> pendingIds() {
+        List<String> ids = new ArrayList<String>();
+        @Cleanup Cursor cursor = session.rawQuery("SELECT " + record_id.getColumnName() + " FROM " + Database.syncPlan.getTableName()
+                + " WHERE " + record_type.getColumnName() + " = ? ORDER BY rowid", new String[]{recordType});
+        while (cursor.moveToNext()) {
+            ids.add(cursor.getString(0));
+        }
+        return ids;
+    }
+
+    public void plan(List<String> ids) {
+        session.beginTransaction();
+        try {
+            clear();
+            for (String id : ids) {
+                session.executeInsert(INSERT_ID, new String[]{recordType, id});
+            }
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+    }
+
+    public void completed(Collection<String> ids) {
+        for (List<String> chunk : QueryArguments.chunks(ids, QueryArguments.MAX_ARGUMENTS - 1)) {
+            List<String> args = new ArrayList<String>(chunk);
+            args.add(0, recordType);
+            session.delete(Database.syncPlan.getTableName(), record_type.getColumnName() + " = ? AND "
+                    + record_id.getColumnName() + " IN (" + QueryArguments.placeholders(chunk.size()) + ")", args.toArray(new String[args.size()]));
+        }
+    }
+
+    public void clear() {
+        session.delete(Database.syncPlan.getTableName(), record_type.getColumnName() + " = ?", new String[]{recordType});
+    }
+
+    // null when nothing was downloaded from the changes feed yet
+    public String getCheckpoint() {
+        return get(SyncCheckpointColumn.sequence);
+    }
+
+    public void setCheckpoint(String sequence) {
+        set(SyncCheckpointColumn.sequence, sequence);
+    }
+
+    /*
+     * Where the changes feed was when the planned ids were listed. Kept with the plan, so a sync that carries on
+     * with the ids left still moves the checkpoint there once they are all saved.
+     */
+    public String getPendingCheckpoint() {
+        return get(SyncCheckpointColumn.pending_sequence);
+    }
+
+    public void setPendingCheckpoint(String sequence) {
+        set(SyncCheckpointColumn.pending_sequence, sequence);
+    }
+
+    // the pending checkpoint becomes the checkpoint, when there is one
+    public void promotePendingCheckpoint() {
+        String pendingCheckpoint = getPendingCheckpoint();
+        if (pendingCheckpoint == null) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(SyncCheckpointColumn.sequence.getColumnName(), pendingCheckpoint);
+        values.putNull(SyncCheckpointColumn.pending_sequence.getColumnName());
+        session.update(Database.syncCheckpoint.getTableName(), values, SyncCheckpointColumn.record_type.getColumnName() + " = ?", new String[]{recordType});
+    }
+
+    private String get(SyncCheckpointColumn column) {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT " + column.getColumnName() + " FROM " + Database.syncCheckpoint.getTableName()
+                + " WHERE " + SyncCheckpointColumn.record_type.getColumnName() + " = ?", new String[]{recordType});
+        return cursor.moveToNext() ? cursor.getString(0) : null;
+    }
+
+    private void set(SyncCheckpointColumn column, String sequence) {
+        session.beginTransaction();
+        try {
+            session.executeInsert("INSERT OR IGNORE INTO " + Database.syncCheckpoint.getTableName()
+                    + " (" + SyncCheckpointColumn.record_type.getColumnName() + ") VALUES (?)", new String[]{recordType});
+            ContentValues values = new ContentValues();
+            values.put(column.getColumnName(), sequence);
+            session.update(Database.syncCheckpoint.getTableName(), values, SyncCheckpointColumn.record_type.getColumnName() + " = ?", new String[]{recordType});
+            session.setTransactionSuccessful();
+        } finally {
+            session.endTransaction();
+        }
+    }
+}
@@ -2,7 +2,12 @@ package com.rapidftr.service;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import android.util.Log;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.io.CharStreams;
 import com.google.inject.Inject;
 import com.rapidftr.R;
@@ -11,29 +16,44 @@ import com.rapidftr.model.BaseModel;
 import com.rapidftr.model.Child;
 import com.rapidftr.model.User;
 import com.rapidftr.repository.ChildRepository;
+import com.rapidftr.repository.RevisionCursor;
+import com.rapidftr.repository.SyncPlan;
 import com.rapidftr.utils.AudioCaptureHelper;
 import com.rapidftr.utils.PhotoCaptureHelper;
 import com.rapidftr.utils.RapidFtrDateTime;
 import com.rapidftr.utils.http.FluentRequest;
 import com.rapidftr.utils.http.FluentResponse;
+import lombok.Cleanup;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringWriter;
 import java.io.SyncFailedException;
 import java.security.GeneralSecurityException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static com.rapidftr.RapidFtrApplication.SERVER_URL_PREF;
 import static com.rapidftr.database.Database.ChildTableColumn.internal_id;
+import static com.rapidftr.database.Database.ChildTableColumn.internal_rev;
+import static com.rapidftr.database.Database.ChildTableColumn.last_synced_at;
+import static com.rapidftr.database.Database.ChildTableColumn.last_updated_at;
+import static com.rapidftr.database.Database.ChildTableColumn.unique_identifier;
+import static com.rapidftr.database.Database.ChildTableColumn.unsynced_fields;
+import static com.rapidftr.model.Child.History.HISTORIES;
 import static com.rapidftr.view.fields.PhotoUploadBox.PHOTO_KEYS;
-import static java.util.Arrays.asList;
 
 public class ChildSyncService implements SyncService<Child> {
     private RapidFtrApplication context;
@@ -43,6 +63,13 @@ public class ChildSyncService implements SyncService<Child> {
     private Object audioAttachments;
 
     private static final int NOTIFICATION_ID = 1022;
+    private static final String BATCH_PATH = "/api/children/batch";
+    private static final String CHANGES_PATH = "/api/children/changes";
+    // the server url last found without a changes feed
+    private static final String CHANGES_UNSUPPORTED_PREF = "CHILD_CHANGES_UNSUPPORTED";
+
+    // set once the server answers a batch as an unknown route, so the rest of the sync goes straight to single gets
+    private boolean batchUnsupported;
 
     @Inject
     public ChildSyncService(RapidFtrApplication context, ChildRepository childRepository, FluentRequest fluentRequest) {
@@ -53,9 +80,12 @@ public class ChildSyncService implements SyncService<Child> {
 
     @Override
     public Child sync(Child child, User currentUser) throws IOException, JSONException {
-        addMultiMediaFilesToTheRequest(child);
+        if (!child.has(HISTORIES)) {
+            child.put(HISTORIES, childRepository.getHistories(child.getUniqueId()));
+        }
+        Map<String, String> mediaParams = multiMediaParams(child);
         removeUnusedParametersBeforeSync(child);
-        FluentResponse response = sendToServer(child, currentUser);
+        FluentResponse response = sendToServer(child, currentUser, mediaParams);
         try {
             String source = CharStreams.toString(new InputStreamReader(response.getEntity().getContent()));
 
@@ -64,7 +94,6 @@ public class ChildSyncService implements SyncService<Child> {
                 setChildAttributes(child);
                 childRepository.update(child);
                 setMedia(child);
-                childRepository.close();
                 return child;
             } else {
                 throw new Exception(source);
@@ -76,8 +105,37 @@ public class ChildSyncService implements SyncService<Child> {
         return child;
     }
 
-    private FluentResponse sendToServer(Child child, User currentUser) throws JSONException, SyncFailedException {
-        fluentRequest.path(getSyncPath(child, currentUser)).context(context).param("child", child.values().toString());
+    /*
+     * A child the server already has only sends the fields changed since it was last synced, along with the
+     * revision they were changed from. When the server refuses them, its revision having moved on (409) or the
+     * fields not being enough (422), the whole child is sent as before; any other failure is returned as it is.
+     */
+    private FluentResponse sendToServer(Child child, User currentUser, Map<String, String> mediaParams) throws JSONException, SyncFailedException {
+        JSONObject changedValues = changedValues(child, currentUser);
+        if (changedValues != null) {
+            FluentResponse response = sendToServer(child, currentUser, changedValues, mediaParams);
+            if (!isRefusedChanges(response)) {
+                return response;
+            }
+            try {
+                response.getEntity().consumeContent();
+            } catch (IOException e) {
+                Log.e("ChildSyncService", "Error reading refused changes", e);
+            }
+        }
+        return sendToServer(child, currentUser, child.values(), mediaParams);
+    }
+
+    private boolean isRefusedChanges(FluentResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        return status == HttpStatus.SC_CONFLICT || status == HttpStatus.SC_UNPROCESSABLE_ENTITY;
+    }
+
+    private FluentResponse sendToServer(Child child, User currentUser, JSONObject values, Map<String, String> mediaParams) throws JSONException, SyncFailedException {
+        fluentRequest.path(getSyncPath(child, currentUser)).context(context).param("child", values.toString());
+        for (Map.Entry<String, String> mediaParam : mediaParams.entrySet()) {
+            fluentRequest.param(mediaParam.getKey(), mediaParam.getValue());
+        }
         FluentResponse response;
         try {
             response = child.isNew() ? fluentRequest.postWithMultiPart() : fluentRequest.putWithMultiPart();
@@ -87,12 +145,16 @@ public class ChildSyncService implements SyncService<Child> {
             child.put("photo_keys", photoKeys);
             child.put("audio_attachments", audioAttachments);
             childRepository.update(child);
-            childRepository.close();
             throw new SyncFailedException(e.getMessage());
         }
         return response;
     }
 
+    @Override
+    public void close() {
+        childRepository.close();
+    }
+
     public String getSyncPath(Child child, User currentUser) throws JSONException {
         if (currentUser.isVerified()) {
             return child.isNew() ? "/api/children" : String.format("/api/children/%s", child.get(internal_id.getColumnName()));
@@ -123,14 +185,43 @@ public class ChildSyncService implements SyncService<Child> {
         child.remove("_attachments");
     }
 
-    private void addMultiMediaFilesToTheRequest(Child child) throws JSONException {
-        fluentRequest.param("photo_keys", updatedPhotoKeys(child).toString());
+    // the request params of the media to upload, kept to send again when the child's changes are refused
+    private Map<String, String> multiMediaParams(Child child) throws JSONException {
+        Map<String, String> params = new LinkedHashMap<String, String>();
+        params.put("photo_keys", updatedPhotoKeys(child).toString());
         if (child.opt("recorded_audio") != null && !child.optString("recorded_audio").equals("")) {
             if (!getAudioKey(child).equals(child.optString("recorded_audio"))) {
-                fluentRequest.param("recorded_audio", child.optString("recorded_audio"));
+                params.put("recorded_audio", child.optString("recorded_audio"));
             }
         }
         child.remove("attachments");
+        return params;
+    }
+
+    /*
+     * The fields changed on the device since the last sync, with the revision they were changed from and the unique
+     * identifier. Null when the whole child has to be sent: it was never synced, has no revision or no recorded change.
+     */
+    private JSONObject changedValues(Child child, User currentUser) throws JSONException {
+        String lastSyncedAt = child.optString(last_synced_at.getColumnName(), "");
+        String rev = child.optString(internal_rev.getColumnName(), "");
+        JSONArray unsyncedFields = child.optJSONArray(unsynced_fields.getColumnName());
+        if (child.isNew() || !currentUser.isVerified() || lastSyncedAt.equals("") || rev.equals("") || unsyncedFields == null) {
+            return null;
+        }
+
+        JSONObject values = child.values();
+        JSONObject changedValues = new JSONObject();
+        for (int i = 0; i < unsyncedFields.length(); i++) {
+            String field = unsyncedFields.getString(i);
+            changedValues.put(field, values.opt(field) == null ? "" : values.opt(field));
+        }
+        changedValues.put(internal_rev.getColumnName(), rev);
+        changedValues.put(unique_identifier.getColumnName(), child.getUniqueId());
+        if (child.has(last_updated_at.getColumnName())) {
+            changedValues.put(last_updated_at.getColumnName(), child.get(last_updated_at.getColumnName()));
+        }
+        return changedValues;
     }
 
     private void removeUnusedParametersBeforeSync(Child child) {
@@ -155,6 +246,66 @@ public class ChildSyncService implements SyncService<Child> {
         return child;
     }
 
+    /*
+     * Asks for all the children in one request, their JSON array streamed a child at a time. The server is sent
+     *
+     *   POST /api/children/batch
+     *   Content-Type: application/x-www-form-urlencoded
+     *
+     *   ids=["id1","id2"]    (a single form field holding a JSON array of ids, url encoded)
+     *
+     * and answers with a JSON array of the children found, in any order. Only servers without the route, answering
+     * 404, 405 or 501, get a request per child instead; a server refusing the ids with any other status fails the sync.
+     */
+    @Override
+    public List<Child> getRecords(List<String> ids) throws IOException, JSONException, HttpException {
+        if (!batchUnsupported) {
+            FluentResponse response = fluentRequest.context(context).path(BATCH_PATH).param("ids", new JSONArray(ids).toString()).post();
+            if (!isUnknownRoute(response)) {
+                return readChildren(response.ensureSuccess());
+            }
+            response.getEntity().consumeContent();
+            Log.w("ChildSyncService", "Server has no " + BATCH_PATH + ", getting children one by one");
+            batchUnsupported = true;
+        }
+        List<Child> children = new ArrayList<Child>();
+        for (String id : ids) {
+            children.add(getRecord(id));
+        }
+        return children;
+    }
+
+    private boolean isUnknownRoute(FluentResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        return status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_METHOD_NOT_ALLOWED || status == HttpStatus.SC_NOT_IMPLEMENTED;
+    }
+
+    private List<Child> readChildren(HttpResponse response) throws IOException, JSONException {
+        @Cleanup InputStream content = response.getEntity().getContent();
+        JsonFactory jsonFactory = new JsonFactory();
+        @Cleanup JsonParser parser = jsonFactory.createParser(content);
+
+        List<Child> children = new ArrayList<Child>();
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException("Expected a list of children", parser.getCurrentLocation());
+        }
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            StringWriter json = new StringWriter();
+            @Cleanup JsonGenerator generator = jsonFactory.createGenerator(json);
+            generator.copyCurrentStructure(parser);
+            generator.flush();
+            Child child = new Child(json.toString());
+            setChildAttributes(child);
+            children.add(child);
+        }
+        return children;
+    }
+
     private void setPhoto(Child child) throws IOException, JSONException {
         PhotoCaptureHelper photoCaptureHelper = new PhotoCaptureHelper(context);
 
@@ -180,7 +331,8 @@ public class ChildSyncService implements SyncService<Child> {
 
     public void getPhotoFromServer(Child child, PhotoCaptureHelper photoCaptureHelper, String fileName) throws IOException {
         HttpResponse httpResponse = getPhoto(child, fileName);
-        Bitmap bitmap = BitmapFactory.decodeStream(httpResponse.getEntity().getContent());
+        @Cleanup InputStream content = httpResponse.getEntity().getContent();
+        Bitmap bitmap = BitmapFactory.decodeStream(content);
         savePhoto(bitmap, photoCaptureHelper, fileName);
     }
 
@@ -209,7 +361,8 @@ public class ChildSyncService implements SyncService<Child> {
 
     private void getAudioFromServer(Child child, AudioCaptureHelper audioCaptureHelper) throws IOException, JSONException {
         HttpResponse response = getAudio(child);
-        audioCaptureHelper.saveAudio(child, response.getEntity().getContent());
+        @Cleanup InputStream content = response.getEntity().getContent();
+        audioCaptureHelper.saveAudio(child, content);
     }
 
     public HttpResponse issueGetPhotoRequest(BaseModel child, String fileName) throws IOException {
@@ -227,36 +380,165 @@ public class ChildSyncService implements SyncService<Child> {
 
     }
 
-    private HashMap<String, String> getAllIdsAndRevs() throws IOException, HttpException {
-        final ObjectMapper objectMapper = new ObjectMapper();
-        HttpResponse response = fluentRequest.path("/api/children/ids").context(context).get().ensureSuccess();
+    /*
+     * Children changed on the server since the last complete download are read from its changes feed.
+     * Without a checkpoint, or when the server no longer knows it, every id and revision is compared instead,
+     * after noting where the feed is so the next sync can start from there.
+     */
+    @Override
+    public List<String> getIdsToDownload() throws IOException, JSONException, HttpException {
+        SyncPlan plan = childRepository.getSyncPlan();
+        plan.setPendingCheckpoint(null);
+        String checkpoint = plan.getCheckpoint();
+        if (checkpoint != null) {
+            FluentResponse response = fluentRequest.path(CHANGES_PATH).context(context).param("since", checkpoint).get();
+            if (response.isSuccess()) {
+                return getChangedIds(response, plan);
+            }
+            response.getEntity().consumeContent();
+            plan.setCheckpoint(null);
+        }
+        plan.setPendingCheckpoint(getCurrentSequence());
+        return getIdsWithOtherRevisions();
+    }
+
+    // the pending checkpoint is kept with the plan, so it moves on even when the sync carried on from an earlier one
+    @Override
+    public void downloadsSaved() {
+        childRepository.getSyncPlan().promotePendingCheckpoint();
+    }
 
-        List<Map> idRevs = asList(objectMapper.readValue(response.getEntity().getContent(), Map[].class));
-        HashMap<String, String> idRevMapping = new HashMap<String, String>();
-        for (Map idRev : idRevs) {
-            idRevMapping.put(idRev.get("_id").toString(), idRev.get("_rev").toString());
+    private List<String> getChangedIds(HttpResponse response, SyncPlan plan) throws IOException, JSONException {
+        @Cleanup InputStream content = response.getEntity().getContent();
+        @Cleanup JsonParser parser = new JsonFactory().createParser(content);
+
+        Set<String> idsToDownload = new LinkedHashSet<String>();
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException("Expected a list of changes", parser.getCurrentLocation());
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("last_seq".equals(field)) {
+                plan.setPendingCheckpoint(parser.getText());
+            } else if ("results".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    String id = readChange(parser);
+                    if (id != null) {
+                        idsToDownload.add(id);
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
         }
-        return idRevMapping;
+        return new ArrayList<String>(idsToDownload);
     }
 
-    public List<String> getIdsToDownload() throws IOException, JSONException, HttpException {
-        HashMap<String, String> serverIdsRevs = getAllIdsAndRevs();
-        HashMap<String, String> repoIdsAndRevs = childRepository.getAllIdsAndRevs();
-        ArrayList<String> idsToDownload = new ArrayList<String>();
-        for (Map.Entry<String, String> serverIdRev : serverIdsRevs.entrySet()) {
-            if (!isServerIdExistingInRepository(repoIdsAndRevs, serverIdRev) || (repoIdsAndRevs.get(serverIdRev.getKey()) != null && isRevisionMismatch(repoIdsAndRevs, serverIdRev))) {
-                idsToDownload.add(serverIdRev.getKey());
+    // the id of the changed child when its revision is not the stored one, null for deletions and design documents
+    private String readChange(JsonParser parser) throws IOException {
+        String id = null;
+        String rev = null;
+        boolean deleted = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                id = parser.getValueAsString();
+            } else if ("deleted".equals(field)) {
+                deleted = parser.getValueAsBoolean();
+            } else if ("changes".equals(field) && parser.getCurrentToken() == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String changeField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("rev".equals(changeField) && rev == null) {
+                            rev = parser.getValueAsString();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                }
+            } else {
+                parser.skipChildren();
             }
         }
-        return idsToDownload;
+        if (id == null || deleted || id.startsWith("_design/")) {
+            return null;
+        }
+        String storedRev = childRepository.getRevision(id);
+        return storedRev == null || !storedRev.equals(rev) ? id : null;
     }
 
-    private boolean isRevisionMismatch(HashMap<String, String> repoIdsAndRevs, Map.Entry<String, String> serverIdRev) {
-        return !repoIdsAndRevs.get(serverIdRev.getKey()).equals(serverIdRev.getValue());
+    // where the changes feed is now, null when the server has none, which is remembered so it is only asked once
+    private String getCurrentSequence() throws IOException {
+        String serverUrl = context.getSharedPreferences().getString(SERVER_URL_PREF, null);
+        if (serverUrl != null && serverUrl.equals(context.getSharedPreferences().getString(CHANGES_UNSUPPORTED_PREF, null))) {
+            return null;
+        }
+        FluentResponse response = fluentRequest.path(CHANGES_PATH).context(context).param("since", "now").get();
+        if (!response.isSuccess()) {
+            response.getEntity().consumeContent();
+            if (isUnknownRoute(response)) {
+                context.getSharedPreferences().edit().putString(CHANGES_UNSUPPORTED_PREF, serverUrl).commit();
+            }
+            return null;
+        }
+        @Cleanup InputStream content = response.getEntity().getContent();
+        @Cleanup JsonParser parser = new JsonFactory().createParser(content);
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String sequence = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("last_seq".equals(field)) {
+                sequence = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return sequence;
     }
 
-    private boolean isServerIdExistingInRepository(HashMap<String, String> repoIdsAndRevs, Map.Entry<String, String> serverIdRev) {
-        return repoIdsAndRevs.get(serverIdRev.getKey()) != null;
+    /*
+     * Streams the ids and revisions of the server's children and merges them against the stored ones
+     * in id order, so only the ids to download are kept in memory however many children there are.
+     */
+    private List<String> getIdsWithOtherRevisions() throws IOException, JSONException, HttpException {
+        HttpResponse response = fluentRequest.path("/api/children/ids").context(context).get().ensureSuccess();
+        @Cleanup InputStream content = response.getEntity().getContent();
+        @Cleanup JsonParser parser = new JsonFactory().createParser(content);
+        @Cleanup RevisionCursor revisions = childRepository.getRevisions();
+
+        List<String> idsToDownload = new ArrayList<String>();
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException("Expected a list of ids and revisions", parser.getCurrentLocation());
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String id = null;
+            String rev = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("_id".equals(field)) {
+                    id = parser.getValueAsString();
+                } else if ("_rev".equals(field)) {
+                    rev = parser.getValueAsString();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (id == null) {
+                continue;
+            }
+            String storedRev = revisions.revisionOf(id);
+            if (storedRev == null || !storedRev.equals(rev)) {
+                idsToDownload.add(id);
+            }
+        }
+        return idsToDownload;
     }
 
     protected JSONArray updatedPhotoKeys(BaseModel model) throws JSONException {
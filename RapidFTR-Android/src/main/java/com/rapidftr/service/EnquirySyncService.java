@@ -16,6 +16,7 @@ import org.json.JSONException;
 
 import java.io.IOException;
 import java.io.SyncFailedException;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -47,18 +48,30 @@ public class EnquirySyncService implements SyncService<Enquiry> {
             record.setSynced(false);
             record.setLastUpdatedAt(null);
             enquiryRepository.update(record);
-            enquiryRepository.close();
             throw new SyncFailedException(exception.getMessage());
         }
-        enquiryRepository.close();
         return record;
     }
 
+    @Override
+    public void close() {
+        enquiryRepository.close();
+    }
+
     @Override
     public Enquiry getRecord(String url) throws IOException, JSONException, HttpException {
         return enquiryHttpDao.get(url);
     }
 
+    @Override
+    public List<Enquiry> getRecords(List<String> urls) throws IOException, JSONException, HttpException {
+        List<Enquiry> enquiries = new ArrayList<Enquiry>();
+        for (String url : urls) {
+            enquiries.add(getRecord(url));
+        }
+        return enquiries;
+    }
+
 
     @Override
     public List<String> getIdsToDownload() throws IOException, JSONException, HttpException {
@@ -67,6 +80,11 @@ public class EnquirySyncService implements SyncService<Enquiry> {
         return enquiryHttpDao.getIdsOfUpdated(lastUpdate);
     }
 
+    @Override
+    public void downloadsSaved() {
+        // do nothing
+    }
+
     @Override
     public void setMedia(Enquiry enquiry) throws IOException, JSONException {
         // do nothing
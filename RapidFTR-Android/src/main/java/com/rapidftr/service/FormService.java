@@ -3,11 +3,16 @@ package com.rapidftr.service;
 import com.google.common.io.CharStreams;
 import com.google.inject.Inject;
 import com.rapidftr.RapidFtrApplication;
+import com.rapidftr.forms.FormField;
+import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.utils.http.FluentResponse;
+import lombok.Cleanup;
 import org.apache.http.HttpResponse;
+import org.json.JSONException;
 
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.List;
 
 import static com.rapidftr.utils.http.FluentRequest.http;
 
@@ -28,7 +33,24 @@ public class FormService {
 
         if (formSectionsResponse.isSuccess()) {
             String formSectionJson = CharStreams.toString(new InputStreamReader(formSectionsResponse.getEntity().getContent()));
+            List<FormField> highlightedFields = context.getChildHighlightedFields();
             context.setFormSections(formSectionJson);
+            if (!highlightedFields.equals(context.getChildHighlightedFields())) {
+                rebuildHighlightedFieldIndexes();
+            }
+        }
+    }
+
+    // the search index and highlights tables hold values of the highlighted fields only
+    protected void rebuildHighlightedFieldIndexes() throws IOException {
+        if (!context.isLoggedIn()) {
+            return;
+        }
+        @Cleanup ChildRepository childRepository = context.getInjector().getInstance(ChildRepository.class);
+        try {
+            childRepository.rebuildHighlightedFieldIndexes();
+        } catch (JSONException e) {
+            throw new IOException(e);
         }
     }
 
@@ -3,15 +3,21 @@ package com.rapidftr.service;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.util.Log;
 import android.widget.Toast;
 import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.activity.LoginActivity;
 import com.rapidftr.activity.LoginActivity_;
 import com.rapidftr.activity.RapidFtrActivity;
+import com.rapidftr.database.DatabaseSessionManager;
+import com.rapidftr.database.QueryProfiler;
 import com.rapidftr.utils.http.FluentRequest;
 
+import java.io.IOException;
+
 import static android.widget.Toast.LENGTH_LONG;
+import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
 
 public class LogOutService {
 
@@ -24,6 +30,8 @@ public class LogOutService {
 
     protected void logOut(RapidFtrActivity currentActivity) {
         RapidFtrApplication context = currentActivity.getContext();
+        context.getInjector().getInstance(DatabaseSessionManager.class).close();
+        saveQueryProfile(context);
         context.setCurrentUser(null);
         FluentRequest.getHttpClient().getCookieStore().clear();
         Toast.makeText(context, R.string.logout_successful, LENGTH_LONG).show();
@@ -32,6 +40,14 @@ public class LogOutService {
         LoginActivity_.intent(currentActivity).flags(Intent.FLAG_ACTIVITY_CLEAR_TOP).start();
     }
 
+    private void saveQueryProfile(RapidFtrApplication context) {
+        try {
+            context.getInjector().getInstance(QueryProfiler.class).saveReport();
+        } catch (IOException e) {
+            Log.e(APP_IDENTIFIER, "Could not save the query profile", e);
+        }
+    }
+
     protected void cancelSync(RapidFtrApplication context) {
         RapidFtrApplication.getApplicationInstance().cleanSyncTask();
     }
@@ -6,22 +6,30 @@ import com.rapidftr.model.User;
 import org.apache.http.HttpException;
 import org.json.JSONException;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.List;
 
-public interface SyncService<T extends BaseModel> {
+// closing a sync service closes the repository it saves to, once the task using it is done
+public interface SyncService<T extends BaseModel> extends Closeable {
 
     public T sync(T record, User currentUser) throws IOException, JSONException, HttpException;
 
     // TODO change signature to accept a URI, not a string
     public T getRecord(String id) throws IOException, JSONException, HttpException;
 
+    // the records with the given ids, in as few requests as the server allows
+    public List<T> getRecords(List<String> ids) throws IOException, JSONException, HttpException;
+
 
     // @Deprecated
     // public HashMap<String, String> getAllIdsAndRevs() throws IOException, HttpException;
 
     public List<String> getIdsToDownload() throws IOException, JSONException, HttpException;
 
+    // called once every record listed by getIdsToDownload has been saved
+    public void downloadsSaved();
+
     public void setMedia(T t) throws IOException, JSONException;
 
     public int getNotificationId();
@@ -6,10 +6,13 @@ import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication_;
 import com.rapidftr.model.BaseModel;
 import com.rapidftr.model.User;
+import com.rapidftr.repository.RecordCursor;
 import com.rapidftr.repository.Repository;
+import com.rapidftr.repository.SyncPlan;
 import com.rapidftr.service.DeviceService;
 import com.rapidftr.service.FormService;
 import com.rapidftr.service.SyncService;
+import lombok.Cleanup;
 import org.apache.http.HttpException;
 import org.json.JSONException;
 
@@ -32,33 +35,54 @@ public class SyncAllDataAsyncTask<T extends BaseModel> extends SynchronisationAs
     }
 
     protected void sync() throws JSONException, IOException, HttpException {
-        List<T> recordsToUpload = repository.toBeSynced();
+        @Cleanup RecordCursor<T> recordsToUpload = repository.toBeSyncedCursor();
         List<String> idsToDownload;
         Boolean isBlacklisted = deviceService.isBlacklisted();
         if(isBlacklisted){
             sendRecordsToServer(recordsToUpload);
-            if (repository.toBeSynced().isEmpty())
+            @Cleanup RecordCursor<T> recordsNotUploaded = repository.toBeSyncedCursor();
+            if (recordsNotUploaded.size() == 0)
             {
                 deviceService.wipeData();
             }
         } else {
-            idsToDownload = recordSyncService.getIdsToDownload();
-            setProgressBarParameters(idsToDownload, recordsToUpload);
+            SyncPlan plan = repository.getSyncPlan();
+            idsToDownload = plan.pendingIds();
+            if (idsToDownload.isEmpty()) {
+                idsToDownload = recordSyncService.getIdsToDownload();
+                plan.plan(idsToDownload);
+            }
+            setProgressBarParameters(idsToDownload, recordsToUpload.size());
             setProgressAndNotify(context.getString(R.string.synchronize_step_1), 0);
 
             sendRecordsToServer(recordsToUpload);
-            downloadRecordsFromServer(idsToDownload, numberOfUploadedRecords(recordsToUpload));
+            downloadRecordsFromServer(idsToDownload, plan, numberOfUploadedRecords(recordsToUpload));
         }
     }
 
-    private int numberOfUploadedRecords(List<T> recordsToUpload) throws JSONException {
+    private int numberOfUploadedRecords(RecordCursor<T> recordsToUpload) throws JSONException {
         return formSectionProgress + recordsToUpload.size();
     }
 
-    private void downloadRecordsFromServer(List<String> idsToDownload, int startProgressForDownloadingRecords)
+    /*
+     * The plan outlives a sync which stopped on a lost connection, but one the server answered with
+     * something other than a record would fail again the same way, so it is listed afresh next time.
+     */
+    private void downloadRecordsFromServer(List<String> idsToDownload, SyncPlan plan, int startProgressForDownloadingRecords)
             throws IOException, JSONException, HttpException {
         getFormSections();
-        saveIncomingRecords(idsToDownload, startProgressForDownloadingRecords);
+        try {
+            saveIncomingRecords(idsToDownload, plan, startProgressForDownloadingRecords);
+        } catch (JSONException e) {
+            plan.clear();
+            throw e;
+        } catch (HttpException e) {
+            plan.clear();
+            throw e;
+        }
+        if (!isCancelled()) {
+            recordSyncService.downloadsSaved();
+        }
         setProgressAndNotify(context.getString(R.string.sync_complete), maxProgress);
     }
 
@@ -9,6 +9,8 @@ import com.rapidftr.model.User;
 import com.rapidftr.repository.Repository;
 import com.rapidftr.service.SyncService;
 
+import java.io.IOException;
+
 import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
 
 public class SyncSingleRecordTask extends AsyncTaskWithDialog<BaseModel, Void, Boolean> {
@@ -28,11 +30,26 @@ public class SyncSingleRecordTask extends AsyncTaskWithDialog<BaseModel, Void, B
     @Override
     public Boolean doInBackground(BaseModel... params) {
         try {
-            service.sync(params[0], currentUser);
-            return true;
+            return sync(params[0]);
         } catch (Exception e) {
             Log.e(APP_IDENTIFIER, "Error syncing one child record", e);
             return false;
+        } finally {
+            close();
+        }
+    }
+
+    protected boolean sync(BaseModel record) throws Exception {
+        service.sync(record, currentUser);
+        return true;
+    }
+
+    // the service and repository were created for this task alone
+    private void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            Log.e(APP_IDENTIFIER, "Error closing after syncing one record", e);
         }
     }
 
@@ -10,13 +10,17 @@ import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.RemoteViews;
 import android.widget.Toast;
+import com.google.inject.Inject;
+import com.google.inject.Provider;
 import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.RapidFtrApplication_;
 import com.rapidftr.activity.RapidFtrActivity;
 import com.rapidftr.model.BaseModel;
 import com.rapidftr.model.User;
+import com.rapidftr.repository.RecordCursor;
 import com.rapidftr.repository.Repository;
+import com.rapidftr.repository.SyncPlan;
 import com.rapidftr.service.FormService;
 import com.rapidftr.service.SyncService;
 import lombok.Getter;
@@ -24,9 +28,27 @@ import lombok.Setter;
 import org.apache.http.HttpException;
 import org.json.JSONException;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.SyncFailedException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.System.currentTimeMillis;
 
@@ -35,6 +57,8 @@ public abstract class SynchronisationAsyncTask<T extends BaseModel> extends Asyn
     public static int NOTIFICATION_ID = 1010 + new Random().nextInt(10);
     private static final String SYNC_ALL = "SYNC_ALL";
     private static final String CANCEL_SYNC_ALL = "CANCEL_SYNC_ALL";
+    static final int SAVE_BATCH_SIZE = 100;
+    private static final long FETCH_POLL_MILLIS = 500;
 
     protected FormService formService;
     protected SyncService<T> recordSyncService;
@@ -44,6 +68,11 @@ public abstract class SynchronisationAsyncTask<T extends BaseModel> extends Asyn
     protected Notification notification;
     protected NotificationManager notificationManager;
 
+    // a new sync service for every upload and download thread, when not set a single thread uses recordSyncService
+    private Provider<SyncService<T>> syncServices;
+    private final ThreadLocal<SyncService<T>> threadSyncServices = new ThreadLocal<SyncService<T>>();
+    private final List<SyncService<T>> openedSyncServices = Collections.synchronizedList(new ArrayList<SyncService<T>>());
+
     protected int formSectionProgress;
     protected int maxProgress;
     @Setter
@@ -81,6 +110,24 @@ public abstract class SynchronisationAsyncTask<T extends BaseModel> extends Asyn
             Log.e("SyncAllDataTask", "Error in sync", e);
             publishProgress(context.getString(R.string.sync_error));
             return false;
+        } finally {
+            close();
+        }
+    }
+
+    // the repositories are only released once the whole sync is done, the records of a batch share their session
+    private void close() {
+        List<Closeable> closeables = new ArrayList<Closeable>(openedSyncServices);
+        closeables.add(recordSyncService);
+        closeables.add(repository);
+        for (Closeable closeable : closeables) {
+            try {
+                if (closeable != null) {
+                    closeable.close();
+                }
+            } catch (Exception e) {
+                Log.e("SyncAllDataTask", "Error closing after sync", e);
+            }
         }
     }
 
@@ -92,8 +139,8 @@ public abstract class SynchronisationAsyncTask<T extends BaseModel> extends Asyn
         }
     }
 
-    void setProgressBarParameters(List<String> idsToDownload, List<?> recordsToSyncWithServer) {
-        int totalRecordsToSynchronize = idsToDownload.size() + recordsToSyncWithServer.size();
+    void setProgressBarParameters(List<String> idsToDownload, int numberOfRecordsToSyncWithServer) {
+        int totalRecordsToSynchronize = idsToDownload.size() + numberOfRecordsToSyncWithServer;
         formSectionProgress = totalRecordsToSynchronize / 4 == 0 ? 20 : totalRecordsToSynchronize / 4;
         maxProgress = totalRecordsToSynchronize + formSectionProgress;
     }
@@ -138,48 +185,246 @@ public abstract class SynchronisationAsyncTask<T extends BaseModel> extends Asyn
         }
     }
 
-    void sendRecordsToServer(List<T> recordsToSyncWithServer) throws IOException, JSONException, HttpException {
+    /*
+     * Uploads run on up to upload_threads threads, each with a sync service of its own since the services
+     * hold the request being built. Results are taken in the order of the records, so progress counts up as
+     * before, and a record failing to upload does not stop the others; the first failure is rethrown at the end.
+     */
+    void sendRecordsToServer(RecordCursor<T> recordsToSyncWithServer) throws IOException, JSONException, HttpException {
         setProgressAndNotify(context.getString(R.string.synchronize_step_2), formSectionProgress);
         String subStatusFormat = "Uploading Record %s of " + recordsToSyncWithServer.size();
         int counter = 0;
         int startProgress = formSectionProgress;
-        for (T baseModel : recordsToSyncWithServer) {
-            if (isCancelled()) {
-                break;
+        Exception firstFailure = null;
+
+        int threads = threads(R.integer.upload_threads);
+        ExecutorService executor = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        // a record or two queued behind each thread keeps them busy while waiting for a slow one to report progress
+        int maxInFlight = threads == 1 ? 1 : threads * 2;
+        try {
+            Deque<Future<T>> uploads = new ArrayDeque<Future<T>>();
+            Iterator<T> records = recordsToSyncWithServer.iterator();
+            while (true) {
+                while (!isCancelled() && uploads.size() < maxInFlight && records.hasNext()) {
+                    uploads.add(upload(records.next(), executor));
+                }
+                if (uploads.isEmpty()) {
+                    break;
+                }
+                try {
+                    uploads.poll().get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof Error) {
+                        throw (Error) e.getCause();
+                    }
+                    Log.e("SyncAllDataTask", "Error uploading record", e.getCause());
+                    firstFailure = firstFailure == null ? (Exception) e.getCause() : firstFailure;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SyncFailedException(e.getMessage());
+                }
+                setProgressAndNotify(String.format(subStatusFormat, ++counter), startProgress);
+                startProgress += 1;
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
-            recordSyncService.sync(baseModel, currentUser);
-            setProgressAndNotify(String.format(subStatusFormat, ++counter), startProgress);
-            startProgress += 1;
+        }
+        rethrow(firstFailure);
+    }
+
+    private Future<T> upload(final T record, ExecutorService executor) {
+        FutureTask<T> upload = new FutureTask<T>(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return syncServiceOfThisThread().sync(record, currentUser);
+            }
+        });
+        if (executor == null) {
+            upload.run();
+        } else {
+            executor.execute(upload);
+        }
+        return upload;
+    }
+
+    private int threads(int threadsResource) {
+        return syncServices == null ? 1 : Math.max(1, RapidFtrApplication.getApplicationInstance().getResources().getInteger(threadsResource));
+    }
+
+    private SyncService<T> syncServiceOfThisThread() {
+        if (syncServices == null) {
+            return recordSyncService;
+        }
+        SyncService<T> syncService = threadSyncServices.get();
+        if (syncService == null) {
+            syncService = syncServices.get();
+            threadSyncServices.set(syncService);
+            openedSyncServices.add(syncService);
+        }
+        return syncService;
+    }
+
+    private void rethrow(Throwable failure) throws IOException, JSONException, HttpException {
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof JSONException) {
+            throw (JSONException) failure;
+        } else if (failure instanceof HttpException) {
+            throw (HttpException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new RuntimeException(failure);
         }
     }
 
     protected void saveIncomingRecords(List<String> idsToDownload, int startProgress) throws IOException, JSONException, HttpException {
+        saveIncomingRecords(idsToDownload, null, startProgress);
+    }
+
+    /*
+     * Records are fetched on up to download_threads threads a chunk of download_batch_size ids at a time, their
+     * media going straight to disk, while this thread writes the previous batch. Fetchers wait whenever about two
+     * batches of records are fetched and not yet written, and stop when the task is cancelled or a fetch fails;
+     * what was fetched before a failure is still written. With a single thread the chunks are fetched here, in
+     * turn with the writes, as uploads do. The ids of each batch written are crossed off the plan, when there is one.
+     */
+    protected void saveIncomingRecords(List<String> idsToDownload, SyncPlan plan, int startProgress) throws IOException, JSONException, HttpException {
         String subStatusFormat = "Downloading Record %s of" + idsToDownload.size();
         int counter = 0;
         setProgressAndNotify(context.getString(R.string.synchronize_step_3), startProgress);
 
-        for (String idToDownload : idsToDownload) {
-            T incomingRecord = recordSyncService.getRecord(idToDownload);
-            if (isCancelled()) {
-                break;
+        int chunkSize = Math.max(1, RapidFtrApplication.getApplicationInstance().getResources().getInteger(R.integer.download_batch_size));
+        List<List<String>> chunks = new ArrayList<List<String>>();
+        for (int i = 0; i < idsToDownload.size(); i += chunkSize) {
+            chunks.add(idsToDownload.subList(i, Math.min(idsToDownload.size(), i + chunkSize)));
+        }
+
+        BlockingQueue<FetchedChunk<T>> fetched = new LinkedBlockingQueue<FetchedChunk<T>>();
+        Semaphore unwrittenRecords = new Semaphore(Math.max(SAVE_BATCH_SIZE * 2, SAVE_BATCH_SIZE + chunkSize));
+        AtomicInteger nextChunk = new AtomicInteger();
+        int threads = threads(R.integer.download_threads);
+        ExecutorService fetchers = threads == 1 ? null : Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; fetchers != null && i < threads; i++) {
+                fetchers.execute(fetcher(chunks, nextChunk, fetched, unwrittenRecords));
             }
-            try {
-                if (repository.exists(incomingRecord.getUniqueId())) {
-                    repository.update(incomingRecord);
-                } else {
-                    repository.createOrUpdate(incomingRecord);
+            List<T> incomingRecords = new ArrayList<T>();
+            List<String> incomingIds = new ArrayList<String>();
+            int remaining = chunks.size();
+            while (remaining > 0 && !isCancelled()) {
+                FetchedChunk<T> fetchedChunk = fetchers == null ? fetch(chunks.get(chunks.size() - remaining)) : fetched.poll(FETCH_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (fetchedChunk == null) {
+                    continue;
+                }
+                remaining--;
+                if (fetchedChunk.failure != null) {
+                    saveIncomingRecords(incomingRecords, incomingIds, plan, subStatusFormat, counter, startProgress + counter);
+                    rethrow(fetchedChunk.failure);
+                }
+                incomingRecords.addAll(fetchedChunk.records);
+                incomingIds.addAll(fetchedChunk.ids);
+                // permits are taken per id, and the server may not return a record for every id asked for
+                if (incomingIds.size() >= SAVE_BATCH_SIZE) {
+                    counter = saveIncomingRecords(incomingRecords, incomingIds, plan, subStatusFormat, counter, startProgress + counter);
+                    unwrittenRecords.release(incomingIds.size());
+                    incomingRecords = new ArrayList<T>();
+                    incomingIds = new ArrayList<String>();
+                }
+            }
+            saveIncomingRecords(incomingRecords, incomingIds, plan, subStatusFormat, counter, startProgress + counter);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SyncFailedException(e.getMessage());
+        } finally {
+            if (fetchers != null) {
+                fetchers.shutdownNow();
+            }
+        }
+    }
+
+    // the records fetched for a chunk of ids, or what fetching them failed with
+    private static class FetchedChunk<T> {
+        private final List<String> ids;
+        private final List<T> records;
+        private final Throwable failure;
+
+        private FetchedChunk(List<String> ids, List<T> records, Throwable failure) {
+            this.ids = ids;
+            this.records = records;
+            this.failure = failure;
+        }
+    }
+
+    // the records of the chunk, their media saved
+    private FetchedChunk<T> fetch(List<String> ids) {
+        try {
+            SyncService<T> syncService = syncServiceOfThisThread();
+            List<T> incomingRecords = syncService.getRecords(ids);
+            for (T incomingRecord : incomingRecords) {
+                syncService.setMedia(incomingRecord);
+            }
+            return new FetchedChunk<T>(ids, incomingRecords, null);
+        } catch (Throwable e) {
+            return new FetchedChunk<T>(ids, null, e);
+        }
+    }
+
+    // puts each chunk fetched in the queue, once the records not yet written leave room for it
+    private Runnable fetcher(final List<List<String>> chunks, final AtomicInteger nextChunk, final BlockingQueue<FetchedChunk<T>> fetched, final Semaphore unwrittenRecords) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                int index;
+                while (!isCancelled() && (index = nextChunk.getAndIncrement()) < chunks.size()) {
+                    try {
+                        unwrittenRecords.acquire(chunks.get(index).size());
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    FetchedChunk<T> fetchedChunk = fetch(chunks.get(index));
+                    fetched.add(fetchedChunk);
+                    if (fetchedChunk.failure != null) {
+                        return;
+                    }
                 }
-                recordSyncService.setMedia(incomingRecord);
+            }
+        };
+    }
+
+    // every commit is a journal sync on the encrypted database, so downloaded records are written in batches
+    private int saveIncomingRecords(List<T> incomingRecords, List<String> ids, SyncPlan plan, String subStatusFormat, int counter, int startProgress) {
+        if (ids.isEmpty()) {
+            return counter;
+        }
+        try {
+            if (!incomingRecords.isEmpty()) {
+                repository.createOrUpdateAll(incomingRecords);
+            }
+            if (plan != null) {
+                plan.completed(ids);
+            }
+            for (T incomingRecord : incomingRecords) {
                 setProgressAndNotify(String.format(subStatusFormat, ++counter), startProgress);
                 startProgress += 1;
-            } catch (Exception e) {
-                Log.e("SyncAllDataTask", "Error syncing record", e);
-                throw new RuntimeException(e);
             }
+            return counter;
+        } catch (Exception e) {
+            Log.e("SyncAllDataTask", "Error syncing record", e);
+            throw new RuntimeException(e);
         }
     }
 
     public void setContext(RapidFtrActivity context) {
         this.context = context;
     }
+
+    @Inject(optional = true)
+    public void setSyncServices(Provider<SyncService<T>> syncServices) {
+        this.syncServices = syncServices;
+    }
 }
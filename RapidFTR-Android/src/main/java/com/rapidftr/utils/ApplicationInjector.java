@@ -5,11 +5,16 @@ import android.content.SharedPreferences;
 import com.google.inject.AbstractModule;
 import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.google.inject.TypeLiteral;
 import com.google.inject.name.Named;
+import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.database.DatabaseHelper;
 import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.database.DatabaseSessionManager;
+import com.rapidftr.database.ProfilingSession;
+import com.rapidftr.database.QueryProfiler;
 import com.rapidftr.database.SQLCipherHelper;
 import com.rapidftr.model.Child;
 import com.rapidftr.model.Enquiry;
@@ -25,6 +30,10 @@ import com.rapidftr.task.SynchronisationAsyncTask;
 import com.rapidftr.utils.http.FluentRequest;
 import org.json.JSONException;
 
+import java.io.File;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
 public class ApplicationInjector extends AbstractModule {
 
     @Override
@@ -61,8 +70,16 @@ public class ApplicationInjector extends AbstractModule {
     }
 
     @Provides
-    public DatabaseSession getDatabaseSession(DatabaseHelper helper) {
-        return helper.getSession();
+    public DatabaseSession getDatabaseSession(DatabaseSessionManager sessionManager, User user, RapidFtrApplication application, Provider<QueryProfiler> profiler) {
+        DatabaseSession session = sessionManager.openSession(user);
+        return application.getResources().getBoolean(R.bool.profile_queries) ? new ProfilingSession(session, profiler.get()) : session;
+    }
+
+    @Provides
+    @Singleton
+    // the report holds the shape of every query, so it stays in private storage rather than the world readable external one
+    public QueryProfiler getQueryProfiler(RapidFtrApplication application) {
+        return new QueryProfiler(application.getResources().getInteger(R.integer.slow_query_millis), new File(application.getFilesDir(), "query_profile.txt"));
     }
 
     @Provides
@@ -80,6 +97,14 @@ public class ApplicationInjector extends AbstractModule {
         return user.isVerified() ? provider1.get() : provider2.get();
     }
 
+    // one thread keeps queries in the order they were made, SQLCipher would serialize most of them anyway
+    @Provides
+    @Singleton
+    @Named("DATABASE_EXECUTOR")
+    public Executor getDatabaseExecutor() {
+        return Executors.newSingleThreadExecutor();
+    }
+
     @Provides
     public SharedPreferences getSharedPreferences() {
         return RapidFtrApplication.getApplicationInstance().getSharedPreferences();
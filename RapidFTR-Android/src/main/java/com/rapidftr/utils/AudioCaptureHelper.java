@@ -2,6 +2,7 @@ package com.rapidftr.utils;
 
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.model.Child;
+import lombok.Cleanup;
 import org.json.JSONException;
 
 import java.io.*;
@@ -15,7 +16,8 @@ public class AudioCaptureHelper extends CaptureHelper{
     public void saveAudio(Child child, InputStream inputStream) throws JSONException, IOException {
         File file = new File(getDir(), child.optString("recorded_audio"));
         if (!file.exists() && !child.optString("recorded_audio").equals("")){
-            IOUtils.copy(inputStream, new FileOutputStream(file));
+            @Cleanup FileOutputStream outputStream = new FileOutputStream(file);
+            IOUtils.copy(inputStream, outputStream);
         }
     }
     
@@ -11,6 +11,16 @@ public class RapidFtrDateTime {
     private static final String defaultFormat = "yyyy-MM-dd HH:mm:ss";
     public static final String formatForChildRegister = "dd MMM yyyy";
 
+    // SimpleDateFormat is expensive to create and not thread safe, so each thread keeps its own
+    private static final ThreadLocal<SimpleDateFormat> DEFAULT_SIMPLE_DATE_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            SimpleDateFormat simpleDateFormat = new SimpleDateFormat(defaultFormat);
+            simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+            return simpleDateFormat;
+        }
+    };
+
     private Date dateTime;
 
     private RapidFtrDateTime() {
@@ -41,9 +51,7 @@ public class RapidFtrDateTime {
     }
 
     private static SimpleDateFormat getDefaultSimpleDateFormat() {
-        SimpleDateFormat simpleDateFormat = new SimpleDateFormat(defaultFormat);
-        simpleDateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        return simpleDateFormat;
+        return DEFAULT_SIMPLE_DATE_FORMAT.get();
     }
 
     @Override
@@ -1,13 +1,11 @@
 package com.rapidftr.utils.http;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.net.Uri;
 import com.google.inject.Inject;
 import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
-import com.rapidftr.model.BaseModel;
-import com.rapidftr.model.Child;
-import com.rapidftr.model.Enquiry;
 import com.rapidftr.utils.AudioCaptureHelper;
 import com.rapidftr.utils.IOUtils;
 import com.rapidftr.utils.PhotoCaptureHelper;
@@ -15,6 +13,8 @@ import lombok.Getter;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
 import org.apache.http.client.methods.*;
 import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
 import org.apache.http.conn.scheme.PlainSocketFactory;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -30,6 +30,7 @@ import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -147,15 +148,15 @@ public class FluentRequest {
         return execute(request);
     }
 
+    // only the fields given are sent, the model was complete when it was turned into JSON
     private void addTextFields(MultipartEntity multipartEntity, String modelType, Map.Entry<String, String> modelParam) throws UnsupportedEncodingException {
-        BaseModel baseModel;
         try {
-            baseModel = (modelType == "child") ? new Child(modelParam.getValue()) : new Enquiry(modelParam.getValue());
-            Iterator keys = baseModel.keys();
+            JSONObject fields = new JSONObject(modelParam.getValue());
+            Iterator keys = fields.keys();
             while(keys.hasNext())
             {
                 String currentKey = keys.next().toString();
-                multipartEntity.addPart(modelType+"["+currentKey+"]", new StringBody(baseModel.get(currentKey).toString(), Charset.defaultCharset()));
+                multipartEntity.addPart(modelType+"["+currentKey+"]", new StringBody(fields.get(currentKey).toString(), Charset.defaultCharset()));
             }
         } catch (JSONException e) {
             throw new RuntimeException(e);
@@ -249,13 +250,23 @@ public class FluentRequest {
         return context.getResources().getInteger(R.integer.http_timeout);
     }
 
+    /*
+     * One client is shared by every request. A sync runs upload_threads or download_threads requests to the server
+     * at once, with room for one more from the screens; a request waits at most http_timeout for a connection,
+     * so a response never read to the end can't hold up the others for good.
+     */
     private static DefaultHttpClient createHttpClient() {
         try {
             SchemeRegistry registry = new SchemeRegistry();
             registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
             registry.register(new Scheme("https", new SelfSignedSSLSocketFactory(), 443));
 
+            Resources resources = RapidFtrApplication.getApplicationInstance().getResources();
+            int connectionsPerRoute = Math.max(resources.getInteger(R.integer.upload_threads), resources.getInteger(R.integer.download_threads)) + 1;
             HttpParams params = new BasicHttpParams();
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(connectionsPerRoute));
+            ConnManagerParams.setMaxTotalConnections(params, connectionsPerRoute * 2);
+            ConnManagerParams.setTimeout(params, resources.getInteger(R.integer.http_timeout));
             ClientConnectionManager connectionManager = new ThreadSafeClientConnManager(params, registry);
 
             return new DefaultHttpClient(connectionManager, params);
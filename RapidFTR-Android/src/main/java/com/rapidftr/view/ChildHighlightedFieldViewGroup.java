@@ -8,7 +8,7 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.forms.FormField;
-import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import com.rapidftr.utils.StringUtils;
 
 import java.util.Iterator;
@@ -27,7 +27,7 @@ public class ChildHighlightedFieldViewGroup extends LinearLayout {
         super(context, attrs, defStyle);
     }
 
-    public void prepare(Child child, Map<Integer, FormField> highlightedFields) {
+    public void prepare(ChildSummary child, Map<Integer, FormField> highlightedFields) {
         Iterator<Integer> iterator = highlightedFields.keySet().iterator();
         while (iterator.hasNext()) {
             Integer fieldId = iterator.next();
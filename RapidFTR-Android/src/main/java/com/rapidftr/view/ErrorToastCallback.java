@@ -0,0 +1,29 @@
+package com.rapidftr.view;
+
+import android.content.Context;
+import android.util.Log;
+import android.widget.Toast;
+import com.rapidftr.repository.AsyncRepository;
+
+import static com.rapidftr.RapidFtrApplication.APP_IDENTIFIER;
+
+/*
+ * Tells the user a background query failed with the message the screen gives it;
+ * override onError to also recover, the list or screen is otherwise left as it was.
+ */
+public abstract class ErrorToastCallback<T> extends AsyncRepository.Callback<T> {
+
+    private final Context context;
+    private final int errorMessage;
+
+    public ErrorToastCallback(Context context, int errorMessage) {
+        this.context = context;
+        this.errorMessage = errorMessage;
+    }
+
+    @Override
+    public void onError(Exception e) {
+        Log.e(APP_IDENTIFIER, "Error while querying the database", e);
+        Toast.makeText(context, errorMessage, Toast.LENGTH_LONG).show();
+    }
+}
@@ -6,16 +6,18 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ListAdapter;
 import android.widget.ListView;
-import com.google.inject.Guice;
 import com.google.inject.Injector;
 import com.rapidftr.R;
+import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.adapter.ChildViewAdapter;
 import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import com.rapidftr.model.Enquiry;
 import com.rapidftr.repository.ChildRepository;
-import com.rapidftr.utils.ApplicationInjector;
+import lombok.Cleanup;
 import org.json.JSONException;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class ListRecordField extends BaseView {
@@ -38,9 +40,13 @@ public class ListRecordField extends BaseView {
     protected void initialize() throws JSONException {
         super.initialize();
         Enquiry enquiry=(Enquiry) model;
-        Injector inject = Guice.createInjector(new ApplicationInjector());
+        Injector inject = RapidFtrApplication.getApplicationInstance().getInjector();
 
-        List<Child> children = enquiry.getPotentialMatches(inject.getInstance(ChildRepository.class));
+        @Cleanup ChildRepository childRepository = inject.getInstance(ChildRepository.class);
+        List<ChildSummary> children = new ArrayList<ChildSummary>();
+        for (Child child : enquiry.getPotentialMatches(childRepository)) {
+            children.add(ChildSummary.of(child, RapidFtrApplication.getApplicationInstance().getChildHighlightedFields()));
+        }
         ChildViewAdapter childViewAdapter = new ChildViewAdapter(getContext(), R.layout.row_child, children);
         ListView childListView = (ListView) findViewById(R.id.list_records);
         if (children.isEmpty()) {
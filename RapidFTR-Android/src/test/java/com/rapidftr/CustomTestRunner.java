@@ -3,9 +3,12 @@ package com.rapidftr;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.google.inject.Provider;
 import com.google.inject.Provides;
+import com.google.inject.name.Named;
 import com.google.inject.util.Modules;
 import com.rapidftr.database.DatabaseHelper;
+import com.rapidftr.database.DatabaseSessionManager;
 import com.rapidftr.database.ShadowSQLiteHelper;
 import com.rapidftr.forms.FormField;
 import com.rapidftr.forms.FormSection;
@@ -14,12 +17,14 @@ import com.rapidftr.utils.ApplicationInjector;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.junit.runners.model.InitializationError;
 import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 
 import java.security.Security;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public class CustomTestRunner extends RobolectricTestRunner {
 
@@ -36,6 +41,14 @@ public class CustomTestRunner extends RobolectricTestRunner {
         ))
     );
 
+    // runs database queries on the background scheduler, so tests can pause it or let queries finish right away
+    public static final Executor BACKGROUND_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            Robolectric.getBackgroundScheduler().post(command);
+        }
+    };
+
     public static class TestInjector extends AbstractModule {
         @Override
         protected void configure() {
@@ -45,6 +58,18 @@ public class CustomTestRunner extends RobolectricTestRunner {
         public DatabaseHelper getDatabaseHelper() {
             return ShadowSQLiteHelper.getInstance();
         }
+
+        // not a singleton, the in-memory test database is shared by every test and must outlive a logout
+        @Provides
+        public DatabaseSessionManager getDatabaseSessionManager(Provider<DatabaseHelper> helperProvider) {
+            return new DatabaseSessionManager(helperProvider);
+        }
+
+        @Provides
+        @Named("DATABASE_EXECUTOR")
+        public Executor getDatabaseExecutor() {
+            return BACKGROUND_EXECUTOR;
+        }
     }
 
     public static Injector INJECTOR = Guice.createInjector(Modules.override(new ApplicationInjector()).with(new TestInjector()));
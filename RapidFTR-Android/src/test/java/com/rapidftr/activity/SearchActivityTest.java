@@ -3,13 +3,15 @@ package com.rapidftr.activity;
 import android.widget.ListView;
 import android.widget.TextView;
 import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
 import com.rapidftr.CustomTestRunner;
 import com.rapidftr.R;
 import com.rapidftr.database.ShadowSQLiteHelper;
 import com.rapidftr.forms.FormField;
 import com.rapidftr.forms.FormSection;
 import com.rapidftr.forms.FormSectionTest;
-import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.utils.SpyActivityController;
 import org.json.JSONException;
@@ -21,7 +23,9 @@ import org.robolectric.util.ActivityController;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
@@ -45,14 +49,15 @@ public class SearchActivityTest {
         Injector mockInjector = mock(Injector.class);
         doReturn(mockInjector).when(activity).getInjector();
         doReturn(childRepository).when(mockInjector).getInstance(ChildRepository.class);
+        doReturn(CustomTestRunner.BACKGROUND_EXECUTOR).when(mockInjector).getInstance(Key.get(Executor.class, Names.named("DATABASE_EXECUTOR")));
     }
 
     @Test
     public void shouldListChildrenForSearchedString() throws JSONException {
-        List<Child> searchResults = new ArrayList<Child>();
-        searchResults.add(new Child("id1", "user1", "{ \"name\" : \"child1\", \"test2\" : 0, \"test3\" : [ \"1\", 2, \"3\" ] }"));
+        List<ChildSummary> searchResults = new ArrayList<ChildSummary>();
+        searchResults.add(new ChildSummary("id1", "", new HashMap<String, String>()));
         String searchString = "Hild";
-        when(childRepository.getMatchingChildren(eq(searchString), anyListOf(FormField.class))).thenReturn(searchResults);
+        when(childRepository.getMatchingChildSummaries(eq(searchString), anyListOf(FormField.class))).thenReturn(searchResults);
 
         activityController.create();
         TextView textView = (TextView) activity.findViewById(R.id.search_text);
@@ -65,9 +70,9 @@ public class SearchActivityTest {
 
     @Test
     public void shouldShowEmptyViewForNoSearchResults() throws JSONException {
-        List<Child> searchResults = new ArrayList<Child>();
+        List<ChildSummary> searchResults = new ArrayList<ChildSummary>();
         String searchString = "Hild";
-        when(childRepository.getMatchingChildren(eq(searchString), anyListOf(FormField.class))).thenReturn(searchResults);
+        when(childRepository.getMatchingChildSummaries(eq(searchString), anyListOf(FormField.class))).thenReturn(searchResults);
 
         activityController.create();
         TextView textView = (TextView) activity.findViewById(R.id.search_text);
@@ -85,7 +90,7 @@ public class SearchActivityTest {
         textView.setText(searchString);
         activity.findViewById(R.id.search_btn).performClick();
         ListView listView = (ListView) activity.findViewById(R.id.child_list);
-        verify(childRepository,never()).getMatchingChildren(eq(searchString), anyListOf(FormField.class));
+        verify(childRepository,never()).getMatchingChildSummaries(eq(searchString), anyListOf(FormField.class));
         assertNotNull(listView.getEmptyView());
     }
 
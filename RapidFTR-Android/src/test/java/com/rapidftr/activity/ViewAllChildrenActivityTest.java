@@ -1,10 +1,15 @@
 package com.rapidftr.activity;
 
+import android.content.BroadcastReceiver;
+import android.content.IntentFilter;
+import android.view.View;
 import android.widget.ListView;
 import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
 import com.rapidftr.CustomTestRunner;
 import com.rapidftr.R;
-import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.utils.SpyActivityController;
 import org.json.JSONException;
@@ -15,10 +20,12 @@ import org.mockito.Mock;
 import org.robolectric.util.ActivityController;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Executor;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
 
@@ -38,28 +45,42 @@ public class ViewAllChildrenActivityTest {
         Injector mockInjector = mock(Injector.class);
         doReturn(mockInjector).when(activity).getInjector();
         doReturn(childRepository).when(mockInjector).getInstance(ChildRepository.class);
+        doReturn(CustomTestRunner.BACKGROUND_EXECUTOR).when(mockInjector).getInstance(Key.get(Executor.class, Names.named("DATABASE_EXECUTOR")));
     }
 
     @Test
     public void shouldListChildrenCreatedByTheLoggedInUser() throws JSONException {
-        List<Child> children = new ArrayList<Child>();
-        children.add(new Child("id1", "user1", "{ \"name\" : \"child1\", \"test2\" : 0, \"test3\" : [ \"1\", 2, \"3\" ] }"));
-        when(childRepository.getChildrenByOwner()).thenReturn(children);
+        List<ChildSummary> children = new ArrayList<ChildSummary>();
+        children.add(new ChildSummary("id1", "", new HashMap<String, String>()));
+        when(childRepository.getSummaryPage(null, ViewAllChildrenActivity.PAGE_SIZE)).thenReturn(children);
 
         activityController.create();
         ListView listView = (ListView) activity.findViewById(R.id.child_list);
-        assertNull(listView.getEmptyView());
+        assertEquals(View.GONE, activity.findViewById(R.id.no_child_view).getVisibility());
         assertNotNull(listView.getItemAtPosition(0));
     }
 
     @Test
     public void shouldShowNoChildMessageWhenNoChildrenPresent() throws JSONException {
-        List<Child> children = new ArrayList<Child>();
-        when(childRepository.getChildrenByOwner()).thenReturn(children);
+        List<ChildSummary> children = new ArrayList<ChildSummary>();
+        when(childRepository.getSummaryPage(null, ViewAllChildrenActivity.PAGE_SIZE)).thenReturn(children);
 
         activityController.create();
         ListView listView = (ListView) activity.findViewById(R.id.child_list);
         assertNotNull(listView.getEmptyView());
+        assertEquals(View.VISIBLE, activity.findViewById(R.id.no_child_view).getVisibility());
+    }
+
+    @Test
+    public void shouldCloseRepositoryWhenDestroyed() throws JSONException {
+        when(childRepository.getSummaryPage(null, ViewAllChildrenActivity.PAGE_SIZE)).thenReturn(new ArrayList<ChildSummary>());
+        doReturn(null).when(activity).registerReceiver(any(BroadcastReceiver.class), any(IntentFilter.class));
+
+        activityController.create();
+        verify(childRepository, never()).close();
+
+        activity.onDestroy();
+        verify(childRepository).close();
     }
 
 }
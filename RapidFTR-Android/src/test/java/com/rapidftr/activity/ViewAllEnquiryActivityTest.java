@@ -2,6 +2,8 @@ package com.rapidftr.activity;
 
 import android.widget.ListView;
 import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
 import com.rapidftr.CustomTestRunner;
 import com.rapidftr.R;
 import com.rapidftr.model.Enquiry;
@@ -17,6 +19,7 @@ import org.robolectric.util.ActivityController;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static junit.framework.Assert.*;
 import static org.mockito.Mockito.*;
@@ -38,6 +41,7 @@ public class ViewAllEnquiryActivityTest {
         Injector mockInjector = mock(Injector.class);
         doReturn(mockInjector).when(activity).getInjector();
         doReturn(repository).when(mockInjector).getInstance(EnquiryRepository.class);
+        doReturn(CustomTestRunner.BACKGROUND_EXECUTOR).when(mockInjector).getInstance(Key.get(Executor.class, Names.named("DATABASE_EXECUTOR")));
     }
 
     @Test
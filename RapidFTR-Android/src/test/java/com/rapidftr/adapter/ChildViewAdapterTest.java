@@ -0,0 +1,80 @@
+package com.rapidftr.adapter;
+
+import android.widget.ListView;
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.R;
+import com.rapidftr.model.ChildSummary;
+import com.rapidftr.repository.AsyncRepository;
+import com.rapidftr.repository.ChildRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.util.HashMap;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(CustomTestRunner.class)
+public class ChildViewAdapterTest {
+
+    private ChildRepository repository;
+    private ChildSummary child1, child2, child3;
+
+    @Before
+    public void setUp() {
+        repository = mock(ChildRepository.class);
+        child1 = new ChildSummary("id1", "", new HashMap<String, String>());
+        child2 = new ChildSummary("id2", "", new HashMap<String, String>());
+        child3 = new ChildSummary("id3", "", new HashMap<String, String>());
+    }
+
+    @Test
+    public void shouldLoadOnlyFirstPageInitially() {
+        when(repository.getSummaryPage(null, 2)).thenReturn(asList(child1, child2));
+
+        ChildViewAdapter adapter = new ChildViewAdapter(Robolectric.application, R.layout.row_child, new AsyncRepository<ChildRepository>(repository, CustomTestRunner.BACKGROUND_EXECUTOR), 2);
+
+        assertThat(adapter.getCount(), equalTo(2));
+        assertThat(adapter.hasMorePages(), equalTo(true));
+        verify(repository, never()).getSummaryPage("id2", 2);
+    }
+
+    @Test
+    public void shouldLoadNextPageWhenLastRowIsShown() {
+        when(repository.getSummaryPage(null, 2)).thenReturn(asList(child1, child2));
+        when(repository.getSummaryPage("id2", 2)).thenReturn(asList(child3));
+        ChildViewAdapter adapter = new ChildViewAdapter(Robolectric.application, R.layout.row_child, new AsyncRepository<ChildRepository>(repository, CustomTestRunner.BACKGROUND_EXECUTOR), 2);
+
+        adapter.getView(1, null, new ListView(Robolectric.application));
+
+        assertThat(adapter.getCount(), equalTo(3));
+        assertThat(adapter.getItem(2), equalTo(child3));
+        assertThat(adapter.hasMorePages(), equalTo(false));
+    }
+
+    @Test
+    public void shouldNotQueryAgainAfterLastPage() {
+        when(repository.getSummaryPage(null, 2)).thenReturn(asList(child1));
+        ChildViewAdapter adapter = new ChildViewAdapter(Robolectric.application, R.layout.row_child, new AsyncRepository<ChildRepository>(repository, CustomTestRunner.BACKGROUND_EXECUTOR), 2);
+
+        adapter.getView(0, null, new ListView(Robolectric.application));
+
+        verify(repository, times(1)).getSummaryPage(anyString(), anyInt());
+    }
+
+    @Test
+    public void shouldTryNextPageAgainAfterFailingToLoadIt() {
+        when(repository.getSummaryPage(null, 2)).thenReturn(asList(child1, child2));
+        when(repository.getSummaryPage("id2", 2)).thenThrow(new RuntimeException("database locked")).thenReturn(asList(child3));
+        ChildViewAdapter adapter = new ChildViewAdapter(Robolectric.application, R.layout.row_child, new AsyncRepository<ChildRepository>(repository, CustomTestRunner.BACKGROUND_EXECUTOR), 2);
+
+        adapter.getView(1, null, new ListView(Robolectric.application));
+        adapter.getView(1, null, new ListView(Robolectric.application));
+
+        assertThat(adapter.getCount(), equalTo(3));
+    }
+}
@@ -0,0 +1,95 @@
+package com.rapidftr.database;
+
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.RapidFtrApplication;
+import com.rapidftr.model.User;
+import com.rapidftr.task.SynchronisationAsyncTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.*;
+
+@RunWith(CustomTestRunner.class)
+public class DatabaseMaintenanceReceiverTest {
+
+    private RapidFtrApplication application;
+    private DatabaseMaintenanceReceiver receiver;
+    private AsyncTask<Void, Void, Void> task;
+    private User user;
+
+    @Before
+    public void setUp() {
+        application = RapidFtrApplication.getApplicationInstance();
+        user = CustomTestRunner.createUser();
+        application.setCurrentUser(user);
+        receiver = spy(new DatabaseMaintenanceReceiver());
+        task = mock(AsyncTask.class);
+        doReturn(task).when(receiver).maintenanceTask(application);
+        doReturn(true).when(receiver).isIdleAndCharging(any(android.content.Context.class));
+    }
+
+    @After
+    public void tearDown() {
+        application.setCurrentUser(null);
+        application.setSyncTask(null);
+    }
+
+    @Test
+    public void shouldRunMaintenanceOnceADay() {
+        receiver.onReceive(Robolectric.application, new Intent(Intent.ACTION_POWER_CONNECTED));
+        receiver.onReceive(Robolectric.application, new Intent(Intent.ACTION_SCREEN_OFF));
+
+        verify(task, times(1)).executeOnExecutor(CustomTestRunner.BACKGROUND_EXECUTOR);
+    }
+
+    @Test
+    public void shouldNotRunMaintenanceWhileTheDeviceIsInUse() {
+        doReturn(false).when(receiver).isIdleAndCharging(any(android.content.Context.class));
+
+        receiver.onReceive(Robolectric.application, new Intent(Intent.ACTION_POWER_CONNECTED));
+
+        verify(task, never()).executeOnExecutor(CustomTestRunner.BACKGROUND_EXECUTOR);
+    }
+
+    @Test
+    public void shouldNotRunMaintenanceWhenLoggedOut() {
+        application.setCurrentUser(null);
+
+        receiver.onReceive(Robolectric.application, new Intent(Intent.ACTION_POWER_CONNECTED));
+
+        verify(task, never()).executeOnExecutor(CustomTestRunner.BACKGROUND_EXECUTOR);
+    }
+
+    @Test
+    public void shouldBeDueAfterTheMaintenanceInterval() {
+        SharedPreferences preferences = application.getSharedPreferences();
+        String key = receiver.preferenceKey(application);
+
+        preferences.edit().putLong(key, System.currentTimeMillis() - DatabaseMaintenanceReceiver.MAINTENANCE_INTERVAL - 1).commit();
+        assertTrue(receiver.isDue(preferences, key));
+
+        preferences.edit().putLong(key, System.currentTimeMillis()).commit();
+        assertFalse(receiver.isDue(preferences, key));
+    }
+
+    @Test
+    public void shouldPutMaintenanceOffWhenASyncStartedSinceTheBroadcast() {
+        SharedPreferences preferences = application.getSharedPreferences();
+        String key = receiver.preferenceKey(application);
+        preferences.edit().putLong(key, System.currentTimeMillis()).commit();
+        application.setSyncTask(mock(SynchronisationAsyncTask.class));
+
+        receiver.runMaintenance(application);
+
+        assertTrue(receiver.isDue(preferences, key));
+    }
+}
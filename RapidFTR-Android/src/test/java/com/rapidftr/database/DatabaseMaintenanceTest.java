@@ -0,0 +1,102 @@
+package com.rapidftr.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import com.google.common.base.Strings;
+import com.rapidftr.CustomTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(CustomTestRunner.class)
+public class DatabaseMaintenanceTest {
+
+    private DatabaseSession session;
+    private DatabaseMaintenance maintenance;
+
+    @Before
+    public void setUp() {
+        session = new ShadowSQLiteHelper("test_database").getSession();
+        maintenance = new DatabaseMaintenance(session);
+    }
+
+    @Test
+    public void shouldGiveBackPagesFreedByDeletedRecords() {
+        session.execSQL("CREATE TABLE blobs (id INTEGER PRIMARY KEY, content TEXT)");
+        for (int i = 0; i < 50; i++) {
+            ContentValues values = new ContentValues();
+            values.put("content", Strings.repeat("x", 4096));
+            session.replace("blobs", null, values);
+        }
+        session.delete("blobs", null, null);
+        assertTrue(maintenance.size().getFreePages() > 0);
+
+        DatabaseMaintenance.Report report = maintenance.run();
+
+        assertTrue(report.getBefore().getFreePages() > 0);
+        assertThat(report.getAfter().getFreePages(), is(0L));
+        assertTrue(report.getAfter().getBytes() < report.getBefore().getBytes());
+    }
+
+    @Test
+    public void shouldKeepTrackingFreePagesOnceVacuumed() {
+        session.execSQL("PRAGMA auto_vacuum = NONE");
+        maintenance.vacuum();
+
+        assertThat(session.simpleQueryForLong("PRAGMA auto_vacuum", null), is(2L));
+    }
+
+    @Test
+    public void shouldRefreshQueryPlannerStatistics() {
+        maintenance.run();
+
+        assertThat(session.simpleQueryForLong("SELECT COUNT(1) FROM sqlite_master WHERE name = 'sqlite_stat1'", null), is(1L));
+    }
+
+    @Test
+    public void shouldCarryOnWhenVacuumFails() {
+        session.execSQL("CREATE TABLE blobs (id INTEGER PRIMARY KEY, content TEXT)");
+        for (int i = 0; i < 10; i++) {
+            ContentValues values = new ContentValues();
+            values.put("content", Strings.repeat("x", 4096));
+            session.replace("blobs", null, values);
+        }
+        session.delete("blobs", null, null);
+        session.execSQL("PRAGMA auto_vacuum = NONE");
+        DatabaseSession failingSession = spy(session);
+        doThrow(new SQLiteException("cannot VACUUM - SQL statements in progress")).when(failingSession).execSQL("VACUUM");
+
+        DatabaseMaintenance.Report report = new DatabaseMaintenance(failingSession).run();
+
+        assertTrue(report.getAfter().getFreePages() > 0);
+        assertThat(session.simpleQueryForLong("SELECT COUNT(1) FROM sqlite_master WHERE name = 'sqlite_stat1'", null), is(1L));
+    }
+
+    @Test
+    public void shouldReadTheCheckpointAsAQueryInWriteAheadLogMode() {
+        DatabaseSession spiedSession = spy(session);
+        Cursor journalMode = mock(Cursor.class);
+        when(journalMode.moveToNext()).thenReturn(true);
+        when(journalMode.getString(0)).thenReturn("wal");
+        Cursor checkpoint = mock(Cursor.class);
+        doReturn(journalMode).when(spiedSession).rawQuery("PRAGMA journal_mode", null);
+        doReturn(checkpoint).when(spiedSession).rawQuery("PRAGMA wal_checkpoint", null);
+        doThrow(new SQLiteException("Queries can be performed using rawQuery methods only")).when(spiedSession).execSQL("PRAGMA wal_checkpoint");
+
+        new DatabaseMaintenance(spiedSession).run();
+
+        verify(checkpoint).moveToNext();
+        verify(checkpoint).close();
+    }
+}
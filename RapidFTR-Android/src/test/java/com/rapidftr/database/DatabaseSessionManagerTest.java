@@ -0,0 +1,145 @@
+package com.rapidftr.database;
+
+import com.google.inject.Provider;
+import com.rapidftr.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class DatabaseSessionManagerTest {
+
+    private Provider<DatabaseHelper> helperProvider;
+    private DatabaseHelper helper;
+    private DatabaseSession session;
+    private DatabaseSessionManager sessionManager;
+    private User user;
+
+    @Before
+    public void setUp() {
+        helperProvider = mock(Provider.class);
+        helper = mock(DatabaseHelper.class);
+        session = mock(DatabaseSession.class);
+        when(helperProvider.get()).thenReturn(helper);
+        when(helper.getSession()).thenReturn(session);
+        user = userWithDbName("DB-1");
+        sessionManager = new DatabaseSessionManager(helperProvider);
+    }
+
+    @Test
+    public void shouldOpenDatabaseOnceForTheSameUser() {
+        sessionManager.openSession(user).execSQL("SELECT 1");
+        sessionManager.openSession(user).execSQL("SELECT 2");
+
+        verify(helperProvider, times(1)).get();
+        verify(session).execSQL("SELECT 1");
+        verify(session).execSQL("SELECT 2");
+    }
+
+    @Test
+    public void shouldKeepDatabaseOpenWhenSessionsAreClosed() throws IOException {
+        sessionManager.openSession(user).close();
+
+        verify(helper, never()).close();
+        verify(session, never()).close();
+        assertTrue(sessionManager.isOpen());
+    }
+
+    @Test
+    public void shouldCloseDatabaseOnLogoutWhenNoSessionIsOpen() throws IOException {
+        sessionManager.openSession(user).close();
+
+        sessionManager.close();
+
+        verify(helper).close();
+        assertFalse(sessionManager.isOpen());
+    }
+
+    @Test
+    public void shouldCloseDatabaseOnLogoutOnceTheLastSessionIsReleased() throws IOException {
+        DatabaseSession first = sessionManager.openSession(user);
+        DatabaseSession second = sessionManager.openSession(user);
+        sessionManager.close();
+
+        first.close();
+        first.close();
+        verify(helper, never()).close();
+
+        second.close();
+        verify(helper).close();
+    }
+
+    @Test
+    public void shouldCloseDatabaseOfPreviousUserWhenAnotherUserLogsIn() throws IOException {
+        DatabaseHelper otherHelper = mock(DatabaseHelper.class);
+        sessionManager.openSession(user).close();
+        when(helperProvider.get()).thenReturn(otherHelper);
+
+        sessionManager.openSession(userWithDbName("DB-2"));
+
+        verify(helper).close();
+        verify(otherHelper).getSession();
+    }
+
+    @Test
+    public void shouldKeepDatabaseOfPreviousUserOpenUntilItsSessionsAreReleased() throws IOException {
+        DatabaseHelper otherHelper = mock(DatabaseHelper.class);
+        DatabaseSession previousUsersSession = sessionManager.openSession(user);
+        when(helperProvider.get()).thenReturn(otherHelper);
+
+        sessionManager.openSession(userWithDbName("DB-2"));
+        previousUsersSession.execSQL("SELECT 1");
+        verify(helper, never()).close();
+        verify(session).execSQL("SELECT 1");
+
+        previousUsersSession.close();
+        verify(helper).close();
+        verify(otherHelper, never()).close();
+    }
+
+    @Test
+    public void shouldNotReleaseAnotherSessionWhenASessionIsClosedTwice() throws IOException {
+        DatabaseSession first = sessionManager.openSession(user);
+        DatabaseSession second = sessionManager.openSession(user);
+
+        first.close();
+        first.close();
+        sessionManager.close();
+        verify(helper, never()).close();
+
+        second.close();
+        verify(helper).close();
+    }
+
+    @Test
+    public void shouldCloseDatabaseOnlyOnceWhenReleasedSessionIsClosedAgain() throws IOException {
+        DatabaseSession first = sessionManager.openSession(user);
+        first.close();
+        sessionManager.close();
+
+        first.close();
+
+        verify(helper, times(1)).close();
+    }
+
+    @Test
+    public void shouldOpenDatabaseAgainAfterLogout() throws IOException {
+        sessionManager.openSession(user).close();
+        sessionManager.close();
+
+        sessionManager.openSession(user);
+
+        verify(helperProvider, times(2)).get();
+        assertTrue(sessionManager.isOpen());
+    }
+
+    private User userWithDbName(String dbName) {
+        User user = mock(User.class);
+        when(user.getDbName()).thenReturn(dbName);
+        return user;
+    }
+}
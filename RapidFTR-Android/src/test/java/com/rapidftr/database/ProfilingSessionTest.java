@@ -0,0 +1,68 @@
+package com.rapidftr.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import com.rapidftr.CustomTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+@RunWith(CustomTestRunner.class)
+public class ProfilingSessionTest {
+
+    private DatabaseSession session;
+    private QueryProfiler profiler;
+    private ProfilingSession profilingSession;
+
+    @Before
+    public void setUp() {
+        session = mock(DatabaseSession.class);
+        profiler = mock(QueryProfiler.class);
+        profilingSession = new ProfilingSession(session, profiler);
+    }
+
+    @Test
+    public void shouldRecordQueriesWithTheRowsTheyReturn() {
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.getCount()).thenReturn(4);
+        when(session.rawQuery("SELECT * FROM children", null)).thenReturn(cursor);
+
+        Cursor profiled = profilingSession.rawQuery("SELECT * FROM children", null);
+        verify(cursor, never()).getCount();
+        verify(profiler, never()).record(anyString(), anyLong(), anyLong());
+
+        profiled.moveToNext();
+        profiled.moveToNext();
+
+        verify(profiler, times(1)).record(eq("SELECT * FROM children"), anyLong(), eq(4L));
+    }
+
+    @Test
+    public void shouldRecordUpdatesWithTheirColumnsAndAffectedRows() {
+        ContentValues values = new ContentValues();
+        values.put("synced", "true");
+        values.put("child_json", "{}");
+        when(session.update("children", values, "id = ?", new String[]{"1"})).thenReturn(1);
+
+        profilingSession.update("children", values, "id = ?", new String[]{"1"});
+
+        verify(profiler).record(eq("UPDATE children SET [child_json, synced] WHERE id = ?"), anyLong(), eq(1L));
+    }
+
+    @Test
+    public void shouldRecordCommitsButNotOtherTransactionCalls() {
+        profilingSession.beginTransaction();
+        profilingSession.setTransactionSuccessful();
+        profilingSession.endTransaction();
+
+        verify(session).beginTransaction();
+        verify(session).setTransactionSuccessful();
+        verify(session).endTransaction();
+        verify(profiler, times(1)).record(eq("END TRANSACTION"), anyLong(), eq(0L));
+        verifyNoMoreInteractions(profiler);
+    }
+}
@@ -0,0 +1,96 @@
+package com.rapidftr.database;
+
+import com.rapidftr.CustomTestRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(CustomTestRunner.class)
+public class QueryProfilerTest {
+
+    private QueryProfiler profiler;
+
+    @Before
+    public void setUp() {
+        profiler = new QueryProfiler(100, new File("query_profile.txt"));
+    }
+
+    @Test
+    public void shouldFoldLiteralsAndArgumentListsIntoTheStatementShape() {
+        assertThat(QueryProfiler.shapeOf("SELECT * FROM children\n WHERE id IN (?, ?,?) AND name = 'it''s' LIMIT 20"),
+                is("SELECT * FROM children WHERE id IN (?, ...) AND name = ? LIMIT ?"));
+    }
+
+    @Test
+    public void shouldGroupStatementsOfTheSameShape() {
+        profiler.record("SELECT * FROM children LIMIT 10", millis(2), 10);
+        profiler.record("SELECT * FROM children LIMIT 20", millis(300), 20);
+        profiler.record("DELETE FROM children", millis(1), 3);
+
+        List<QueryProfiler.Stats> stats = profiler.getStats();
+        assertThat(stats.size(), is(2));
+        QueryProfiler.Stats select = stats.get(0);
+        assertThat(select.getShape(), is("SELECT * FROM children LIMIT ?"));
+        assertThat(select.getCount(), is(2L));
+        assertThat(select.getRows(), is(30L));
+        assertThat(select.getMaxNanos(), is(millis(300)));
+        assertThat(select.getHistogram()[1], is(1L));
+        assertThat(select.getHistogram()[5], is(1L));
+    }
+
+    @Test
+    public void shouldCountStatementsRunOnTheMainThread() throws InterruptedException {
+        profiler.record("SELECT 1", millis(1), 1);
+        Thread worker = new Thread() {
+            @Override
+            public void run() {
+                profiler.record("SELECT 1", millis(1), 1);
+            }
+        };
+        worker.start();
+        worker.join();
+
+        QueryProfiler.Stats stats = profiler.getStats().get(0);
+        assertThat(stats.getCount(), is(2L));
+        assertThat(stats.getMainThreadCount(), is(1L));
+    }
+
+    @Test
+    public void shouldWriteOneLinePerShapeSlowestFirst() {
+        profiler.record("SELECT 1", millis(1), 1);
+        profiler.record("SELECT * FROM children", millis(50), 7);
+
+        StringWriter report = new StringWriter();
+        profiler.writeReport(report);
+
+        String[] lines = report.toString().split("\n");
+        assertThat(lines.length, is(3));
+        assertThat(lines[1], containsString("\t7\t"));
+        assertThat(lines[1], containsString("SELECT * FROM children"));
+        assertThat(lines[2], containsString("SELECT ?"));
+    }
+
+    @Test
+    public void shouldNotSaveAnEmptyReport() throws Exception {
+        File reportFile = File.createTempFile("query_profile", ".txt");
+        reportFile.delete();
+
+        new QueryProfiler(100, reportFile).saveReport();
+
+        assertFalse(reportFile.exists());
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,191 @@
+package com.rapidftr.database;
+
+import com.google.inject.Provider;
+import com.rapidftr.CustomTestRunner;
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+@RunWith(CustomTestRunner.class)
+public class SQLCipherSessionTest {
+
+    private SQLiteDatabase database;
+    private SQLCipherSession session;
+
+    @Before
+    public void setUp() {
+        database = mock(SQLiteDatabase.class);
+        session = new SQLCipherSession(database);
+    }
+
+    @Test
+    public void shouldCompileStatementOnceAndBindArgumentsOnEveryCall() {
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(database.compileStatement("SELECT COUNT(1) FROM children WHERE id = ?")).thenReturn(statement);
+        when(statement.simpleQueryForLong()).thenReturn(1L);
+
+        assertThat(session.simpleQueryForLong("SELECT COUNT(1) FROM children WHERE id = ?", new String[]{"id1"}), equalTo(1L));
+        session.simpleQueryForLong("SELECT COUNT(1) FROM children WHERE id = ?", new String[]{"id2"});
+
+        verify(database, times(1)).compileStatement(anyString());
+        verify(statement, times(2)).clearBindings();
+        verify(statement).bindString(1, "id1");
+        verify(statement).bindString(1, "id2");
+        assertThat(session.getStatementCacheMisses(), equalTo(1L));
+        assertThat(session.getStatementCacheHits(), equalTo(1L));
+    }
+
+    @Test
+    public void shouldBindNullArguments() {
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(database.compileStatement(anyString())).thenReturn(statement);
+
+        session.executeInsert("INSERT INTO t (a, b) VALUES (?, ?)", new String[]{"a", null});
+
+        verify(statement).bindString(1, "a");
+        verify(statement).bindNull(2);
+        verify(statement).executeInsert();
+    }
+
+    @Test
+    public void shouldCloseLeastRecentlyUsedStatementWhenCacheIsFull() {
+        SQLiteStatement first = mock(SQLiteStatement.class);
+        when(database.compileStatement(anyString())).thenReturn(mock(SQLiteStatement.class));
+        when(database.compileStatement("SELECT 0")).thenReturn(first);
+
+        for (int i = 0; i < SQLCipherSession.STATEMENT_CACHE_SIZE; i++) {
+            session.simpleQueryForLong("SELECT " + i, null);
+        }
+        verify(first, never()).close();
+
+        session.simpleQueryForLong("SELECT " + SQLCipherSession.STATEMENT_CACHE_SIZE, null);
+        verify(first).close();
+    }
+
+    @Test
+    public void shouldCloseCachedStatementsWithTheDatabase() {
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(database.compileStatement(anyString())).thenReturn(statement);
+        session.simpleQueryForLong("SELECT 1", null);
+
+        session.close();
+
+        verify(statement).close();
+        verify(database).close();
+    }
+
+    @Test
+    public void shouldRunQueriesOnReadersInTurnOutsideTransactions() {
+        SQLiteDatabase reader1 = mock(SQLiteDatabase.class);
+        SQLiteDatabase reader2 = mock(SQLiteDatabase.class);
+        session = new SQLCipherSession(database, asList(reader1, reader2));
+
+        session.rawQuery("SELECT 1", null);
+        session.rawQuery("SELECT 2", null);
+        session.rawQuery("SELECT 3", null);
+
+        verify(reader1).rawQuery("SELECT 1", null);
+        verify(reader2).rawQuery("SELECT 2", null);
+        verify(reader1).rawQuery("SELECT 3", null);
+        verify(database, never()).rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    public void shouldRunQueriesOnWriterInsideTransaction() {
+        SQLiteDatabase reader = mock(SQLiteDatabase.class);
+        session = new SQLCipherSession(database, asList(reader));
+        when(database.inTransaction()).thenReturn(true);
+
+        session.rawQuery("SELECT 1", null);
+
+        verify(database).rawQuery("SELECT 1", null);
+        verify(reader, never()).rawQuery(anyString(), any(String[].class));
+    }
+
+    @Test
+    public void shouldNotHoldStatementsOfOtherThreadsForTheWholeTransaction() throws InterruptedException {
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(database.compileStatement(anyString())).thenReturn(statement);
+        Thread otherThread = new Thread() {
+            @Override
+            public void run() {
+                session.executeInsert("INSERT INTO t (a) VALUES (?)", new String[]{"a"});
+            }
+        };
+
+        session.beginTransaction();
+        otherThread.start();
+        otherThread.join(1000);
+
+        assertThat(otherThread.isAlive(), equalTo(false));
+        verify(statement).executeInsert();
+        session.endTransaction();
+    }
+
+    @Test
+    public void shouldRunCountsOnReadersOutsideTransactions() {
+        SQLiteDatabase reader = mock(SQLiteDatabase.class);
+        SQLiteStatement readerStatement = mock(SQLiteStatement.class);
+        when(reader.compileStatement("SELECT COUNT(1) FROM children")).thenReturn(readerStatement);
+        when(readerStatement.simpleQueryForLong()).thenReturn(5L);
+        session = new SQLCipherSession(database, asList(reader));
+
+        assertThat(session.simpleQueryForLong("SELECT COUNT(1) FROM children", null), equalTo(5L));
+
+        verify(database, never()).compileStatement(anyString());
+    }
+
+    @Test
+    public void shouldRunCountsOnWriterInsideTransaction() {
+        SQLiteDatabase reader = mock(SQLiteDatabase.class);
+        SQLiteStatement statement = mock(SQLiteStatement.class);
+        when(database.compileStatement(anyString())).thenReturn(statement);
+        when(database.inTransaction()).thenReturn(true);
+        session = new SQLCipherSession(database, asList(reader));
+
+        session.simpleQueryForLong("SELECT COUNT(1) FROM children", null);
+
+        verify(statement).simpleQueryForLong();
+        verify(reader, never()).compileStatement(anyString());
+    }
+
+    @Test
+    public void shouldOpenEachReaderOnlyWhenFirstQueried() {
+        SQLiteDatabase reader1 = mock(SQLiteDatabase.class);
+        SQLiteDatabase reader2 = mock(SQLiteDatabase.class);
+        Provider<SQLiteDatabase> readerOpener = mock(Provider.class);
+        when(readerOpener.get()).thenReturn(reader1, reader2);
+        session = new SQLCipherSession(database, 2, readerOpener);
+        verify(readerOpener, never()).get();
+
+        session.rawQuery("SELECT 1", null);
+        session.rawQuery("SELECT 2", null);
+        session.rawQuery("SELECT 3", null);
+
+        verify(readerOpener, times(2)).get();
+        verify(reader1).rawQuery("SELECT 3", null);
+        session.close();
+        verify(reader1).close();
+        verify(reader2).close();
+    }
+
+    @Test
+    public void shouldCloseReadersWithTheSession() {
+        SQLiteDatabase reader = mock(SQLiteDatabase.class);
+        session = new SQLCipherSession(database, asList(reader));
+
+        session.close();
+
+        verify(reader).close();
+        verify(database).close();
+    }
+}
@@ -4,7 +4,9 @@ package com.rapidftr.database;
 import android.app.Activity;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import com.rapidftr.database.migration.Migrations;
+import lombok.Cleanup;
 import lombok.Delegate;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
@@ -28,9 +30,37 @@ public class ShadowSQLiteHelper extends SQLiteOpenHelper implements DatabaseHelp
     @RequiredArgsConstructor(suppressConstructorProperties = true)
     public static class ShadowSQLiteSession implements DatabaseSession {
 
-        @Delegate(types = DatabaseSession.class)
+        @Delegate(types = DatabaseSession.class, excludes = StatementMethods.class)
         private final SQLiteDatabase database;
 
+        private interface StatementMethods {
+            long simpleQueryForLong(String sql, String[] bindArgs);
+            long executeInsert(String sql, String[] bindArgs);
+        }
+
+        @Override
+        public long simpleQueryForLong(String sql, String[] bindArgs) {
+            @Cleanup SQLiteStatement statement = compile(sql, bindArgs);
+            return statement.simpleQueryForLong();
+        }
+
+        @Override
+        public long executeInsert(String sql, String[] bindArgs) {
+            @Cleanup SQLiteStatement statement = compile(sql, bindArgs);
+            return statement.executeInsert();
+        }
+
+        private SQLiteStatement compile(String sql, String[] bindArgs) {
+            SQLiteStatement statement = database.compileStatement(sql);
+            for (int i = 0; bindArgs != null && i < bindArgs.length; i++) {
+                if (bindArgs[i] == null) {
+                    statement.bindNull(i + 1);
+                } else {
+                    statement.bindString(i + 1, bindArgs[i]);
+                }
+            }
+            return statement;
+        }
     }
 
     private @Getter DatabaseSession session;
@@ -49,7 +79,7 @@ public class ShadowSQLiteHelper extends SQLiteOpenHelper implements DatabaseHelp
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        for (Migrations migration : Migrations.forVersion(newVersion)) {
+        for (Migrations migration : Migrations.forUpgrade(oldVersion, newVersion)) {
             db.execSQL(migration.getSql());
         }
     }
@@ -0,0 +1,122 @@
+package com.rapidftr.database.migration;
+
+import com.rapidftr.database.SQLCipherHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/*
+ * Runs the migrations against a plain in-memory SQLite database
+ * and checks which indexes the query planner picks before and after upgrading.
+ */
+public class MigrationsTest {
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        Class.forName("org.sqlite.JDBC");
+        connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        run(Migrations.forVersion(1));
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Test
+    public void shouldRunOnlyMigrationsAfterTheOldVersionOnUpgrade() {
+        List<Migrations> migrations = Migrations.forUpgrade(1, 2);
+
+        assertEquals(Migrations.forVersion(2), migrations);
+        assertTrue(Migrations.forUpgrade(2, 2).isEmpty());
+        assertEquals(Migrations.values().length, Migrations.forUpgrade(0, SQLCipherHelper.DB_VERSION).size());
+    }
+
+    @Test
+    public void shouldGiveEverySchemaChangeAVersionUpToTheDatabaseVersion() {
+        for (int version = 1; version <= SQLCipherHelper.DB_VERSION; version++) {
+            assertFalse("no migrations for version " + version, Migrations.forVersion(version).isEmpty());
+        }
+        assertTrue(Migrations.forVersion(SQLCipherHelper.DB_VERSION + 1).isEmpty());
+        assertEquals(Migrations.forVersion(10), Migrations.forUpgrade(9, 10));
+    }
+
+    @Test
+    public void shouldScanTablesBeforeUpgrade() throws SQLException {
+        assertThat(queryPlan("SELECT child_json, synced FROM children WHERE synced = ?"), not(containsString("INDEX")));
+        assertThat(queryPlan("SELECT COUNT(1) FROM children WHERE child_owner = ?"), not(containsString("INDEX")));
+        assertThat(queryPlan("SELECT child_json, synced FROM children WHERE _id = ?"), not(containsString("INDEX")));
+        assertThat(queryPlan("SELECT * FROM enquiry WHERE synced = ?"), not(containsString("INDEX")));
+    }
+
+    @Test
+    public void shouldUseIndexesAfterUpgrade() throws SQLException {
+        run(Migrations.forUpgrade(1, SQLCipherHelper.DB_VERSION));
+
+        assertThat(queryPlan("SELECT child_json, synced FROM children WHERE synced = ?"), containsString("idx_children_synced_owner"));
+        assertThat(queryPlan("SELECT child_json, synced FROM children WHERE synced = ? AND child_owner = ?"), containsString("idx_children_synced_owner"));
+        assertThat(queryPlan("SELECT COUNT(1) FROM children WHERE child_owner = ?"), containsString("idx_children_owner_created_at"));
+        assertThat(queryPlan("SELECT child_json, synced FROM children WHERE child_owner = ? ORDER BY created_at, id"), containsString("idx_children_owner_created_at"));
+        assertThat(queryPlan("SELECT child_json, synced FROM children WHERE _id = ?"), containsString("idx_children_internal_id"));
+        assertThat(queryPlan("SELECT * FROM enquiry WHERE synced = ?"), containsString("idx_enquiry_synced"));
+        assertThat(queryPlan("SELECT history FROM child_histories WHERE child_id = ? ORDER BY datetime, rowid"), containsString("idx_child_histories_child_id_datetime"));
+        assertThat(queryPlan("SELECT DISTINCT enquiry_id FROM enquiry_criteria_index WHERE token IN (?, ?)"), containsString("idx_enquiry_criteria_index_token"));
+        assertThat(queryPlan("SELECT child_internal_id FROM enquiry_matches WHERE enquiry_id = ?"), containsString("idx_enquiry_matches_enquiry_id"));
+        assertThat(queryPlan("SELECT enquiry_id FROM enquiry_matches WHERE child_internal_id = ?"), containsString("idx_enquiry_matches_child_internal_id"));
+        assertThat(queryPlan("SELECT record_id FROM sync_plan WHERE record_type = ? AND record_id IN (?, ?)"), containsString("idx_sync_plan_record_id"));
+    }
+
+    @Test
+    public void shouldKeepCheckpointsWhenAllowingAPendingOne() throws SQLException {
+        run(Migrations.forUpgrade(1, 10));
+        Statement statement = connection.createStatement();
+        statement.execute("INSERT INTO sync_checkpoint (record_type, sequence) VALUES ('children', '5')");
+
+        run(Migrations.forVersion(11));
+        statement.execute("INSERT INTO sync_checkpoint (record_type, pending_sequence) VALUES ('enquiry', '3')");
+
+        ResultSet checkpoints = statement.executeQuery("SELECT sequence FROM sync_checkpoint WHERE record_type = 'children'");
+        assertTrue(checkpoints.next());
+        assertEquals("5", checkpoints.getString(1));
+        statement.close();
+    }
+
+    private void run(List<Migrations> migrations) throws SQLException {
+        Statement statement = connection.createStatement();
+        for (Migrations migration : migrations) {
+            statement.execute(migration.getSql());
+        }
+        statement.close();
+    }
+
+    private String queryPlan(String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement("EXPLAIN QUERY PLAN " + sql);
+        for (int i = 1; i <= statement.getParameterMetaData().getParameterCount(); i++) {
+            statement.setString(i, "");
+        }
+        ResultSet resultSet = statement.executeQuery();
+        StringBuilder plan = new StringBuilder();
+        while (resultSet.next()) {
+            plan.append(resultSet.getString(resultSet.getMetaData().getColumnCount())).append("\n");
+        }
+        statement.close();
+        return plan.toString();
+    }
+}
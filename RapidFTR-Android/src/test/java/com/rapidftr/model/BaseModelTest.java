@@ -109,4 +109,22 @@ public class BaseModelTest {
     }
 
 
+
+    @Test
+    public void shouldRecordPreviousValuesOfFieldsPutOnceTrackingChanges() throws JSONException {
+        BaseModel model = new BaseModel("{ 'name' : 'old', 'age' : '5' }");
+        assertNull(model.getChangedFields());
+
+        model.trackChanges();
+        model.put("name", "new");
+        model.put("name", "newer");
+        model.put("gender", "male");
+
+        assertEquals(2, model.getChangedFields().size());
+        assertEquals("old", model.getChangedFields().get("name"));
+        assertNull(model.getChangedFields().get("gender"));
+
+        model.trackChanges();
+        assertEquals(0, model.getChangedFields().size());
+    }
 }
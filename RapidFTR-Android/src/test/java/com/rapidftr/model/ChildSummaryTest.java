@@ -0,0 +1,37 @@
+package com.rapidftr.model;
+
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.forms.FormField;
+import org.json.JSONException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class ChildSummaryTest {
+
+    @Test
+    public void shouldSummarizeHighlightedFieldsAndThumbnailOfChild() throws JSONException {
+        FormField name = new FormField();
+        name.setId("name");
+        Child child = new Child("abcdefghijk", "user1", "{ 'name' : 'John', 'nationality' : 'ugandan', 'current_photo_key' : 'photo' }");
+
+        ChildSummary summary = ChildSummary.of(child, asList(name));
+
+        assertThat(summary.getUniqueId(), is("abcdefghijk"));
+        assertThat(summary.getShortId(), is(child.getShortId()));
+        assertThat(summary.getThumbnailKey(), is("photo"));
+        assertThat(summary.optString("name"), is("John"));
+        assertThat(summary.optString("nationality"), is(""));
+    }
+
+    @Test
+    public void shouldUseWholeIdAsShortIdOfShortIds() {
+        assertThat(new ChildSummary("abc", "", new HashMap<String, String>()).getShortId(), is("abc"));
+    }
+}
@@ -178,6 +178,24 @@ public class ChildTest {
         assertThat(fromTo.get(TO).toString(), is("updated-name"));
     }
 
+    @Test
+    public void shouldReturnChangeLogsOfTheFieldsPutSinceTrackingChanges() throws JSONException {
+        String lastSyncedAt = new RapidFtrDateTime(1, 2, 2013).defaultFormat();
+        String lastSavedAt = new RapidFtrDateTime(2, 2, 2013).defaultFormat();
+        Child child = new Child("id", "user", String.format("{'last_synced_at' : '%s', 'name' : 'old-name', 'gender' : 'male'}", lastSyncedAt));
+        child.trackChanges();
+        child.put("name", "updated-name");
+        child.put("gender", "male");
+
+        JSONArray existingHistories = new JSONArray(String.format("[{'datetime' : '%s', 'changes' : {}}]", lastSavedAt));
+        List<Child.History> histories = child.changeLogs(existingHistories);
+
+        JSONObject changes = (JSONObject) histories.get(0).get(CHANGES);
+        assertThat(changes.length(), is(1));
+        assertThat(changes.getJSONObject("name").getString(FROM), is("old-name"));
+        assertThat(changes.getJSONObject("name").getString(TO), is("updated-name"));
+    }
+
     @Test
     public void shouldBeNewIfThereIsNoID() throws JSONException {
         Child child = new Child("id1", "user1", "{ 'test1' : 'value1' }");
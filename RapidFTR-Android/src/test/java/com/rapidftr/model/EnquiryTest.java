@@ -71,19 +71,15 @@ public class EnquiryTest {
     }
 
     @Test
-    public void enquiryShouldGetPotentialMatches() throws JSONException {
-        Cursor cursor = mock(Cursor.class);
-        doReturn(potential_matches.ordinal()).when(cursor).getColumnIndex(potential_matches.getColumnName());
-        doReturn(criteria.ordinal()).when(cursor).getColumnIndex(criteria.getColumnName());
-        doReturn("{}").when(cursor).getString(criteria.ordinal());
-        doReturn("[\"internal_id1\", \"internal_id2\"]").when(cursor).getString(potential_matches.ordinal());
-
+    public void enquiryShouldGetPotentialMatches() throws JSONException, FailedToSaveException {
         Child child1 = new Child("id1", "owner1", "{'test1':'value1', '_id':'internal_id1' }");
         childRepository.createOrUpdate(child1);
         Child child2 = new Child("id2", "owner1", "{'test1':'value1', '_id':'internal_id2' }");
         childRepository.createOrUpdate(child2);
 
-        Enquiry enquiry = new Enquiry(cursor);
+        Enquiry enquiry = new Enquiry(user, new JSONObject("{}"));
+        enquiry.put(potential_matches.getColumnName(), "[\"internal_id1\", \"internal_id2\"]");
+        enquiryRepo.createOrUpdate(enquiry);
         List<Child> potentialMatches = enquiry.getPotentialMatches(childRepository);
 
         assertEquals(2, potentialMatches.size());
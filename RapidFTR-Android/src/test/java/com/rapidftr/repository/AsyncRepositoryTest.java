@@ -0,0 +1,136 @@
+package com.rapidftr.repository;
+
+import com.google.inject.Provider;
+import com.rapidftr.CustomTestRunner;
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.*;
+
+@RunWith(CustomTestRunner.class)
+public class AsyncRepositoryTest {
+
+    private ChildRepository repository;
+    private AsyncRepository<ChildRepository> asyncRepository;
+    private List<Object> results;
+
+    @Before
+    public void setUp() {
+        repository = mock(ChildRepository.class);
+        asyncRepository = new AsyncRepository<ChildRepository>(repository, CustomTestRunner.BACKGROUND_EXECUTOR);
+        results = new ArrayList<Object>();
+    }
+
+    @After
+    public void tearDown() {
+        Robolectric.getBackgroundScheduler().unPause();
+    }
+
+    @Test
+    public void shouldHandQueryResultToCallback() throws JSONException {
+        when(repository.size()).thenReturn(3);
+
+        asyncRepository.query(size(), collect());
+
+        assertThat(results, is(asList((Object) 3)));
+    }
+
+    @Test
+    public void shouldHandQueryFailureToCallback() throws JSONException {
+        final RuntimeException failure = new RuntimeException();
+        when(repository.size()).thenThrow(failure);
+
+        asyncRepository.query(size(), new AsyncRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                results.add(e);
+            }
+        });
+
+        assertThat(results.size(), is(1));
+        assertThat(results.get(0), sameInstance((Object) failure));
+    }
+
+    @Test
+    public void shouldDropResultsOfCancelledQueries() {
+        Robolectric.getBackgroundScheduler().pause();
+        asyncRepository.query(size(), collect());
+
+        asyncRepository.cancelAll();
+        Robolectric.getBackgroundScheduler().unPause();
+
+        assertThat(results.size(), is(0));
+    }
+
+    @Test
+    public void shouldCloseRepositoryAfterPendingQueries() {
+        Robolectric.getBackgroundScheduler().pause();
+        asyncRepository.query(size(), collect());
+        asyncRepository.close();
+        verify(repository, never()).close();
+
+        Robolectric.getBackgroundScheduler().unPause();
+
+        verify(repository).close();
+        assertThat(results.size(), is(0));
+    }
+
+    @Test
+    public void shouldGetRepositoryOnDatabaseThreadOnly() {
+        final List<Thread> threads = new ArrayList<Thread>();
+        Robolectric.getBackgroundScheduler().pause();
+        asyncRepository = new AsyncRepository<ChildRepository>(new Provider<ChildRepository>() {
+            @Override
+            public ChildRepository get() {
+                threads.add(Thread.currentThread());
+                return repository;
+            }
+        }, CustomTestRunner.BACKGROUND_EXECUTOR);
+        asyncRepository.query(size(), collect());
+        assertThat(threads.size(), is(0));
+
+        Robolectric.getBackgroundScheduler().unPause();
+        asyncRepository.query(size(), collect());
+
+        assertThat(threads.size(), is(1));
+        assertThat(results.size(), is(2));
+    }
+
+    private AsyncRepository.Query<ChildRepository, Integer> size() {
+        return new AsyncRepository.Query<ChildRepository, Integer>() {
+            @Override
+            public Integer run(ChildRepository repository) {
+                return repository.size();
+            }
+        };
+    }
+
+    private AsyncRepository.Callback<Integer> collect() {
+        return new AsyncRepository.Callback<Integer>() {
+            @Override
+            public void onResult(Integer result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onError(Exception e) {
+            }
+        };
+    }
+}
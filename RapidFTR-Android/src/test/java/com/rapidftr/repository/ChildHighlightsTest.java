@@ -0,0 +1,85 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
+import lombok.Cleanup;
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class ChildHighlightsTest {
+
+    private DatabaseSession session;
+    private ChildRepository repository;
+    private ChildHighlights highlights;
+
+    @Before
+    public void setUp() {
+        session = new ShadowSQLiteHelper("test_database").getSession();
+        repository = new ChildRepository("user1", session);
+        highlights = new ChildHighlights(session);
+    }
+
+    @Test
+    public void shouldStoreOnlyHighlightedFields() throws JSONException {
+        highlights.index(new Child("id1", "user1", "{ 'name' : 'John Smith', 'nationality' : 'ugandan' }"));
+
+        assertThat(valueOf("id1", "name"), is("John Smith"));
+        assertThat(valueOf("id1", "nationality"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReplaceExistingValuesWhenReindexing() throws JSONException {
+        Child child = new Child("id1", "user1", "{ 'name' : 'old', 'rc_id_no' : '123' }");
+        highlights.index(child);
+        child.put("name", "new");
+        child.remove("rc_id_no");
+        highlights.index(child);
+
+        assertThat(valueOf("id1", "name"), is("new"));
+        assertThat(valueOf("id1", "rc_id_no"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldReturnSummariesWithThumbnailOfSelectedChildrenInIdOrder() throws JSONException {
+        repository.createOrUpdate(new Child("id2", "user1", "{ 'name' : 'Bravo', 'current_photo_key' : 'photo2' }"));
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'nationality' : 'ugandan' }"));
+        repository.createOrUpdate(new Child("id3", "user2", "{ 'name' : 'alpha' }"));
+
+        List<ChildSummary> summaries = highlights.getSummaries("SELECT id FROM children WHERE child_owner = ?", new String[]{"user1"});
+
+        assertThat(summaries.size(), is(2));
+        assertThat(summaries.get(0).getUniqueId(), is("id1"));
+        assertThat(summaries.get(0).getThumbnailKey(), is(""));
+        assertThat(summaries.get(1).optString("name"), is("Bravo"));
+        assertThat(summaries.get(1).optString(ChildHighlights.THUMBNAIL_FIELD), is(""));
+        assertThat(summaries.get(1).getThumbnailKey(), is("photo2"));
+    }
+
+    @Test
+    public void shouldRebuildFromStoredChildren() throws JSONException {
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'name' : 'child1' }"));
+        session.delete("child_highlights", null, null);
+
+        highlights.rebuild();
+
+        assertThat(valueOf("id1", "name"), is("child1"));
+    }
+
+    private String valueOf(String childId, String field) {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT value FROM child_highlights WHERE child_id = ? AND field = ?", new String[]{childId, field});
+        return cursor.moveToNext() ? cursor.getString(0) : null;
+    }
+}
@@ -0,0 +1,79 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import com.rapidftr.model.Child;
+import lombok.Cleanup;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+
+@RunWith(CustomTestRunner.class)
+public class ChildHistoriesTest {
+
+    private DatabaseSession session;
+    private ChildHistories histories;
+
+    @Before
+    public void setUp() {
+        session = new ShadowSQLiteHelper("test_database").getSession();
+        histories = new ChildHistories(session);
+    }
+
+    @Test
+    public void shouldReturnHistoriesOrderedByDatetime() throws JSONException {
+        histories.save("id1", new JSONArray("[{'datetime':'2013-02-02 00:00:00'}, {'datetime':'2013-01-01 00:00:00'}]"));
+        histories.save("id2", new JSONArray("[{'datetime':'2013-03-03 00:00:00'}]"));
+
+        JSONArray saved = histories.get("id1");
+        assertThat(saved.length(), is(2));
+        assertThat(saved.getJSONObject(0).getString("datetime"), is("2013-01-01 00:00:00"));
+        assertThat(saved.getJSONObject(1).getString("datetime"), is("2013-02-02 00:00:00"));
+        assertThat(histories.get("unknown").length(), is(0));
+    }
+
+    @Test
+    public void shouldOnlyRewriteHistoriesWhichChanged() throws JSONException {
+        JSONObject first = new JSONObject("{'datetime':'2013-01-01 00:00:00'}");
+        JSONObject second = new JSONObject("{'datetime':'2013-02-02 00:00:00'}");
+        histories.save("id1", new JSONArray().put(first).put(second));
+        long firstRowId = rowIdOf("2013-01-01 00:00:00");
+
+        second.put("user_name", "user");
+        JSONObject third = new JSONObject("{'datetime':'2013-03-03 00:00:00'}");
+        histories.save("id1", new JSONArray().put(first).put(second).put(third));
+
+        assertThat(rowIdOf("2013-01-01 00:00:00"), is(firstRowId));
+        JSONArray saved = histories.get("id1");
+        assertThat(saved.length(), is(3));
+        assertThat(saved.getJSONObject(1).getString("user_name"), is("user"));
+    }
+
+    @Test
+    public void shouldMoveHistoriesOutOfChildJson() throws JSONException {
+        Child child = new Child("id1", "user1", "{ 'name' : 'child1', 'histories' : [{'datetime':'2013-01-01 00:00:00'}] }");
+        session.execSQL("INSERT INTO children (id, child_owner, child_json, synced) VALUES ('id1', 'user1', '" + child.getJsonString() + "', 'false')");
+
+        histories.migrate();
+
+        @Cleanup Cursor cursor = session.rawQuery("SELECT child_json FROM children WHERE id = 'id1'", null);
+        cursor.moveToNext();
+        Child migrated = new Child(cursor.getString(0));
+        assertFalse(migrated.has("histories"));
+        assertThat(migrated.getString("name"), is("child1"));
+        assertThat(histories.get("id1").length(), is(1));
+    }
+
+    private long rowIdOf(String datetime) {
+        return session.simpleQueryForLong("SELECT rowid FROM child_histories WHERE datetime = ?", new String[]{datetime});
+    }
+}
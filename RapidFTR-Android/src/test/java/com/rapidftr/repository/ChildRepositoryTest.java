@@ -1,5 +1,6 @@
 package com.rapidftr.repository;
 
+import android.database.Cursor;
 import com.rapidftr.CustomTestRunner;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.database.Database;
@@ -9,9 +10,11 @@ import com.rapidftr.forms.FormField;
 import com.rapidftr.forms.FormSection;
 import com.rapidftr.forms.FormSectionTest;
 import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import com.rapidftr.model.User;
 import com.rapidftr.utils.JSONArrays;
 import com.rapidftr.utils.RapidFtrDateTime;
+import lombok.Cleanup;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -25,9 +28,11 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static com.rapidftr.CustomTestRunner.createUser;
 import static com.rapidftr.model.Child.History.*;
 import static com.rapidftr.utils.JSONMatcher.equalJSONIgnoreOrder;
+import static java.util.Arrays.asList;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -37,6 +42,8 @@ import static org.junit.matchers.JUnitMatchers.hasItem;
 import static org.junit.matchers.JUnitMatchers.hasItems;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @RunWith(CustomTestRunner.class)
 public class ChildRepositoryTest {
@@ -142,7 +149,7 @@ public class ChildRepositoryTest {
         repository.createOrUpdate(child3);
         repository.createOrUpdate(child4);
 
-        List<Child> children = repository.getMatchingChildren("hiLd1", null);
+        List<Child> children = repository.getMatchingChildren("cHiLd1", null);
         assertEquals(1, children.size());
     }
 
@@ -163,10 +170,10 @@ public class ChildRepositoryTest {
         List<Child> children = repository.getMatchingChildren("child3", highlightedFormFields);
         assertEquals(1, children.size());
 
-        children = repository.getMatchingChildren("hiLd", highlightedFormFields);
+        children = repository.getMatchingChildren("cHiLd", highlightedFormFields);
         assertEquals(5, children.size());
 
-        children = repository.getMatchingChildren("hiLd1", highlightedFormFields);
+        children = repository.getMatchingChildren("cHiLd1", highlightedFormFields);
         assertEquals(2, children.size());
 
         children = repository.getMatchingChildren("developer", highlightedFormFields);
@@ -238,10 +245,136 @@ public class ChildRepositoryTest {
         repository.createOrUpdate(child1);
         repository.createOrUpdate(child2);
 
-        List<Child> children = repository.getMatchingChildren("hild", highlightedFormFields);
+        List<Child> children = repository.getMatchingChildren("cHild", highlightedFormFields);
         assertEquals(1, children.size());
     }
 
+    @Test
+    public void shouldMatchSearchTermsAsWordPrefixes() throws JSONException {
+        Child child1 = new Child("id1", "user1", "{ 'name' : 'john smith' }");
+        Child child2 = new Child("id2", "user1", "{ 'name' : 'johnny walker' }");
+        repository.createOrUpdate(child1);
+        repository.createOrUpdate(child2);
+
+        assertEquals(2, repository.getMatchingChildren("joh", highlightedFormFields).size());
+        assertEquals(1, repository.getMatchingChildren("SMI", highlightedFormFields).size());
+        assertEquals(0, repository.getMatchingChildren("mith", highlightedFormFields).size());
+    }
+
+    @Test
+    public void shouldUpdateSearchIndexWhenChildIsUpdated() throws JSONException {
+        Child child = new Child("id1", "user1", "{ 'name' : 'old-name' }");
+        repository.createOrUpdate(child);
+
+        child.put("name", "new-name");
+        repository.update(child);
+
+        assertEquals(0, repository.getMatchingChildren("old", highlightedFormFields).size());
+        assertEquals(1, repository.getMatchingChildren("new", highlightedFormFields).size());
+    }
+
+    @Test
+    public void shouldRemoveChildrenFromSearchIndexWhenDeletedByOwner() throws JSONException {
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'name' : 'child1' }"));
+        repository.deleteChildrenByOwner();
+
+        @Cleanup Cursor cursor = session.rawQuery("SELECT COUNT(1) FROM child_search_index", null);
+        cursor.moveToNext();
+        assertEquals(0, cursor.getInt(0));
+    }
+
+    @Test
+    public void shouldRebuildSearchIndexFromStoredChildren() throws JSONException {
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'name' : 'child1' }"));
+        session.delete("child_search_index", null, null);
+        assertEquals(0, repository.getMatchingChildren("child1", highlightedFormFields).size());
+
+        repository.rebuildHighlightedFieldIndexes();
+        assertEquals(1, repository.getMatchingChildren("child1", highlightedFormFields).size());
+    }
+
+    @Test
+    public void shouldReturnSummariesOfOwnChildrenPageByPage() throws JSONException {
+        repository.createOrUpdate(new Child("id3", "user1", "{ 'name' : 'child3' }"));
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'name' : 'child1' }"));
+        repository.createOrUpdate(new Child("id2", "user1", "{ 'name' : 'child2' }"));
+        repository.createOrUpdate(new Child("id4", "user2", "{ 'name' : 'child4' }"));
+
+        List<ChildSummary> firstPage = repository.getSummaryPage(null, 2);
+        List<ChildSummary> secondPage = repository.getSummaryPage("id2", 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals("id1", firstPage.get(0).getUniqueId());
+        assertEquals("child2", firstPage.get(1).optString("name"));
+        assertEquals(1, secondPage.size());
+        assertEquals("id3", secondPage.get(0).getUniqueId());
+    }
+
+    @Test
+    public void shouldReturnSummariesOfMatchingChildren() throws JSONException {
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'name' : 'child1' }"));
+        repository.createOrUpdate(new Child("id2", "user1", "{ 'name' : 'other' }"));
+
+        List<ChildSummary> summaries = repository.getMatchingChildSummaries("child1", highlightedFormFields);
+
+        assertEquals(1, summaries.size());
+        assertEquals("child1", summaries.get(0).optString("name"));
+        assertEquals(0, repository.getMatchingChildSummaries(" ", highlightedFormFields).size());
+    }
+
+    @Test
+    public void shouldReturnOwnChildrenPageByPageAfterTheGivenId() throws JSONException {
+        repository.createOrUpdate(new Child("id3", "user1", "{ 'name' : 'child3' }"));
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'name' : 'child1' }"));
+        repository.createOrUpdate(new Child("id2", "user1", "{ 'name' : 'child2' }"));
+        repository.createOrUpdate(new Child("id0", "user2", "{ 'name' : 'child0' }"));
+
+        List<Child> firstPage = repository.getPage(null, 2);
+        List<Child> secondPage = repository.getPage("id2", 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals("id1", firstPage.get(0).getUniqueId());
+        assertEquals("id2", firstPage.get(1).getUniqueId());
+        assertEquals(1, secondPage.size());
+        assertEquals("id3", secondPage.get(0).getUniqueId());
+    }
+
+    @Test
+    public void shouldPageOwnChildrenInTheOrderTheyWereCreated() throws JSONException {
+        repository.createOrUpdate(childCreatedAt("id1", "2013-02-03 10:00:00"));
+        repository.createOrUpdate(childCreatedAt("id2", "2013-02-01 10:00:00"));
+        repository.createOrUpdate(childCreatedAt("id3", "2013-02-02 10:00:00"));
+        repository.createOrUpdate(childCreatedAt("id0", "2013-02-02 10:00:00"));
+
+        List<Child> firstPage = repository.getPage(null, 2);
+        List<ChildSummary> secondPage = repository.getSummaryPage("id0", 2);
+
+        assertEquals(asList("id2", "id0"), asList(firstPage.get(0).getUniqueId(), firstPage.get(1).getUniqueId()));
+        assertEquals(asList("id3", "id1"), asList(secondPage.get(0).getUniqueId(), secondPage.get(1).getUniqueId()));
+    }
+
+    private Child childCreatedAt(String id, String createdAt) throws JSONException {
+        Child child = new Child(id, "user1", "{ 'name' : 'child' }");
+        child.put("created_at", createdAt);
+        return child;
+    }
+
+    @Test
+    public void shouldCreateNewAndUpdateExistingChildrenTogether() throws JSONException {
+        Child existingChild = new Child("id1", "user1", "{ 'name' : 'child1' }");
+        repository.createOrUpdate(existingChild);
+        existingChild = repository.get("id1");
+        existingChild.put("name", "updated");
+        Child newChild = new Child("id2", "user1", "{ 'name' : 'child2' }");
+
+        repository.createOrUpdateAll(asList(existingChild, newChild));
+
+        assertEquals("updated", repository.get("id1").getString("name"));
+        assertFalse(repository.get("id1").has(HISTORIES));
+        assertEquals("child2", repository.get("id2").getString("name"));
+        assertEquals(1, repository.getMatchingChildren("updated", highlightedFormFields).size());
+    }
+
     @Test
     public void shouldReturnChildRecordsGivenListOfIds() throws Exception {
         Child child1 = new Child("id1", "user1", "{ 'name' : 'child1', 'test2' : 0, 'test3' : [ '1', 2, '3' ] }");
@@ -431,6 +564,58 @@ public class ChildRepositoryTest {
     }
 
 
+    @Test
+    public void shouldStoreHistoriesOutsideOfTheChildJson() throws JSONException {
+        Child child = new Child("id1", "user1", "{ 'name' : 'child1', 'histories' : [{'datetime':'2013-01-01 00:00:00'}] }", false);
+        repository.createOrUpdate(child);
+
+        assertFalse(repository.get("id1").has(HISTORIES));
+        assertThat(repository.getHistories("id1").length(), is(1));
+        assertThat(((JSONArray) repository.currentUsersUnsyncedRecords().get(0).get(HISTORIES)).length(), is(1));
+    }
+
+    @Test
+    public void shouldRememberTheFieldsChangedSinceTheLastSync() throws JSONException {
+        repository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'abcd', 'name' : 'old name', 'gender' : 'male' }", true));
+        Child loaded = repository.get("id1");
+        loaded.put("name", "new name");
+        repository.createOrUpdate(loaded);
+        Child fromForm = new Child("id1", "user1", "{ '_id' : 'abcd', 'name' : 'new name', 'gender' : 'female' }", false);
+        repository.createOrUpdate(fromForm);
+
+        JSONArray unsyncedFields = repository.get("id1").getJSONArray("unsynced_fields");
+        assertThat(unsyncedFields.length(), is(2));
+        assertThat(unsyncedFields.getString(0), is("name"));
+        assertThat(unsyncedFields.getString(1), is("gender"));
+        assertFalse(fromForm.values().has("unsynced_fields"));
+    }
+
+    @Test
+    public void shouldRemoveHistoriesOfDeletedChildren() throws JSONException {
+        repository.createOrUpdate(new Child("id1", "user1", "{ 'histories' : [{'datetime':'2013-01-01 00:00:00'}] }"));
+
+        repository.deleteChildrenByOwner();
+
+        assertThat(repository.getHistories("id1").length(), is(0));
+    }
+
+    @Test
+    public void shouldNotReadTheStoredChildToLogChangesOfALoadedChild() throws JSONException {
+        String lastSyncedAt = new RapidFtrDateTime(1, 2, 2013).defaultFormat();
+        String lastSavedAt = new RapidFtrDateTime(2, 2, 2013).defaultFormat();
+        repository.createOrUpdate(new Child("id", "user1", String.format("{'last_synced_at' : '%s', 'name' : 'old-name', 'histories' : [{'datetime' : '%s', 'changes' : {}}]}", lastSyncedAt, lastSavedAt)));
+        ChildRepository spyRepository = spy(repository);
+        Child child = spyRepository.get("id");
+        child.put("name", "new-name");
+
+        spyRepository.createOrUpdate(child);
+
+        verify(spyRepository, times(1)).get("id");
+        JSONObject history = repository.getHistories("id").getJSONObject(0);
+        assertThat(history.getJSONObject(CHANGES).length(), is(1));
+        assertOnHistory(history, "name", "new-name", "old-name");
+    }
+
     @Test
     public void shouldCompareWithLastSyncedAtDateBeforeGeneratingChangeLogs() throws JSONException {
 
@@ -449,6 +634,71 @@ public class ChildRepositoryTest {
         assertThat(((JSONArray) updatedChild.get(HISTORIES)).length(), is(1));
     }
 
+    @Test
+    public void shouldIterateOverEveryUnsyncedChildWhileTheyAreMarkedAsSynced() throws JSONException {
+        int unsyncedChildren = PagedRecordCursor.PAGE_SIZE + 5;
+        for (int i = 0; i < unsyncedChildren; i++) {
+            Child child = new Child(String.format("id%03d", i), "user1", "{ 'name' : 'child' }");
+            child.setSynced(false);
+            repository.createOrUpdate(child);
+        }
+        Child syncedChild = new Child("synced", "user1", "{ 'name' : 'child' }");
+        syncedChild.setSynced(true);
+        repository.createOrUpdate(syncedChild);
+
+        @Cleanup RecordCursor<Child> cursor = repository.toBeSyncedCursor();
+        List<String> iteratedIds = new ArrayList<String>();
+        for (Child child : cursor) {
+            iteratedIds.add(child.getUniqueId());
+            child.setSynced(true);
+            repository.update(child);
+        }
+
+        assertEquals(unsyncedChildren, cursor.size());
+        assertEquals(unsyncedChildren, iteratedIds.size());
+        assertEquals("id000", iteratedIds.get(0));
+        assertEquals(String.format("id%03d", unsyncedChildren - 1), iteratedIds.get(unsyncedChildren - 1));
+    }
+
+    @Test
+    public void shouldIterateOverUnsyncedChildrenOfCurrentUserOnly() throws JSONException {
+        Child child1 = new Child("id1", "user1", "{ 'name' : 'child1' }");
+        Child child2 = new Child("id2", "user2", "{ 'name' : 'child2' }");
+        repository.createOrUpdate(child1);
+        repository.createOrUpdate(child2);
+
+        @Cleanup RecordCursor<Child> cursor = repository.currentUsersUnsyncedRecordsCursor();
+
+        assertEquals(1, cursor.size());
+        assertThat(newArrayList(cursor), equalTo(asList(child1)));
+    }
+
+    @Test
+    public void shouldReturnChildrenInTheOrderOfTheGivenIdsSkippingUnknownIds() throws JSONException {
+        Child child1 = new Child("id1", "user1", "{ 'name' : 'child1' }");
+        Child child2 = new Child("id2", "user2", "{ 'name' : 'child2' }");
+        Child child3 = new Child("id3", "user1", "{ 'name' : 'child3' }");
+        repository.createOrUpdate(child1);
+        repository.createOrUpdate(child2);
+        repository.createOrUpdate(child3);
+
+        List<Child> children = repository.getAll(asList("id3", "unknown", "id1", "id2"));
+
+        assertThat(children, equalTo(asList(child3, child1, child2)));
+    }
+
+    @Test
+    public void shouldReturnChildrenInTheOrderOfTheGivenInternalIds() throws JSONException {
+        Child child1 = new Child("id1", "user1", "{ 'name' : 'child1', '_id' : 'ae0fc' }");
+        Child child2 = new Child("id2", "user1", "{ 'name' : 'child2', '_id' : 'b32fa' }");
+        repository.createOrUpdate(child1);
+        repository.createOrUpdate(child2);
+
+        List<Child> children = repository.getAllWithInternalIds(asList("b32fa", "ae0fc"));
+
+        assertThat(children, equalTo(asList(child2, child1)));
+    }
+
     @Test
     public void shouldReturnChildrenWithTheGivenInternalIds() throws JSONException {
         Child child1 = new Child("id1", "user1", "{ 'name' : 'child1', 'test2' : 0, '_id' : 'ae0fc' }");
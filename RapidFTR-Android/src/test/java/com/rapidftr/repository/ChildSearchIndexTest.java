@@ -0,0 +1,74 @@
+package com.rapidftr.repository;
+
+import android.database.Cursor;
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import com.rapidftr.model.Child;
+import lombok.Cleanup;
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class ChildSearchIndexTest {
+
+    private DatabaseSession session;
+    private ChildSearchIndex searchIndex;
+
+    @Before
+    public void setUp() {
+        session = new ShadowSQLiteHelper("test_database").getSession();
+        searchIndex = new ChildSearchIndex(session);
+    }
+
+    @Test
+    public void shouldTokenizeOnWhitespaceIgnoringCaseAndDuplicates() {
+        assertThat(ChildSearchIndex.tokenize("  John   SMITH john "), is(asList("john", "smith")));
+        assertThat(ChildSearchIndex.tokenize(null).size(), is(0));
+    }
+
+    @Test
+    public void shouldIndexShortIdAndFormFields() throws JSONException {
+        searchIndex.index(new Child("abcdefghijk", "user1", "{ 'name' : 'John Smith', 'unknown_field' : 'ugandan' }"));
+
+        assertThat(countTokens("_short_id", "efghijk"), is(1));
+        assertThat(countTokens("name", "john"), is(1));
+        assertThat(countTokens("name", "smith"), is(1));
+        assertThat(countTokens("unknown_field", "ugandan"), is(0));
+    }
+
+    @Test
+    public void shouldReplaceExistingTokensWhenReindexing() throws JSONException {
+        Child child = new Child("id1", "user1", "{ 'name' : 'old' }");
+        searchIndex.index(child);
+        child.put("name", "new");
+        searchIndex.index(child);
+
+        assertThat(countTokens("name", "old"), is(0));
+        assertThat(countTokens("name", "new"), is(1));
+    }
+
+    @Test
+    public void shouldBuildPrefixRangeQueryForEachSearchTerm() {
+        List<String> args = new ArrayList<String>();
+        String query = searchIndex.matchingChildIdsQuery(asList("ab", "c"), asList("_short_id", "name"), args);
+
+        assertThat(query, is("SELECT child_id FROM child_search_index WHERE field IN (?, ?) AND ((token >= ? AND token < ?) OR (token >= ? AND token < ?))"));
+        assertThat(args, is(asList("_short_id", "name", "ab", "ac", "c", "d")));
+    }
+
+    private int countTokens(String field, String token) {
+        @Cleanup Cursor cursor = session.rawQuery("SELECT COUNT(1) FROM child_search_index WHERE field = ? AND token = ?", new String[]{field, token});
+        cursor.moveToNext();
+        return cursor.getInt(0);
+    }
+}
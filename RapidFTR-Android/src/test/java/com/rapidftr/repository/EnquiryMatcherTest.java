@@ -0,0 +1,112 @@
+package com.rapidftr.repository;
+
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import com.rapidftr.model.Child;
+import com.rapidftr.model.Enquiry;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class EnquiryMatcherTest {
+
+    private DatabaseSession session;
+    private ChildRepository childRepository;
+    private EnquiryRepository enquiryRepository;
+    private EnquiryMatcher matcher;
+
+    @Before
+    public void setUp() {
+        session = new ShadowSQLiteHelper("test_database").getSession();
+        childRepository = new ChildRepository("user1", session);
+        enquiryRepository = new EnquiryRepository("user1", session);
+        matcher = new EnquiryMatcher(session);
+    }
+
+    @Test
+    public void shouldMatchChildrenWithServerIdsBestFirst() throws JSONException {
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'internal1', 'name' : 'John Smith' }"));
+        childRepository.createOrUpdate(new Child("id2", "user1", "{ '_id' : 'internal2', 'name' : 'Mary Smith' }"));
+        childRepository.createOrUpdate(new Child("id3", "user1", "{ '_id' : 'internal3', 'name' : 'Peter Pan' }"));
+        childRepository.createOrUpdate(new Child("id4", "user1", "{ 'name' : 'John Smith' }"));
+
+        Enquiry enquiry = new Enquiry("user1", new JSONObject("{ 'child_name' : 'John Smith' }"));
+
+        assertThat(new ArrayList<String>(matcher.match(enquiry).keySet()), is(asList("internal1", "internal2")));
+    }
+
+    @Test
+    public void shouldNotMatchChildrenSharingNoCriteriaWords() throws JSONException {
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'internal1', 'name' : 'John Smith' }"));
+
+        Enquiry enquiry = new Enquiry("user1", new JSONObject("{ 'child_name' : 'Peter Pan' }"));
+
+        assertThat(matcher.match(enquiry).size(), is(0));
+    }
+
+    @Test
+    public void shouldMatchExistingChildrenWhenSavingEnquiry() throws Exception {
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'internal1', 'name' : 'John Smith' }"));
+
+        Enquiry enquiry = new Enquiry("user1", new JSONObject("{ 'child_name' : 'John' }"));
+        enquiryRepository.createOrUpdate(enquiry);
+
+        assertThat(matchesOf(enquiry.getUniqueId()), is(asList("internal1")));
+    }
+
+    @Test
+    public void shouldAddSavedChildToPotentialMatchesOfIndexedEnquiries() throws Exception {
+        Enquiry enquiry = new Enquiry("user1", new JSONObject("{ 'child_name' : 'John' }"));
+        enquiryRepository.createOrUpdate(enquiry);
+
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'internal1', 'name' : 'John Smith' }"));
+
+        assertThat(matchesOf(enquiry.getUniqueId()), is(asList("internal1")));
+    }
+
+    @Test
+    public void shouldRebuildIndexAndMatchesOfExistingEnquiries() throws Exception {
+        Enquiry enquiry = new Enquiry("user1", new JSONObject("{ 'child_name' : 'John' }"));
+        enquiryRepository.createOrUpdate(enquiry);
+        session.execSQL("DELETE FROM enquiry_criteria_index");
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'internal1', 'name' : 'John Smith' }"));
+        session.execSQL("DELETE FROM enquiry_matches");
+
+        matcher.rebuild();
+
+        assertThat(matchesOf(enquiry.getUniqueId()), is(asList("internal1")));
+        assertThat(session.simpleQueryForLong("SELECT COUNT(1) FROM enquiry_criteria_index WHERE enquiry_id = ?", new String[]{enquiry.getUniqueId()}), is(1L));
+    }
+
+    @Test
+    public void shouldDropMatchesOfChildNoLongerMatchingButKeepServerOnes() throws Exception {
+        Child child = new Child("id1", "user1", "{ '_id' : 'internal1', 'name' : 'John Smith' }");
+        childRepository.createOrUpdate(child);
+        Enquiry local = new Enquiry("user1", new JSONObject("{ 'child_name' : 'John' }"));
+        enquiryRepository.createOrUpdate(local);
+        Enquiry server = new Enquiry("user1", new JSONObject("{ 'child_name' : 'John' }"));
+        server.put("potential_matches", "[\"internal1\"]");
+        enquiryRepository.createOrUpdate(server);
+
+        child.put("name", "Peter Pan");
+        childRepository.update(child);
+
+        assertThat(matchesOf(local.getUniqueId()).size(), is(0));
+        assertThat(matchesOf(server.getUniqueId()), is(asList("internal1")));
+    }
+
+    private List<String> matchesOf(String enquiryId) {
+        return new EnquiryMatches(session).childInternalIds(enquiryId);
+    }
+}
@@ -0,0 +1,69 @@
+package com.rapidftr.repository;
+
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.DatabaseSession;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class EnquiryMatchesTest {
+
+    private DatabaseSession session;
+    private EnquiryMatches matches;
+
+    @Before
+    public void setUp() {
+        session = new ShadowSQLiteHelper("test_database").getSession();
+        matches = new EnquiryMatches(session);
+    }
+
+    @Test
+    public void shouldListServerMatchesFirstThenLocalOnesByScore() {
+        Map<String, Double> local = new LinkedHashMap<String, Double>();
+        local.put("local1", 0.4);
+        local.put("local2", 0.9);
+        local.put("server1", 0.5);
+
+        matches.save("enquiry1", "[\"server1\"]", local);
+
+        assertThat(matches.childInternalIds("enquiry1"), is(asList("server1", "local2", "local1")));
+    }
+
+    @Test
+    public void shouldReplaceMatchesOfEnquiryWhenSaving() {
+        matches.save("enquiry1", "[\"child1\"]", Collections.<String, Double>emptyMap());
+        matches.save("enquiry2", "[\"child1\"]", Collections.<String, Double>emptyMap());
+
+        matches.save("enquiry1", "[\"child2\"]", Collections.<String, Double>emptyMap());
+
+        assertThat(matches.childInternalIds("enquiry1"), is(asList("child2")));
+        assertThat(matches.enquiryIds("child1"), is(asList("enquiry2")));
+    }
+
+    @Test
+    public void shouldOnlyRemoveLocalMatchesOfChild() {
+        matches.save("enquiry1", "[\"child1\"]", Collections.<String, Double>emptyMap());
+        matches.add("enquiry2", "child1", 0.5);
+
+        matches.removeLocalMatches("child1");
+
+        assertThat(matches.enquiryIds("child1"), is(asList("enquiry1")));
+    }
+
+    @Test
+    public void shouldIgnorePotentialMatchesWhichAreNotAListOfIds() {
+        assertThat(EnquiryMatches.parse("[\"child1\", \"child2\"]"), is(asList("child1", "child2")));
+        assertThat(EnquiryMatches.parse("some potential matches id").size(), is(0));
+        assertThat(EnquiryMatches.parse(null).size(), is(0));
+    }
+}
@@ -16,7 +16,9 @@ import org.junit.runner.RunWith;
 import org.skyscreamer.jsonassert.JSONAssert;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 
@@ -76,6 +78,98 @@ public class EnquiryRepositoryTest {
         assertThat(enquiry1.getCreatedAt(), is(enquiry2.getCreatedAt()));
     }
 
+    @Test
+    public void shouldReturnOwnEnquiriesPageByPageInTheOrderTheyWereCreated() throws Exception {
+        Enquiry latest = enquiryCreatedAt(user, "2013-02-03 10:00:00");
+        Enquiry earliest = enquiryCreatedAt(user, "2013-02-01 10:00:00");
+        Enquiry middle = enquiryCreatedAt(user, "2013-02-02 10:00:00");
+        enquiryRepository.createOrUpdate(latest);
+        enquiryRepository.createOrUpdate(earliest);
+        enquiryRepository.createOrUpdate(middle);
+        enquiryRepository.createOrUpdate(enquiryCreatedAt("other user", "2013-02-02 10:00:00"));
+
+        List<Enquiry> firstPage = enquiryRepository.getPage(null, 2);
+        List<Enquiry> secondPage = enquiryRepository.getPage(firstPage.get(1).getUniqueId(), 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals(earliest.getUniqueId(), firstPage.get(0).getUniqueId());
+        assertEquals(middle.getUniqueId(), firstPage.get(1).getUniqueId());
+        assertEquals(1, secondPage.size());
+        assertEquals(latest.getUniqueId(), secondPage.get(0).getUniqueId());
+    }
+
+    private Enquiry enquiryCreatedAt(String createdBy, String createdAt) throws JSONException {
+        Enquiry enquiry = new Enquiry(createdBy, new JSONObject("{age:14,name:Subhas}"));
+        enquiry.put("created_at", createdAt);
+        return enquiry;
+    }
+
+    @Test
+    public void shouldCreateNewAndUpdateExistingEnquiriesTogether() throws Exception {
+        Enquiry existingEnquiry = new Enquiry(user, new JSONObject("{age:14,name:Subhas}"));
+        enquiryRepository.createOrUpdate(existingEnquiry);
+        existingEnquiry.put("name", "updated");
+        Enquiry newEnquiry = new Enquiry(user, new JSONObject("{age:12,name:Ravi}"));
+
+        enquiryRepository.createOrUpdateAll(Arrays.asList(existingEnquiry, newEnquiry));
+
+        assertEquals(2, enquiryRepository.size());
+        assertEquals("updated", enquiryRepository.get(existingEnquiry.getUniqueId()).getString("name"));
+    }
+
+    @Test
+    public void shouldReturnEnquiriesInTheOrderOfTheGivenIds() throws Exception {
+        Enquiry enquiry1 = new Enquiry(user, new JSONObject("{age:14,name:Subhas}"));
+        Enquiry enquiry2 = new Enquiry(user, new JSONObject("{age:12,name:Ravi}"));
+        enquiryRepository.createOrUpdate(enquiry1);
+        enquiryRepository.createOrUpdate(enquiry2);
+
+        List<Enquiry> enquiries = enquiryRepository.getAll(Arrays.asList(enquiry2.getUniqueId(), "unknown", enquiry1.getUniqueId()));
+
+        assertEquals(2, enquiries.size());
+        assertEquals(enquiry2.getUniqueId(), enquiries.get(0).getUniqueId());
+        assertEquals(enquiry1.getUniqueId(), enquiries.get(1).getUniqueId());
+    }
+
+    @Test
+    public void toBeSyncedCursorShouldIterateOverEnquiriesWithSyncedStatusFalse() throws Exception {
+        Enquiry enquiry1 = new Enquiry(user, new JSONObject("{age:14,name:Subhas}"));
+        enquiry1.setSynced(false);
+        Enquiry enquiry2 = new Enquiry(user, new JSONObject("{age:12,name:Ravi}"));
+        enquiry2.setSynced(true);
+        enquiryRepository.createOrUpdate(enquiry1);
+        enquiryRepository.createOrUpdate(enquiry2);
+
+        RecordCursor<Enquiry> cursor = enquiryRepository.toBeSyncedCursor();
+        Iterator<Enquiry> enquiries = cursor.iterator();
+
+        assertEquals(1, cursor.size());
+        assertEquals(enquiry1.getUniqueId(), enquiries.next().getUniqueId());
+        assertFalse(enquiries.hasNext());
+        cursor.close();
+    }
+
+    @Test
+    public void currentUsersUnsyncedRecordsCursorShouldIterateOverUnsyncedEnquiriesCreatedByTheUser() throws Exception {
+        Enquiry enquiry1 = new Enquiry(user, new JSONObject("{age:14,name:Subhas}"));
+        enquiry1.setSynced(false);
+        Enquiry enquiry2 = new Enquiry(user, new JSONObject("{age:12,name:Ravi}"));
+        enquiry2.setSynced(true);
+        Enquiry enquiry3 = new Enquiry("another user", new JSONObject("{age:10,name:Mohan}"));
+        enquiry3.setSynced(false);
+        enquiryRepository.createOrUpdate(enquiry1);
+        enquiryRepository.createOrUpdate(enquiry2);
+        enquiryRepository.createOrUpdate(enquiry3);
+
+        RecordCursor<Enquiry> cursor = enquiryRepository.currentUsersUnsyncedRecordsCursor();
+        Iterator<Enquiry> enquiries = cursor.iterator();
+
+        assertEquals(1, cursor.size());
+        assertEquals(enquiry1.getUniqueId(), enquiries.next().getUniqueId());
+        assertFalse(enquiries.hasNext());
+        cursor.close();
+    }
+
     @Test
     @Ignore
     public void getShouldReturnEnquiryForId() throws Exception {
@@ -186,6 +280,21 @@ public class EnquiryRepositoryTest {
         assertThat(retrieved.getString(Database.EnquiryTableColumn.internal_rev.getColumnName()), is("new internal revision"));
     }
 
+    @Test
+    public void shouldGetEnquiriesMatchingChildByItsServerId() throws Exception {
+        Enquiry matching = new Enquiry(user, new JSONObject("{}"));
+        matching.put(Database.EnquiryTableColumn.potential_matches.getColumnName(), "[\"child1\", \"child2\"]");
+        enquiryRepository.createOrUpdate(matching);
+        Enquiry other = new Enquiry(user, new JSONObject("{}"));
+        other.put(Database.EnquiryTableColumn.potential_matches.getColumnName(), "[\"child2\"]");
+        enquiryRepository.createOrUpdate(other);
+
+        List<Enquiry> enquiries = enquiryRepository.getMatching("child1");
+
+        assertThat(enquiries.size(), is(1));
+        assertThat(enquiries.get(0).getUniqueId(), is(matching.getUniqueId()));
+    }
+
     @Test(expected = FailedToSaveException.class)
     public void shouldReturnFailedToSaveEnquiryExceptionWhenSavingEnquiryWithData() throws
             FailedToSaveException, JSONException {
@@ -0,0 +1,32 @@
+package com.rapidftr.repository;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class ListRecordCursor<T> implements RecordCursor<T> {
+
+    private final List<T> records;
+
+    public ListRecordCursor(List<T> records) {
+        this.records = records;
+    }
+
+    public static <T> ListRecordCursor<T> cursorOf(T... records) {
+        return new ListRecordCursor<T>(Arrays.asList(records));
+    }
+
+    @Override
+    public int size() {
+        return records.size();
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return records.iterator();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,27 @@
+package com.rapidftr.repository;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class QueryArgumentsTest {
+
+    @Test
+    public void shouldSplitDistinctValuesIntoChunks() {
+        List<List<String>> chunks = QueryArguments.chunks(asList("a", "b", "a", "c", "d"), 3);
+
+        assertThat(chunks.size(), equalTo(2));
+        assertThat(chunks.get(0), equalTo(asList("a", "b", "c")));
+        assertThat(chunks.get(1), equalTo(asList("d")));
+    }
+
+    @Test
+    public void shouldBuildPlaceholders() {
+        assertThat(QueryArguments.placeholders(3), equalTo("?, ?, ?"));
+        assertThat(QueryArguments.placeholders(1), equalTo("?"));
+    }
+}
@@ -0,0 +1,48 @@
+package com.rapidftr.repository;
+
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import com.rapidftr.model.Child;
+import lombok.Cleanup;
+import org.json.JSONException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class RevisionCursorTest {
+
+    private ChildRepository repository;
+
+    @Before
+    public void setUp() throws JSONException {
+        repository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        repository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'b', '_rev' : '1-b' }"));
+        repository.createOrUpdate(new Child("id2", "user1", "{ '_id' : 'd', '_rev' : '2-d' }"));
+        repository.createOrUpdate(new Child("id3", "user1", "{ '_id' : 'a', '_rev' : '3-a' }"));
+    }
+
+    @Test
+    public void shouldMergeIdsAskedForInIncreasingOrder() {
+        @Cleanup RevisionCursor revisions = repository.getRevisions();
+
+        assertThat(revisions.revisionOf("a"), is("3-a"));
+        assertThat(revisions.revisionOf("c"), is(nullValue()));
+        assertThat(revisions.revisionOf("d"), is("2-d"));
+        assertThat(revisions.revisionOf("e"), is(nullValue()));
+    }
+
+    @Test
+    public void shouldLookUpIdsSmallerThanThePreviousOne() {
+        @Cleanup RevisionCursor revisions = repository.getRevisions();
+
+        assertThat(revisions.revisionOf("d"), is("2-d"));
+        assertThat(revisions.revisionOf("b"), is("1-b"));
+        assertThat(revisions.revisionOf("c"), is(nullValue()));
+        assertThat(revisions.revisionOf("e"), is(nullValue()));
+    }
+}
@@ -0,0 +1,81 @@
+package com.rapidftr.repository;
+
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.database.ShadowSQLiteHelper;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class SyncPlanTest {
+
+    private SyncPlan childPlan;
+    private SyncPlan enquiryPlan;
+
+    @Before
+    public void setUp() {
+        ShadowSQLiteHelper helper = new ShadowSQLiteHelper("test_database");
+        childPlan = new SyncPlan(helper.getSession(), "children");
+        enquiryPlan = new SyncPlan(helper.getSession(), "enquiry");
+    }
+
+    @Test
+    public void shouldKeepIdsInTheOrderTheyWerePlanned() {
+        childPlan.plan(asList("c", "a", "b", "a"));
+
+        assertThat(childPlan.pendingIds(), is(asList("c", "a", "b")));
+    }
+
+    @Test
+    public void shouldCrossOffCompletedIds() {
+        childPlan.plan(asList("a", "b", "c"));
+
+        childPlan.completed(asList("a", "c", "unplanned"));
+
+        assertThat(childPlan.pendingIds(), is(asList("b")));
+    }
+
+    @Test
+    public void shouldReplaceThePlanOfTheSameTypeOnly() {
+        childPlan.plan(asList("a", "b"));
+        enquiryPlan.plan(asList("a", "x"));
+
+        childPlan.plan(asList("c"));
+        enquiryPlan.completed(asList("a"));
+
+        assertThat(childPlan.pendingIds(), is(asList("c")));
+        assertThat(enquiryPlan.pendingIds(), is(asList("x")));
+    }
+
+    @Test
+    public void shouldKeepACheckpointForEachTypeUntilCleared() {
+        childPlan.setCheckpoint("5");
+        childPlan.setCheckpoint("10");
+        enquiryPlan.setCheckpoint("3");
+
+        assertThat(childPlan.getCheckpoint(), is("10"));
+        assertThat(enquiryPlan.getCheckpoint(), is("3"));
+
+        childPlan.setCheckpoint(null);
+        assertThat(childPlan.getCheckpoint(), nullValue());
+        assertThat(enquiryPlan.getCheckpoint(), is("3"));
+    }
+
+    @Test
+    public void shouldKeepThePendingCheckpointUntilPromoted() {
+        childPlan.setPendingCheckpoint("7");
+        assertThat(childPlan.getCheckpoint(), nullValue());
+
+        childPlan.promotePendingCheckpoint();
+        childPlan.promotePendingCheckpoint();
+
+        assertThat(childPlan.getCheckpoint(), is("7"));
+        assertThat(childPlan.getPendingCheckpoint(), nullValue());
+        assertThat(enquiryPlan.getCheckpoint(), nullValue());
+    }
+}
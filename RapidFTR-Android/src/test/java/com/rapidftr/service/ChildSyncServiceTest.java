@@ -4,14 +4,19 @@ import android.graphics.Bitmap;
 import com.rapidftr.CustomTestRunner;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.database.Database;
+import com.rapidftr.database.ShadowSQLiteHelper;
 import com.rapidftr.model.Child;
 import com.rapidftr.model.User;
 import com.rapidftr.repository.ChildRepository;
 import com.rapidftr.utils.PhotoCaptureHelper;
 import com.rapidftr.utils.http.FluentRequest;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
 import org.apache.http.entity.mime.MultipartEntity;
+import org.apache.http.util.EntityUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -20,13 +25,19 @@ import org.mockito.Matchers;
 import org.mockito.Mock;
 import org.robolectric.tester.org.apache.http.TestHttpResponse;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.net.URLEncoder;
 import java.security.GeneralSecurityException;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import static com.rapidftr.RapidFtrApplication.SERVER_URL_PREF;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -36,6 +47,7 @@ import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -52,6 +64,11 @@ public class ChildSyncServiceTest {
     FluentRequest fluentRequest;
     public static final String RESPONSE = "{\"unique_identifier\":\"adf7c0c9-0137-4cae-beea-b7d282344829\",\"created_at\":\"2013-02-08 12:18:37\",\"created_by_full_name\":\"RapidFTR\",\"couchrest-type\":\"Child\",\"short_id\":\"2344829\",\"_id\":\"b7f89b978870da823e0af6491c3e295b\",\"_rev\":\"2-bc72af384e177fcaa8e9e8d181bfe05b\",\"name\":\"\",\"last_updated_at\":\"2013-02-08 11:37:33\",\"current_photo_key\":\"photo--1475374810-2013-02-08T175138\",\"created_by\":\"rapidftr\",\"photo_keys\":[\"photo--1475374810-2013-02-08T175138\"],\"created_organisation\":\"N/A\",\"posted_at\":\"2013-02-08 12:16:55UTC\",\"last_updated_by_full_name\":\"RapidFTR\"}";
 
+    @After
+    public void tearDown() {
+        RapidFtrApplication.getApplicationInstance().setCurrentUser(null);
+    }
+
     @Before
     public void setUp() throws Exception {
         initMocks(this);
@@ -69,6 +86,19 @@ public class ChildSyncServiceTest {
         verify(repository).update(child);
     }
 
+    @Test
+    public void shouldLeaveRepositoryOpenForTheNextRecordUntilClosed() throws Exception {
+        getFakeHttpLayer().setDefaultHttpResponse(201, "{}");
+        ChildSyncService service = new ChildSyncService(mockContext(), repository, fluentRequest);
+
+        service.sync(new Child(), currentUser);
+        service.sync(new Child(), currentUser);
+        verify(repository, never()).close();
+
+        service.close();
+        verify(repository).close();
+    }
+
     @Test
     public void shouldHandleSyncFailureAndReturnTheFailingChild() throws Exception {
         Child child = new Child();
@@ -235,18 +265,115 @@ public class ChildSyncServiceTest {
 
         String response = "[{\"_rev\":\"5-1ed26a0e5072830a9064361a570684f6\",\"_id\":\"dfb2031ebfcbef39dccdb468f5200edc\"},{\"_rev\":\"4-b011946150a16b0d2c6271aed05e2abe\",\"_id\":\"59cd40f39ab6aa791f73885e3bdd99f9\"}]";
         getFakeHttpLayer().setDefaultHttpResponse(200, response);
-        HashMap<String, String> repositoryIdsAndRevs = new HashMap<String, String>();
-        repositoryIdsAndRevs.put("59cd40f39ab6aa791f73885e3bdd99f9", "4-b011946150a16b0d2c6271aed05e2abe");
-        repositoryIdsAndRevs.put("dfb2031ebfcbef39dccdb468f5200edc", "old revision id");
-        when(repository.getAllIdsAndRevs()).thenReturn(repositoryIdsAndRevs);
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : '59cd40f39ab6aa791f73885e3bdd99f9', '_rev' : '4-b011946150a16b0d2c6271aed05e2abe' }"));
+        childRepository.createOrUpdate(new Child("id2", "user1", "{ '_id' : 'dfb2031ebfcbef39dccdb468f5200edc', '_rev' : 'old revision id' }"));
 
-        List<String> idsToChange = new ChildSyncService(mockContext(), repository, mockFluentRequest).getIdsToDownload();
+        List<String> idsToChange = new ChildSyncService(mockContext(), childRepository, mockFluentRequest).getIdsToDownload();
         assertEquals(1, idsToChange.size());
         assertEquals("dfb2031ebfcbef39dccdb468f5200edc", idsToChange.get(0));
 
         verify(mockFluentRequest).path("/api/children/ids");
     }
 
+    @Test
+    public void shouldFetchIdsMissingLocallyInWhateverOrderTheServerListsThem() throws Exception {
+        String response = "[{\"_id\":\"c\",\"_rev\":\"1-c\"},{\"_id\":\"d\",\"_rev\":\"1-d\",\"extra\":{\"_id\":\"x\"}},"
+                + "{\"_id\":\"a\",\"_rev\":\"2-a\"},{\"_id\":\"b\",\"_rev\":\"1-b\"},{\"_id\":\"e\",\"_rev\":\"1-e\"}]";
+        getFakeHttpLayer().setDefaultHttpResponse(200, response);
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'a', '_rev' : '1-a' }"));
+        childRepository.createOrUpdate(new Child("id2", "user1", "{ '_id' : 'b', '_rev' : '1-b' }"));
+        childRepository.createOrUpdate(new Child("id3", "user1", "{ '_id' : 'd', '_rev' : '1-d' }"));
+        childRepository.createOrUpdate(new Child("id4", "user1", "{ 'name' : 'not synced yet' }"));
+
+        List<String> idsToChange = new ChildSyncService(mockContext(), childRepository, new FluentRequest()).getIdsToDownload();
+
+        assertThat(idsToChange, is(Arrays.asList("c", "a", "e")));
+    }
+
+    @Test
+    public void shouldFetchIdsChangedSinceCheckpointAndMoveItOnceSaved() throws Exception {
+        RapidFtrApplication context = mockContext();
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/changes?since=5", "{\"results\":["
+                + "{\"seq\":6,\"id\":\"a\",\"changes\":[{\"rev\":\"2-a\"}]},"
+                + "{\"seq\":7,\"id\":\"b\",\"changes\":[{\"rev\":\"1-b\"}]},"
+                + "{\"seq\":8,\"id\":\"c\",\"changes\":[{\"rev\":\"2-c\"}],\"deleted\":true},"
+                + "{\"seq\":9,\"id\":\"_design/Child\",\"changes\":[{\"rev\":\"3-d\"}]},"
+                + "{\"seq\":10,\"id\":\"e\",\"changes\":[{\"rev\":\"1-e\"}]}],\"last_seq\":10}");
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'a', '_rev' : '1-a' }"));
+        childRepository.createOrUpdate(new Child("id2", "user1", "{ '_id' : 'b', '_rev' : '1-b' }"));
+        childRepository.getSyncPlan().setCheckpoint("5");
+        ChildSyncService service = new ChildSyncService(context, childRepository, new FluentRequest());
+
+        assertThat(service.getIdsToDownload(), is(Arrays.asList("a", "e")));
+        assertEquals("5", childRepository.getSyncPlan().getCheckpoint());
+
+        service.downloadsSaved();
+        assertEquals("10", childRepository.getSyncPlan().getCheckpoint());
+    }
+
+    @Test
+    public void shouldCompareAllIdsAndNoteWhereTheChangesAreWithoutCheckpoint() throws Exception {
+        RapidFtrApplication context = mockContext();
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/changes?since=now", "{\"results\":[],\"last_seq\":\"12-g1AAAA\"}");
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/ids", "[{\"_id\":\"a\",\"_rev\":\"1-a\"}]");
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        ChildSyncService service = new ChildSyncService(context, childRepository, new FluentRequest());
+
+        assertThat(service.getIdsToDownload(), is(Arrays.asList("a")));
+        service.downloadsSaved();
+
+        assertEquals("12-g1AAAA", childRepository.getSyncPlan().getCheckpoint());
+    }
+
+    @Test
+    public void shouldMoveTheCheckpointWhenASyncCarriesOnWithTheIdsLeftByAnother() throws Exception {
+        RapidFtrApplication context = mockContext();
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/changes?since=now", "{\"results\":[],\"last_seq\":\"12-g1AAAA\"}");
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/ids", "[{\"_id\":\"a\",\"_rev\":\"1-a\"}]");
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        new ChildSyncService(context, childRepository, new FluentRequest()).getIdsToDownload();
+
+        new ChildSyncService(context, childRepository, new FluentRequest()).downloadsSaved();
+
+        assertEquals("12-g1AAAA", childRepository.getSyncPlan().getCheckpoint());
+        assertThat(childRepository.getSyncPlan().getPendingCheckpoint(), nullValue());
+    }
+
+    @Test
+    public void shouldOnlyAskOnceWhereTheChangesAreWhenServerHasNoChangesFeed() throws Exception {
+        RapidFtrApplication context = mockContext();
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/changes?since=now", new TestHttpResponse(404, "not found"));
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/ids", "[{\"_id\":\"a\",\"_rev\":\"1-a\"}]");
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+
+        assertThat(new ChildSyncService(context, childRepository, new FluentRequest()).getIdsToDownload(), is(Arrays.asList("a")));
+        assertThat(new ChildSyncService(context, childRepository, new FluentRequest()).getIdsToDownload(), is(Arrays.asList("a")));
+
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfos().size(), is(3));
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfo(2).getHttpRequest().getRequestLine().getUri(), is("http://whatever/api/children/ids"));
+        assertThat(childRepository.getSyncPlan().getCheckpoint(), nullValue());
+    }
+
+    @Test
+    public void shouldCompareAllIdsWhenServerRejectsCheckpoint() throws Exception {
+        RapidFtrApplication context = mockContext();
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/changes?since=unknown", new TestHttpResponse(400, "{\"error\":\"bad_request\"}"));
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/changes?since=now", "{\"results\":[],\"last_seq\":3}");
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/ids", "[{\"_id\":\"a\",\"_rev\":\"1-a\"}]");
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        childRepository.getSyncPlan().setCheckpoint("unknown");
+        ChildSyncService service = new ChildSyncService(context, childRepository, new FluentRequest());
+
+        assertThat(service.getIdsToDownload(), is(Arrays.asList("a")));
+        assertThat(childRepository.getSyncPlan().getCheckpoint(), nullValue());
+
+        service.downloadsSaved();
+        assertEquals("3", childRepository.getSyncPlan().getCheckpoint());
+    }
+
     @Test
     public void shouldGetChild() throws IOException, JSONException {
         FluentRequest mockFluentRequest = spy(new FluentRequest());
@@ -260,6 +387,127 @@ public class ChildSyncServiceTest {
         verify(mockFluentRequest).path("/api/children/0369c92c8e2245e680dc9a580202e285");
     }
 
+    @Test
+    public void shouldGetChildrenInOneRequest() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/batch",
+                "[{\"_id\":\"a\",\"name\":\"John\",\"photo_keys\":[]},{\"_id\":\"b\",\"name\":\"Mary\",\"nested\":{\"_id\":\"x\"}}]");
+
+        List<Child> children = new ChildSyncService(mockContext(), repository, new FluentRequest()).getRecords(Arrays.asList("a", "b"));
+
+        assertThat(children.size(), is(2));
+        assertEquals("John", children.get(0).get("name"));
+        assertEquals("b", children.get(1).get("_id"));
+        assertThat(children.get(1).isSynced(), is(true));
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfos().size(), is(1));
+        HttpEntityEnclosingRequest request = (HttpEntityEnclosingRequest) getFakeHttpLayer().getLastSentHttpRequestInfo().getHttpRequest();
+        assertEquals("POST", request.getRequestLine().getMethod());
+        assertThat(request.getEntity().getContentType().getValue(), containsString("application/x-www-form-urlencoded"));
+        assertEquals("ids=" + URLEncoder.encode("[\"a\",\"b\"]", "UTF-8"), EntityUtils.toString(request.getEntity()));
+    }
+
+    @Test
+    public void shouldGetChildrenOneByOneWhenServerCannotSendSeveral() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/batch", new TestHttpResponse(404, "Not Found"));
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/a", "{\"_id\":\"a\"}");
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/b", "{\"_id\":\"b\"}");
+        ChildSyncService service = new ChildSyncService(mockContext(), repository, new FluentRequest());
+
+        assertEquals("a", service.getRecords(Arrays.asList("a")).get(0).get("_id"));
+        assertEquals("b", service.getRecords(Arrays.asList("b")).get(0).get("_id"));
+
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfos().size(), is(3));
+    }
+
+    @Test(expected = HttpException.class)
+    public void shouldFailGettingChildrenWhenServerRefusesTheIds() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/batch", new TestHttpResponse(400, "{\"error\":\"ids must be a JSON array\"}"));
+
+        new ChildSyncService(mockContext(), repository, new FluentRequest()).getRecords(Arrays.asList("a"));
+    }
+
+    @Test(expected = HttpException.class)
+    public void shouldFailGettingChildrenWhenServerFailsTheBatch() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/batch", new TestHttpResponse(500, "error"));
+
+        new ChildSyncService(mockContext(), repository, new FluentRequest()).getRecords(Arrays.asList("a"));
+    }
+
+    @Test
+    public void shouldSendOnlyFieldsChangedSinceLastSync() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/abcd", "{\"_id\":\"abcd\",\"_rev\":\"3-abcd\"}");
+
+        new ChildSyncService(mockContext(), repository, new FluentRequest()).sync(editedChild(), currentUser);
+
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfos().size(), is(1));
+        String sent = sentBody(0);
+        assertThat(sent, containsString("name=\"child[name]\""));
+        assertThat(sent, containsString("name=\"child[_rev]\""));
+        assertThat(sent, containsString("2-abcd"));
+        assertThat(sent, containsString("name=\"child[unique_identifier]\""));
+        assertThat(sent, not(containsString("name=\"child[gender]\"")));
+        assertThat(sent, not(containsString("2013-01-15 10:00:00")));
+    }
+
+    @Test
+    public void shouldSendNoFieldsBeyondTheChangedOnesInTheMultipartBody() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/abcd", "{\"_id\":\"abcd\",\"_rev\":\"3-abcd\"}");
+
+        new ChildSyncService(mockContext(), repository, new FluentRequest()).sync(editedChild(), currentUser);
+
+        assertThat(sentFields(0), is((Set<String>) new HashSet<String>(Arrays.asList("name", "_rev", "unique_identifier"))));
+    }
+
+    @Test
+    public void shouldSendTheFieldsEditedOnTheDeviceSinceTheLastSync() throws Exception {
+        ChildRepository childRepository = new ChildRepository("user1", new ShadowSQLiteHelper("test_database").getSession());
+        childRepository.createOrUpdate(new Child("id1", "user1", "{ '_id' : 'abcd', '_rev' : '2-abcd', 'name' : 'old name',"
+                + " 'gender' : 'female', 'last_synced_at' : '2013-02-01 10:00:00' }", true));
+        Child child = childRepository.get("id1");
+        child.put("name", "new name");
+        childRepository.createOrUpdate(child);
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/abcd", "{\"_id\":\"abcd\",\"_rev\":\"3-abcd\"}");
+
+        new ChildSyncService(mockContext(), childRepository, new FluentRequest()).sync(childRepository.get("id1"), currentUser);
+
+        assertThat(sentFields(0), is((Set<String>) new HashSet<String>(Arrays.asList("name", "_rev", "unique_identifier", "last_updated_at"))));
+        assertThat(sentBody(0), containsString("new name"));
+    }
+
+    @Test
+    public void shouldNotSendWholeChildWhenChangesFailForOtherReasons() throws Exception {
+        getFakeHttpLayer().addPendingHttpResponse(503, "unavailable");
+
+        Child child = new ChildSyncService(mockContext(), repository, new FluentRequest()).sync(editedChild(), currentUser);
+
+        assertThat(child.isSynced(), is(false));
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfos().size(), is(1));
+    }
+
+    @Test
+    public void shouldSendWholeChildWhenServerRefusesItsChanges() throws Exception {
+        getFakeHttpLayer().addPendingHttpResponse(409, "{\"error\":\"conflict\"}");
+        getFakeHttpLayer().addPendingHttpResponse(200, "{\"_id\":\"abcd\",\"_rev\":\"3-abcd\"}");
+
+        Child child = new ChildSyncService(mockContext(), repository, new FluentRequest()).sync(editedChild(), currentUser);
+
+        assertThat(child.isSynced(), is(true));
+        assertThat(getFakeHttpLayer().getSentHttpRequestInfos().size(), is(2));
+        String sent = sentBody(1);
+        assertThat(sent, containsString("name=\"child[gender]\""));
+        assertThat(sent, not(containsString("name=\"child[_rev]\"")));
+    }
+
+    @Test
+    public void shouldSendWholeChildWhenNoChangeWasRecordedSinceLastSync() throws Exception {
+        getFakeHttpLayer().addHttpResponseRule("http://whatever/api/children/abcd", "{\"_id\":\"abcd\",\"_rev\":\"3-abcd\"}");
+        Child child = editedChild();
+        child.remove("unsynced_fields");
+
+        new ChildSyncService(mockContext(), repository, new FluentRequest()).sync(child, currentUser);
+
+        assertThat(sentBody(0), containsString("name=\"child[gender]\""));
+    }
+
     @Test
     public void shouldMarkUnverifiedChildAsSyncedOnceSuccessfullySynced() throws Exception {
         FluentRequest mockFluentRequest = spy(new FluentRequest());
@@ -272,6 +520,28 @@ public class ChildSyncServiceTest {
         assertThat(child.isSynced(), is(true));
     }
 
+    // synced on the 1st of February, its name changed since
+    private Child editedChild() throws JSONException {
+        return new Child("id1", "user1", "{ '_id' : 'abcd', '_rev' : '2-abcd', 'name' : 'new name', 'gender' : 'female',"
+                + " 'last_synced_at' : '2013-02-01 10:00:00', 'unsynced_fields' : ['name'], 'histories' : ["
+                + "{ 'datetime' : '2013-01-15 10:00:00', 'changes' : { 'gender' : { 'from' : '', 'to' : 'female' } } }] }");
+    }
+
+    private Set<String> sentFields(int request) throws IOException {
+        Set<String> sentFields = new HashSet<String>();
+        Matcher fields = Pattern.compile("name=\"child\\[(\\w+)\\]\"").matcher(sentBody(request));
+        while (fields.find()) {
+            sentFields.add(fields.group(1));
+        }
+        return sentFields;
+    }
+
+    private String sentBody(int request) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ((HttpEntityEnclosingRequest) getFakeHttpLayer().getSentHttpRequestInfo(request).getHttpRequest()).getEntity().writeTo(body);
+        return body.toString();
+    }
+
     private RapidFtrApplication mockContext() {
         RapidFtrApplication context = RapidFtrApplication.getApplicationInstance();
         context.getSharedPreferences().edit().putString(SERVER_URL_PREF, "whatever").commit();
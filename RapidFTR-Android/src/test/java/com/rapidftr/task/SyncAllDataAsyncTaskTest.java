@@ -4,17 +4,22 @@ import android.app.Notification;
 import android.app.NotificationManager;
 import android.view.Menu;
 import android.view.MenuItem;
+import com.google.inject.Provider;
 import com.rapidftr.CustomTestRunner;
 import com.rapidftr.R;
 import com.rapidftr.RapidFtrApplication;
 import com.rapidftr.activity.RapidFtrActivity;
+import com.rapidftr.database.ShadowSQLiteHelper;
 import com.rapidftr.model.Child;
 import com.rapidftr.model.User;
 import com.rapidftr.repository.ChildRepository;
+import com.rapidftr.repository.ListRecordCursor;
+import com.rapidftr.repository.SyncPlan;
 import com.rapidftr.roboelectric.shadows.ShadowTaskStackBuilder;
 import com.rapidftr.service.ChildSyncService;
 import com.rapidftr.service.DeviceService;
 import com.rapidftr.service.FormService;
+import com.rapidftr.service.SyncService;
 import com.rapidftr.utils.http.FluentRequest;
 import org.apache.http.HttpException;
 import org.json.JSONException;
@@ -22,21 +27,36 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Answers;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Matchers;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.robolectric.Robolectric;
 import org.robolectric.annotation.Config;
 
 import java.io.IOException;
+import java.io.SyncFailedException;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
-
-import static com.google.common.collect.Lists.newArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.rapidftr.repository.ListRecordCursor.cursorOf;
+import static org.hamcrest.CoreMatchers.anyOf;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.*;
 import static org.mockito.MockitoAnnotations.initMocks;
+import static org.junit.Assert.fail;
 
 @RunWith(CustomTestRunner.class)
 @Config(shadows = {ShadowTaskStackBuilder.class})
@@ -66,6 +86,7 @@ public class SyncAllDataAsyncTaskTest {
     private RapidFtrApplication application;
 
     private SyncAllDataAsyncTask syncAllDataAsyncTask;
+    private SyncPlan plan;
 
     @Before
     public void setUp() throws Exception {
@@ -80,6 +101,9 @@ public class SyncAllDataAsyncTaskTest {
         doReturn(application).when(rapidFtrActivity).getApplication();
 
         syncAllDataAsyncTask = new SyncAllDataAsyncTask(formService, childSyncService, deviceService, childRepository, currentUser);
+        given(childRepository.toBeSyncedCursor()).willReturn(ListRecordCursor.<Child>cursorOf());
+        plan = new SyncPlan(new ShadowSQLiteHelper("test_database").getSession(), "children");
+        given(childRepository.getSyncPlan()).willReturn(plan);
 
         doReturn("Notify").when(rapidFtrActivity).getString(any(Integer.class));
         doReturn("Notify").when(application).getString(any(Integer.class));
@@ -90,7 +114,7 @@ public class SyncAllDataAsyncTaskTest {
     public void shouldSyncFormsAndChildren() throws Exception {
         Child child1 = mock(Child.class);
         Child child2 = mock(Child.class);
-        given(childRepository.toBeSynced()).willReturn(newArrayList(child1, child2));
+        given(childRepository.toBeSyncedCursor()).willReturn(cursorOf(child1, child2));
         syncAllDataAsyncTask.setContext(rapidFtrActivity);
 
         syncAllDataAsyncTask.execute();
@@ -99,6 +123,84 @@ public class SyncAllDataAsyncTaskTest {
         verify(childSyncService).sync(child2, currentUser);
     }
 
+    @Test
+    public void shouldUploadOnSeveralThreadsWithASyncServiceEach() throws Exception {
+        final Map<ChildSyncService, Thread> threadsOfServices = new ConcurrentHashMap<ChildSyncService, Thread>();
+        final List<Child> uploaded = Collections.synchronizedList(new ArrayList<Child>());
+        syncAllDataAsyncTask.setSyncServices(new Provider<SyncService<Child>>() {
+            @Override
+            public SyncService<Child> get() {
+                final ChildSyncService syncService = mock(ChildSyncService.class);
+                try {
+                    given(syncService.sync(any(Child.class), eq(currentUser))).willAnswer(new Answer<Child>() {
+                        @Override
+                        public Child answer(InvocationOnMock invocation) throws Throwable {
+                            assertThat(threadsOfServices.put(syncService, Thread.currentThread()), anyOf(nullValue(), equalTo(Thread.currentThread())));
+                            Child child = (Child) invocation.getArguments()[0];
+                            uploaded.add(child);
+                            return child;
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return syncService;
+            }
+        });
+        List<Child> children = new ArrayList<Child>();
+        for (int i = 0; i < 10; i++) {
+            children.add(new Child("id" + i, "user1", "{}"));
+        }
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.sendRecordsToServer(cursorOf(children.toArray(new Child[children.size()])));
+
+        assertThat(new HashSet<Child>(uploaded), equalTo(new HashSet<Child>(children)));
+        assertThat(uploaded.size(), equalTo(children.size()));
+        assertThat(new HashSet<Thread>(threadsOfServices.values()).size(), equalTo(threadsOfServices.size()));
+        assertThat(threadsOfServices.containsValue(Thread.currentThread()), equalTo(false));
+        verify(childSyncService, never()).sync(any(Child.class), any(User.class));
+    }
+
+    @Test
+    public void shouldCloseSyncServicesAndRepositoryOnceTheSyncIsDone() throws Exception {
+        final List<ChildSyncService> threadServices = Collections.synchronizedList(new ArrayList<ChildSyncService>());
+        syncAllDataAsyncTask.setSyncServices(new Provider<SyncService<Child>>() {
+            @Override
+            public SyncService<Child> get() {
+                ChildSyncService syncService = mock(ChildSyncService.class);
+                threadServices.add(syncService);
+                return syncService;
+            }
+        });
+        given(childRepository.toBeSyncedCursor()).willReturn(cursorOf(mock(Child.class), mock(Child.class)));
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.execute();
+
+        for (ChildSyncService threadService : threadServices) {
+            verify(threadService).close();
+        }
+        verify(childSyncService).close();
+        verify(childRepository).close();
+    }
+
+    @Test
+    public void shouldUploadOtherRecordsWhenOneFailsAndReportTheFailure() throws Exception {
+        Child child1 = mock(Child.class);
+        Child child2 = mock(Child.class);
+        given(childSyncService.sync(child1, currentUser)).willThrow(new SyncFailedException("no connection"));
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        try {
+            syncAllDataAsyncTask.sendRecordsToServer(cursorOf(child1, child2));
+            fail("the failed upload should be reported");
+        } catch (SyncFailedException e) {
+            assertThat(e.getMessage(), equalTo("no connection"));
+        }
+        verify(childSyncService).sync(child2, currentUser);
+    }
+
     @Test
     public void shouldNotSyncFormsIfTaskIsCancelled() throws Exception {
         syncAllDataAsyncTask.setContext(rapidFtrActivity);
@@ -114,7 +216,7 @@ public class SyncAllDataAsyncTaskTest {
     public void shouldNotSyncChildrenIfCancelled() throws Exception {
         Child child1 = mock(Child.class);
         Child child2 = mock(Child.class);
-        given(childRepository.toBeSynced()).willReturn(newArrayList(child1, child2));
+        given(childRepository.toBeSyncedCursor()).willReturn(cursorOf(child1, child2));
 
         syncAllDataAsyncTask.setContext(rapidFtrActivity);
         syncAllDataAsyncTask = spy(syncAllDataAsyncTask);
@@ -140,9 +242,10 @@ public class SyncAllDataAsyncTaskTest {
         syncAllDataAsyncTask.onPreExecute();
         syncAllDataAsyncTask.doInBackground();
 
-        verify(childSyncService).getRecord(any(String.class));
-        verify(childRepository, never()).createOrUpdate((Child) any());
+        verify(childSyncService, never()).getRecords(anyList());
+        verify(childRepository, never()).createOrUpdateAll(anyList());
         verify(childSyncService, never()).setMedia((Child) any());
+        verify(childSyncService, never()).downloadsSaved();
     }
 
     @Test
@@ -152,39 +255,232 @@ public class SyncAllDataAsyncTaskTest {
         ArrayList<Child> childList = new ArrayList<Child>();
         childList.add(child1);
 
-        given(childRepository.toBeSynced()).willReturn(childList);
+        given(childRepository.toBeSyncedCursor()).willReturn(new ListRecordCursor<Child>(childList));
         given(deviceService.isBlacklisted()).willReturn(true);
 
         syncAllDataAsyncTask.execute();
 
         verify(childSyncService).sync(child1, currentUser);
-        verify(childSyncService, never()).getRecord(any(String.class));
+        verify(childSyncService, never()).getRecords(anyList());
         verify(childSyncService, never()).getIdsToDownload();
     }
 
     @Test
-    public void shouldCreateOrUpdateExistingChild() throws Exception {
+    public void shouldCreateOrUpdateIncomingChildrenTogether() throws Exception {
         Child child1 = mock(Child.class);
         Child child2 = mock(Child.class);
         HashMap<String, String> repositoryIDRevs = createRepositoryIdRevMap();
 
         given(childSyncService.getIdsToDownload()).willReturn(Arrays.asList("qwerty0987", "abcd1234"));
         given(childRepository.getAllIdsAndRevs()).willReturn(repositoryIDRevs);
-        given(child1.getUniqueId()).willReturn("1234");
-        given(child2.getUniqueId()).willReturn("5678");
 
-        given(childSyncService.getRecord("qwerty0987")).willReturn(child1);
-        given(childSyncService.getRecord("abcd1234")).willReturn(child2);
+        given(childSyncService.getRecords(Arrays.asList("qwerty0987", "abcd1234"))).willReturn(Arrays.asList(child1, child2));
+
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+        syncAllDataAsyncTask.execute();
+
+        verify(childSyncService).getRecords(Arrays.asList("qwerty0987", "abcd1234"));
+        verify(childRepository).createOrUpdateAll(Arrays.asList(child1, child2));
+        verify(childSyncService).downloadsSaved();
+        verify(childSyncService).setMedia(child1);
+        verify(childSyncService).setMedia(child2);
+    }
+
+    @Test
+    public void shouldSaveIncomingChildrenInBatches() throws Exception {
+        List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < SynchronisationAsyncTask.SAVE_BATCH_SIZE + 1; i++) {
+            idsToDownload.add("id" + i);
+        }
+        given(childSyncService.getIdsToDownload()).willReturn(idsToDownload);
+        given(childSyncService.getRecords(anyList())).willAnswer(childrenWithRequestedIds(null));
+
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+        syncAllDataAsyncTask.execute();
+
+        ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+        verify(childRepository, times(2)).createOrUpdateAll(batches.capture());
+        assertThat(batches.getAllValues().get(0).size(), equalTo(SynchronisationAsyncTask.SAVE_BATCH_SIZE));
+        assertThat(batches.getAllValues().get(1).size(), equalTo(1));
+    }
+
+    @Test
+    public void shouldFetchOnSeveralThreadsWhileSavingInBatches() throws Exception {
+        final List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < SynchronisationAsyncTask.SAVE_BATCH_SIZE * 2 + 50; i++) {
+            idsToDownload.add("id" + i);
+        }
+        final Set<Thread> fetchingThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        syncAllDataAsyncTask.setSyncServices(new Provider<SyncService<Child>>() {
+            @Override
+            public SyncService<Child> get() {
+                ChildSyncService syncService = mock(ChildSyncService.class);
+                try {
+                    given(syncService.getRecords(anyList())).willAnswer(childrenWithRequestedIds(fetchingThreads));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return syncService;
+            }
+        });
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.saveIncomingRecords(idsToDownload, 0);
+
+        ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+        verify(childRepository, times(3)).createOrUpdateAll(batches.capture());
+        Set<String> savedIds = new HashSet<String>();
+        for (List<Child> batch : batches.getAllValues()) {
+            for (Child child : batch) {
+                savedIds.add(child.getUniqueId());
+            }
+        }
+        assertThat(savedIds, equalTo((Set<String>) new HashSet<String>(idsToDownload)));
+        assertThat(batches.getAllValues().get(2).size(), equalTo(50));
+        assertThat(fetchingThreads.contains(Thread.currentThread()), equalTo(false));
+        verify(childSyncService, never()).getRecords(anyList());
+    }
+
+    @Test
+    public void shouldFetchOnThisThreadWhenThereIsOneSyncService() throws Exception {
+        List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < SynchronisationAsyncTask.SAVE_BATCH_SIZE + 1; i++) {
+            idsToDownload.add("id" + i);
+        }
+        Set<Thread> fetchingThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        given(childSyncService.getRecords(anyList())).willAnswer(childrenWithRequestedIds(fetchingThreads));
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.saveIncomingRecords(idsToDownload, 0);
+
+        assertThat(fetchingThreads, equalTo(Collections.singleton(Thread.currentThread())));
+        verify(childRepository, times(2)).createOrUpdateAll(anyList());
+    }
+
+    @Test
+    public void shouldNotFetchMoreThanTwoBatchesAheadOfTheWrites() throws Exception {
+        List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < SynchronisationAsyncTask.SAVE_BATCH_SIZE * 10; i++) {
+            idsToDownload.add("id" + i);
+        }
+        final AtomicInteger fetched = new AtomicInteger();
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger mostUnwritten = new AtomicInteger();
+        syncAllDataAsyncTask.setSyncServices(new Provider<SyncService<Child>>() {
+            @Override
+            public SyncService<Child> get() {
+                ChildSyncService syncService = mock(ChildSyncService.class);
+                try {
+                    given(syncService.getRecords(anyList())).willAnswer(new Answer<List<Child>>() {
+                        @Override
+                        public List<Child> answer(InvocationOnMock invocation) throws Throwable {
+                            List<Child> children = childrenWithRequestedIds(null).answer(invocation);
+                            int unwritten = fetched.addAndGet(children.size()) - written.get();
+                            while (mostUnwritten.get() < unwritten) {
+                                mostUnwritten.set(unwritten);
+                            }
+                            return children;
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return syncService;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Thread.sleep(20);
+                written.addAndGet(((List) invocation.getArguments()[0]).size());
+                return null;
+            }
+        }).when(childRepository).createOrUpdateAll(anyList());
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.saveIncomingRecords(idsToDownload, 0);
+
+        int chunkSize = application.getResources().getInteger(R.integer.download_batch_size);
+        assertThat(written.get(), equalTo(idsToDownload.size()));
+        assertThat(mostUnwritten.get() <= Math.max(SynchronisationAsyncTask.SAVE_BATCH_SIZE * 2, SynchronisationAsyncTask.SAVE_BATCH_SIZE + chunkSize), equalTo(true));
+    }
+
+    @Test
+    public void shouldFetchIdsInChunksOfTheDownloadBatchSize() throws Exception {
+        int chunkSize = application.getResources().getInteger(R.integer.download_batch_size);
+        List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < chunkSize + 1; i++) {
+            idsToDownload.add("id" + i);
+        }
+        given(childSyncService.getRecords(anyList())).willAnswer(childrenWithRequestedIds(null));
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.saveIncomingRecords(idsToDownload, 0);
 
-        given(childRepository.exists("1234")).willReturn(true);
-        given(childRepository.exists("5678")).willReturn(false);
+        verify(childSyncService).getRecords(idsToDownload.subList(0, chunkSize));
+        verify(childSyncService).getRecords(Arrays.asList("id" + chunkSize));
+    }
 
+    @Test
+    public void shouldStopDownloadingWhenAFetchFails() throws Exception {
+        int chunkSize = application.getResources().getInteger(R.integer.download_batch_size);
+        List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < chunkSize * 3; i++) {
+            idsToDownload.add("id" + i);
+        }
+        given(childSyncService.getRecords(idsToDownload.subList(0, chunkSize))).willAnswer(childrenWithRequestedIds(null));
+        given(childSyncService.getRecords(idsToDownload.subList(chunkSize, chunkSize * 2))).willThrow(new SyncFailedException("no connection"));
         syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        plan.plan(idsToDownload);
+
+        try {
+            syncAllDataAsyncTask.saveIncomingRecords(idsToDownload, plan, 0);
+            fail("the failed download should be reported");
+        } catch (SyncFailedException e) {
+            assertThat(e.getMessage(), equalTo("no connection"));
+        }
+        verify(childSyncService, never()).getRecords(idsToDownload.subList(chunkSize * 2, chunkSize * 3));
+        verify(childRepository).createOrUpdateAll(anyList());
+        assertThat(plan.pendingIds(), equalTo(idsToDownload.subList(chunkSize, chunkSize * 3)));
+    }
+
+    @Test
+    public void shouldResumeDownloadingTheIdsLeftByTheLastSync() throws Exception {
+        plan.plan(Arrays.asList("qwerty0987", "abcd1234"));
+        given(childSyncService.getRecords(anyList())).willAnswer(childrenWithRequestedIds(null));
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
         syncAllDataAsyncTask.execute();
 
-        verify(childSyncService).getRecord("qwerty0987");
-        verify(childRepository).update(child1);
-        verify(childRepository).createOrUpdate(child2);
+        verify(childSyncService, never()).getIdsToDownload();
+        verify(childSyncService).getRecords(Arrays.asList("qwerty0987", "abcd1234"));
+        assertThat(plan.pendingIds().size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldPlanIdsToDownloadAndListThemAgainWhenServerSendsNoRecord() throws Exception {
+        given(childSyncService.getIdsToDownload()).willReturn(Arrays.asList("qwerty0987", "abcd1234"));
+        given(childSyncService.getRecords(anyList())).willThrow(new JSONException("not a child"));
+        syncAllDataAsyncTask = spy(syncAllDataAsyncTask);
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.doInBackground();
+
+        verify(childSyncService).getRecords(Arrays.asList("qwerty0987", "abcd1234"));
+        assertThat(plan.pendingIds().size(), equalTo(0));
+    }
+
+    @Test
+    public void shouldKeepThePlanWhenCancelled() throws Exception {
+        given(childSyncService.getIdsToDownload()).willReturn(Arrays.asList("qwerty0987", "abcd1234"));
+        syncAllDataAsyncTask = spy(syncAllDataAsyncTask);
+        doReturn(true).when(syncAllDataAsyncTask).isCancelled();
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.doInBackground();
+
+        assertThat(plan.pendingIds(), equalTo(Arrays.asList("qwerty0987", "abcd1234")));
     }
 
     @Test
@@ -239,10 +535,9 @@ public class SyncAllDataAsyncTaskTest {
     public void shouldCompareAndRetrieveIdsToBeDownloadedFromServer() throws JSONException, IOException, HttpException {
         Child child1 = mock(Child.class);
         Child child2 = mock(Child.class);
-        given(childRepository.toBeSynced()).willReturn(newArrayList(child1, child2));
+        given(childRepository.toBeSyncedCursor()).willReturn(cursorOf(child1, child2));
         given(childSyncService.getIdsToDownload()).willReturn(Arrays.asList("qwerty0987", "abcd1234"));
-        given(childSyncService.getRecord("qwerty0987")).willReturn(mock(Child.class));
-        given(childSyncService.getRecord("abcd1234")).willReturn(mock(Child.class));
+        given(childSyncService.getRecords(anyList())).willAnswer(childrenWithRequestedIds(null));
 
         syncAllDataAsyncTask.setContext(rapidFtrActivity);
         syncAllDataAsyncTask.execute();
@@ -251,8 +546,7 @@ public class SyncAllDataAsyncTaskTest {
         verify(childSyncService).sync(child1, currentUser);
         verify(childSyncService).sync(child2, currentUser);
         verify(childSyncService).getIdsToDownload();
-        verify(childSyncService).getRecord("qwerty0987");
-        verify(childSyncService).getRecord("abcd1234");
+        verify(childSyncService).getRecords(Arrays.asList("qwerty0987", "abcd1234"));
     }
 
     @Test
@@ -260,7 +554,7 @@ public class SyncAllDataAsyncTaskTest {
         syncAllDataAsyncTask.setContext(rapidFtrActivity);
         ArrayList<Child> childList = new ArrayList<Child>();
 
-        given(childRepository.toBeSynced()).willReturn(childList);
+        given(childRepository.toBeSyncedCursor()).willReturn(new ListRecordCursor<Child>(childList));
         given(deviceService.isBlacklisted()).willReturn(true);
         doNothing().when(deviceService).wipeData();
 
@@ -274,11 +568,11 @@ public class SyncAllDataAsyncTaskTest {
         ArrayList<Child> childList = new ArrayList<Child>();
         Child child = mock(Child.class);
         childList.add(child);
-        given(childRepository.toBeSynced()).willReturn(childList);
+        given(childRepository.toBeSyncedCursor()).willReturn(new ListRecordCursor<Child>(childList));
         given(deviceService.isBlacklisted()).willReturn(true);
 
         syncAllDataAsyncTask.execute();
-        verify(childRepository, times(2)).toBeSynced();
+        verify(childRepository, times(2)).toBeSyncedCursor();
         verify(deviceService, never()).wipeData();
     }
 
@@ -289,4 +583,60 @@ public class SyncAllDataAsyncTaskTest {
         repositoryIDRevs.put("abcd7689", "3-cdsf76");
         return repositoryIDRevs;
     }
+
+    // a child for each id asked for, noting the threads asking when given a set
+    @Test(timeout = 10000)
+    public void shouldKeepFetchingWhenTheServerReturnsFewerRecordsThanIdsAskedFor() throws Exception {
+        List<String> idsToDownload = new ArrayList<String>();
+        for (int i = 0; i < SynchronisationAsyncTask.SAVE_BATCH_SIZE * 10; i++) {
+            idsToDownload.add("id" + i);
+        }
+        final AtomicInteger written = new AtomicInteger();
+        syncAllDataAsyncTask.setSyncServices(new Provider<SyncService<Child>>() {
+            @Override
+            public SyncService<Child> get() {
+                ChildSyncService syncService = mock(ChildSyncService.class);
+                try {
+                    given(syncService.getRecords(anyList())).willAnswer(new Answer<List<Child>>() {
+                        @Override
+                        public List<Child> answer(InvocationOnMock invocation) throws Throwable {
+                            List<Child> children = childrenWithRequestedIds(null).answer(invocation);
+                            return children.subList(0, children.size() / 5);
+                        }
+                    });
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+                return syncService;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                written.addAndGet(((List) invocation.getArguments()[0]).size());
+                return null;
+            }
+        }).when(childRepository).createOrUpdateAll(anyList());
+        syncAllDataAsyncTask.setContext(rapidFtrActivity);
+
+        syncAllDataAsyncTask.saveIncomingRecords(idsToDownload, 0);
+
+        assertThat(written.get(), equalTo(idsToDownload.size() / 5));
+    }
+
+    private Answer<List<Child>> childrenWithRequestedIds(final Set<Thread> fetchingThreads) {
+        return new Answer<List<Child>>() {
+            @Override
+            public List<Child> answer(InvocationOnMock invocation) throws Throwable {
+                if (fetchingThreads != null) {
+                    fetchingThreads.add(Thread.currentThread());
+                }
+                List<Child> children = new ArrayList<Child>();
+                for (Object id : (List) invocation.getArguments()[0]) {
+                    children.add(new Child((String) id, "user1", "{}"));
+                }
+                return children;
+            }
+        };
+    }
 }
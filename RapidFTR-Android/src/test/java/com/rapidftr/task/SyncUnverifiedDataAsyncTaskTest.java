@@ -9,6 +9,7 @@ import com.rapidftr.activity.RapidFtrActivity;
 import com.rapidftr.model.Child;
 import com.rapidftr.model.User;
 import com.rapidftr.repository.ChildRepository;
+import com.rapidftr.repository.ListRecordCursor;
 import com.rapidftr.roboelectric.shadows.ShadowTaskStackBuilder;
 import com.rapidftr.service.ChildSyncService;
 import com.rapidftr.service.FormService;
@@ -23,7 +24,7 @@ import org.mockito.Mock;
 import org.robolectric.annotation.Config;
 import org.robolectric.tester.org.apache.http.TestHttpResponse;
 
-import static com.google.common.collect.Lists.newArrayList;
+import static com.rapidftr.repository.ListRecordCursor.cursorOf;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doReturn;
@@ -69,6 +70,8 @@ public class SyncUnverifiedDataAsyncTaskTest {
         given(registerUserService.register(any(User.class))).willReturn(new FluentResponse(new TestHttpResponse(200, "")));
 
         task = new SyncUnverifiedDataAsyncTask<Child>(formService, childSyncService, childRepository, loginService, registerUserService, currentUser);
+        given(childRepository.currentUsersUnsyncedRecordsCursor()).willReturn(ListRecordCursor.<Child>cursorOf());
+        given(childRepository.toBeSyncedCursor()).willReturn(ListRecordCursor.<Child>cursorOf());
         task.setContext(rapidFtrActivity);
 
         doReturn("Notify").when(rapidFtrActivity).getString(any(Integer.class));
@@ -94,7 +97,7 @@ public class SyncUnverifiedDataAsyncTaskTest {
     @Test
     public void shouldSyncAllChildrenForGivenUser() throws Exception {
         Child child = mock(Child.class);
-        given(childRepository.currentUsersUnsyncedRecords()).willReturn(newArrayList(child));
+        given(childRepository.currentUsersUnsyncedRecordsCursor()).willReturn(cursorOf(child));
 
         task.onPreExecute();
         task.execute();
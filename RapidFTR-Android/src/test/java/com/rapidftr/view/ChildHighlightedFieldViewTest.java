@@ -8,6 +8,7 @@ import com.rapidftr.forms.FormField;
 import com.rapidftr.forms.FormSection;
 import com.rapidftr.forms.FormSectionTest;
 import com.rapidftr.model.Child;
+import com.rapidftr.model.ChildSummary;
 import lombok.Cleanup;
 import org.json.JSONException;
 import org.junit.Before;
@@ -27,7 +28,7 @@ import static org.mockito.Mockito.spy;
 public class ChildHighlightedFieldViewTest {
 
     private Map<Integer, FormField> highlightedFields;
-    private Child child;
+    private ChildSummary child;
     private RapidFtrApplication application;
 
     @Before
@@ -46,7 +47,7 @@ public class ChildHighlightedFieldViewTest {
             highlightedFields.put(++counter, formField);
         }
 
-        child = new Child("1", "field_worker", loadChildDataFromClassPathResource());
+        child = ChildSummary.of(new Child("1", "field_worker", loadChildDataFromClassPathResource()), fields);
 
         application = spy((RapidFtrApplication) Robolectric.getShadowApplication().getApplicationContext());
     }
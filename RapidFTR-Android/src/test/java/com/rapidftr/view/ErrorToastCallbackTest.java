@@ -0,0 +1,28 @@
+package com.rapidftr.view;
+
+import com.rapidftr.CustomTestRunner;
+import com.rapidftr.R;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.shadows.ShadowToast;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+@RunWith(CustomTestRunner.class)
+public class ErrorToastCallbackTest {
+
+    @Test
+    public void shouldShowTheMessageGivenByTheScreen() {
+        ErrorToastCallback<Integer> callback = new ErrorToastCallback<Integer>(Robolectric.application, R.string.fetch_enquiry_error) {
+            @Override
+            public void onResult(Integer result) {
+            }
+        };
+
+        callback.onError(new RuntimeException("database locked"));
+
+        assertThat(ShadowToast.getTextOfLatestToast(), is(Robolectric.application.getString(R.string.fetch_enquiry_error)));
+    }
+}